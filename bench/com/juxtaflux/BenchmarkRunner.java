@@ -0,0 +1,24 @@
+package com.juxtaflux;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all the benchmarks with the GC profiler, so allocation rate (gc.alloc.rate.norm) is reported next to the timings.
+ *
+ * Optional first argument is a regex to pick which benchmarks to run (ex: "ListMutatorBenchmark.sort").
+ * Use "-p lineCount=1000" style overrides with the JMH command line instead to narrow the parameters.
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName();
+        Options opts = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opts).run();
+    }
+}
@@ -0,0 +1,22 @@
+package com.juxtaflux;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ListView's cell text is formatted once, when a ClipBuffer is created (toString() just returns it), so this
+ * times creating a buffer, which is what each store pays
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class ClipBufferBenchmark {
+    @Benchmark
+    public ClipBuffer newBuffer(ClipboardState state) {
+        return new ClipBuffer(state.text);
+    }
+}
@@ -0,0 +1,81 @@
+package com.juxtaflux;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/** Generated clipboard text, held in an in-memory clipboard so benchmarks don't touch the OS clipboard */
+@State(Scope.Benchmark)
+public class ClipboardState {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int lineCount;
+
+    @Param({"10", "80"})
+    public int lineLength;
+
+    @Param({"LF", "CRLF"})
+    public String lineEnding;
+
+    String text;
+    private String json;
+    InMemoryClipboardSource clipboard = new InMemoryClipboardSource();
+
+    @Setup
+    public void setup() {
+        text = generate(lineCount, lineLength, lineEnding.equals("CRLF") ? "\r\n" : "\n");
+        SysClipboard.setSource(clipboard);
+    }
+
+    /** Put the original text back, as most operations overwrite the clipboard with their result */
+    void reset() {
+        clipboard.write(text);
+        SysClipboard.invalidate(); // like a new user action: the next read goes back to the clipboard
+    }
+
+    /** The lines as a pretty-printed JSON array of {"n": index, "line": text} objects, made the first time it's needed */
+    String json() {
+        if (json == null) {
+            json = StructuredText.pretty(generateJson(text), "  ", "\n");
+        }
+        return json;
+    }
+
+    private static String generateJson(String text) {
+        StringBuilder sb = new StringBuilder(text.length() * 2);
+        sb.append('[');
+        int n = 0;
+        for (String line : new ClipSnapshot(text).lines()) {
+            sb.append(n == 0 ? "" : ",").append("{\"n\":").append(n++).append(",\"line\":\"").append(line).append("\"}");
+        }
+        return sb.append(']').toString();
+    }
+
+    /** Lines of words with some leading/trailing whitespace and some duplicates, so trims, filters and uniq have work to do */
+    static String generate(int lineCount, int lineLength, String lineEnding) {
+        final String[] words = {"alpha", "beta", "gamma", "delta", "epsilon", "zeta", "eta", "theta"};
+        Random rand = new Random(42);
+        StringBuilder sb = new StringBuilder(lineCount * (lineLength + lineEnding.length()));
+        for (int i = 0; i < lineCount; ++i) {
+            if (i > 0) {
+                sb.append(lineEnding);
+            }
+            int lineStart = sb.length();
+            if (i % 4 == 0) {
+                sb.append("  ");
+            }
+            while (sb.length() - lineStart < lineLength) {
+                sb.append(words[rand.nextInt(words.length)]).append(' ');
+            }
+            sb.setLength(lineStart + lineLength);
+            if (i % 7 == 0) {
+                // duplicate the line so uniq finds adjacent duplicates
+                sb.append(lineEnding).append(sb, lineStart, lineStart + lineLength);
+                ++i;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,200 @@
+package com.juxtaflux;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** The clipboard-as-a-list operations, end to end (read, split, transform, join, write) against an in-memory clipboard */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+public class ListMutatorBenchmark {
+    @Benchmark
+    public List<String> readAsLines(ClipboardState state) {
+        state.reset();
+        return SysClipboard.readAsLines();
+    }
+
+    @Benchmark
+    public int mutatorByLineTrim(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsListMutatorByLine( (line) -> line.trim() ).mutate();
+    }
+
+    @Benchmark
+    public int mutatorByLineLTrim(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsListMutatorByLine( (line) -> StringUtil.ltrim(line) ).mutate();
+    }
+
+    @Benchmark
+    public int mutatorByLinePrepend(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsListMutatorByLine( (line) -> "> " + line ).mutate();
+    }
+
+    @Benchmark
+    public int mutatorByLineSlice(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsListMutatorByLine( (line) -> StringUtil.slice(line, 2, -2) ).mutate();
+    }
+
+    @Benchmark
+    public int rangeMutatorSlice(ClipboardState state) throws ArgParseError {
+        state.reset();
+        Slice slice = Slice.parse("2:-2");
+        boolean codePoints = SysClipboard.snapshot().hasSurrogates();
+        return new ClipboardAsLineRangeMutator( (text, start, end, out) -> slice.appendTo(text, start, end, codePoints, out) ).mutate();
+    }
+
+    @Benchmark
+    public int rangeMutatorSliceStep(ClipboardState state) throws ArgParseError {
+        state.reset();
+        Slice slice = Slice.parse("::-2");
+        boolean codePoints = SysClipboard.snapshot().hasSurrogates();
+        return new ClipboardAsLineRangeMutator( (text, start, end, out) -> slice.appendTo(text, start, end, codePoints, out) ).mutate();
+    }
+
+    @Benchmark
+    public int wordWrap(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsLineRangeMutator(new LineFormatter(40, Align.LEFT, true, 0, 4, SysClipboard.lineSeparator())).mutate();
+    }
+
+    @Benchmark
+    public int justify(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsLineRangeMutator(new LineFormatter(40, Align.JUSTIFY, true, 0, 0, SysClipboard.lineSeparator())).mutate();
+    }
+
+    @Benchmark
+    public List<String> mutatorSort(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsListMutator( (list) -> Collections.sort(list) ).mutate();
+    }
+
+    @Benchmark
+    public int reverse(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsListReverse().reverse();
+    }
+
+    @Benchmark
+    public Pair<Integer, Integer> filterContains(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsListFilter( (line) -> line.contains("gamma") ).filter();
+    }
+
+    private static final List<String> KEYWORDS = Arrays.asList("alpha", "gamma", "delta", "omega", "zeta", "theta", "kappa", "sigma");
+
+    @Benchmark
+    public Pair<Integer, Integer> filterContainsEach(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsListFilter( (line) -> KEYWORDS.stream().anyMatch(line::contains) ).filter();
+    }
+
+    @Benchmark
+    public Pair<Integer, Integer> filterContainsAhoCorasick(ClipboardState state) {
+        state.reset();
+        AhoCorasick matcher = new AhoCorasick(KEYWORDS);
+        return new ClipboardAsListFilter( (line) -> matcher.containsAny(line) ).filter();
+    }
+
+    @Benchmark
+    public Pair<Integer, Integer> filterCollapse(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsListFilter( (line) -> line.length() > 0 ).filter();
+    }
+
+    @Benchmark
+    public Pair<Integer, Integer> uniq(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsListUniq().uniq();
+    }
+
+    @Benchmark
+    public ClipboardAsListStats stats(ClipboardState state) {
+        state.reset();
+        return ClipboardAsListStats.calculate();
+    }
+
+    @Benchmark
+    public String base64Whole(ClipboardState state) {
+        return Codecs.apply(Codecs.encoder(Codec.BASE64), state.text);
+    }
+
+    @Benchmark
+    public int sha256EachLine(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsLineRangeMutator(Codecs.digest(Digest.SHA256)).mutate();
+    }
+
+    @Benchmark
+    public String jsonMinify(ClipboardState state) {
+        return StructuredText.minify(state.json());
+    }
+
+    @Benchmark
+    public String jsonExtract(ClipboardState state) throws ArgParseError {
+        return StructuredText.extract(state.json(), "$[*].line", "\n").getLeft();
+    }
+
+    @Benchmark
+    public int exprMap(ClipboardState state) throws ArgParseError {
+        state.reset();
+        return new ClipboardAsListMutatorByLine(LineExpr.compile("upper(f[1]) + \":\" + len(line)", null).transformer()).mutate();
+    }
+
+    /** The same as exprMap, written by hand, for comparison */
+    @Benchmark
+    public int exprMapByHand(ClipboardState state) {
+        state.reset();
+        return new ClipboardAsListMutatorByLine( (line) -> {
+            String[] fields = line.trim().split("\\s+");
+            return (fields.length > 1 ? fields[1] : "").toUpperCase() + ":" + line.length();
+        }).mutate();
+    }
+
+    @Benchmark
+    public Pair<Integer, Integer> exprFilter(ClipboardState state) throws ArgParseError {
+        state.reset();
+        return new ClipboardAsListFilter(LineExpr.compile("len(f[0]) > 4 && !startsWith(line, ' ')", null).predicate()).filter();
+    }
+
+    @Benchmark
+    public String head(ClipboardState state) {
+        state.reset();
+        return SysClipboard.snapshot().head(1000);
+    }
+
+    @Benchmark
+    public String tail(ClipboardState state) {
+        state.reset();
+        return SysClipboard.snapshot().tail(1000);
+    }
+
+    @Benchmark
+    public String everyNth(ClipboardState state) {
+        state.reset();
+        return SysClipboard.snapshot().everyNth(100);
+    }
+
+    @Benchmark
+    public String sampleReservoir(ClipboardState state) {
+        state.reset();
+        return SysClipboard.snapshot().sample(1000, new Random(42));
+    }
+
+    @Benchmark
+    public String samplePercent(ClipboardState state) {
+        state.reset();
+        return SysClipboard.snapshot().sample(0.01, new Random(42));
+    }
+}
@@ -0,0 +1,57 @@
+package com.juxtaflux;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** StringUtil functions on a single line of text */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StringUtilBenchmark {
+    @Param({"10", "80", "1000"})
+    public int lineLength;
+
+    private String padded;
+    private String escaped;
+
+    @Setup
+    public void setup() {
+        String line = ClipboardState.generate(1, lineLength, "\n");
+        padded = "    " + line + "    ";
+        escaped = line.replace(" ", "\\t") + "\\n";
+    }
+
+    @Benchmark
+    public String ltrim() {
+        return StringUtil.ltrim(padded);
+    }
+
+    @Benchmark
+    public String rtrim() {
+        return StringUtil.rtrim(padded);
+    }
+
+    @Benchmark
+    public String sliceOneIndex() {
+        return StringUtil.slice(padded, -3);
+    }
+
+    @Benchmark
+    public String sliceTwoIndexes() {
+        return StringUtil.slice(padded, 2, -2);
+    }
+
+    @Benchmark
+    public String extractInitialWords() {
+        return StringUtil.extractInitialWords(padded, Config.WORDS_FOR_FILE_NAMING);
+    }
+
+    @Benchmark
+    public String replaceSpecialChars() {
+        return StringUtil.replaceSpecialChars(escaped);
+    }
+}
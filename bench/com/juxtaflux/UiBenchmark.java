@@ -0,0 +1,285 @@
+package com.juxtaflux;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.ListView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.stage.Stage;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Drives the real UI (ClipDashboard.fxml and its Controller) through scripted scenarios and checks how responsive the
+ * JavaFX thread stays: how long each button click or key press takes to handle, the time between frames while it
+ * happens, and the heap in use after each scenario. Exits with status 1 if the p99 handler latency, p99 frame time or
+ * heap goes over its threshold, so a regression fails the build.
+ *
+ * Clicks go through Button.fire() and key presses through the ListView, so the scene's event filters (timing, undo
+ * history) run just like they do for a user. The clipboard is swapped for an in-memory one.
+ *
+ * To run without a display, put openjfx-monocle on the classpath and use:
+ *   -Dglass.platform=Monocle -Dmonocle.platform=Headless -Dprism.order=sw -Djava.awt.headless=true
+ * Thresholds can be changed with -Dui.maxHandlerMs=50 -Dui.maxFrameMs=100 -Dui.maxHeapMb=2048, and the number of
+ * buffers with -Dui.buffers=100000.
+ */
+public class UiBenchmark extends Application {
+    private static final double MAX_HANDLER_MS = Double.parseDouble(System.getProperty("ui.maxHandlerMs", "50"));
+    private static final double MAX_FRAME_MS = Double.parseDouble(System.getProperty("ui.maxFrameMs", "100"));
+    private static final long MAX_HEAP_MB = Long.getLong("ui.maxHeapMb", 2048);
+    private static final int BUFFER_COUNT = Integer.getInteger("ui.buffers", 100_000);
+    private static final long TIMEOUT_SECONDS = 120;
+
+    private final InMemoryClipboardSource clipboard = new InMemoryClipboardSource();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final AtomicLong frames = new AtomicLong();
+    private final List<Result> results = new ArrayList<>();
+    private Scene scene;
+    private ListView<ClipBuffer> buffers;
+    private LongSamples frameTimes; // frames of the running scenario, only touched on the JavaFX thread
+
+    /** Timings from one scenario */
+    private static class Result {
+        final String name;
+        final LongSamples handlerNanos = new LongSamples();
+        final LongSamples frameNanos = new LongSamples();
+        long heapBytes;
+
+        Result(String name) {
+            this.name = name;
+        }
+    }
+
+    /** Growable list of longs, so recording a frame doesn't box or allocate much */
+    private static class LongSamples {
+        private long[] values = new long[256];
+        private int size = 0;
+
+        void add(long v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /** p-th percentile in milliseconds (0 if there are no samples) */
+        double percentileMs(double p) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int i = (int) Math.ceil(p / 100 * size) - 1;
+            return sorted[Math.max(0, Math.min(size - 1, i))] / 1e6;
+        }
+    }
+
+    @Override
+    public void start(Stage stage) throws Exception {
+        SysClipboard.setSource(clipboard);
+        FXMLLoader loader = new FXMLLoader(getClass().getResource("/ClipDashboard.fxml"));
+        Parent root = loader.load();
+        scene = new Scene(root, Config.APP_WIDTH, Config.APP_HEIGHT);
+        stage.setTitle(Config.APP_TITLE + " (UI benchmark)");
+        stage.setScene(scene);
+        stage.show();
+        Controller controller = loader.getController();
+        controller.onReady(stage);
+        @SuppressWarnings("unchecked")
+        ListView<ClipBuffer> list = (ListView<ClipBuffer>) scene.lookup("#buffers");
+        buffers = list;
+
+        new AnimationTimer() { // also keeps pulses coming every frame, even when nothing changes
+            private long last = 0;
+            @Override
+            public void handle(long now) {
+                if (last != 0 && frameTimes != null) {
+                    frameTimes.add(now - last);
+                }
+                last = now;
+                frames.incrementAndGet();
+            }
+        }.start();
+
+        Thread script = new Thread(() -> {
+            int status;
+            try {
+                runScenarios();
+                status = report();
+            } catch (Exception exc) {
+                exc.printStackTrace();
+                status = 2;
+            }
+            Platform.exit();
+            System.exit(status);
+        }, "ui-benchmark");
+        script.setDaemon(true);
+        script.start();
+    }
+
+    private void runScenarios() throws Exception {
+        waitFrames(10); // let the first layout and CSS pass settle
+
+        Result r = begin("fill " + BUFFER_COUNT + " buffers in the background");
+        List<ClipBuffer> filler = new ArrayList<>(BUFFER_COUNT);
+        for (int i = 0; i < BUFFER_COUNT; ++i) {
+            filler.add(new ClipBuffer("buffer " + i + "\nsecond line of buffer " + i));
+        }
+        ClipOps.store().addAll(filler);
+        filler = null;
+        waitUntil(() -> buffers.getItems().size() >= BUFFER_COUNT);
+        end(r);
+
+        r = begin("store small clips");
+        for (int i = 0; i < 200; ++i) {
+            clipboard.write("clip " + i);
+            click(r, "#btnStore");
+        }
+        end(r);
+
+        r = begin("store 10MB clips");
+        String big = ClipboardState.generate(125_000, 80, "\n");
+        for (int i = 0; i < 5; ++i) {
+            clipboard.write(big + i);
+            click(r, "#btnStore");
+        }
+        big = null;
+        end(r);
+
+        r = begin("scroll through the list");
+        int size = buffers.getItems().size();
+        for (int i = 0; i < 300; ++i) {
+            int index = (int) ((long) size * i / 300);
+            r.handlerNanos.add(onFx(() -> buffers.scrollTo(index)));
+            waitFrames(1);
+        }
+        end(r);
+
+        r = begin("move a block of 100 up and down");
+        onFx(() -> buffers.getSelectionModel().selectRange(5_000, 5_100));
+        for (int i = 0; i < 50; ++i) {
+            click(r, "#btnUp");
+            click(r, "#btnDown");
+        }
+        end(r);
+
+        r = begin("delete 1000 scattered buffers");
+        for (int i = 0; i < 20; ++i) {
+            int step = Math.max(1, buffers.getItems().size() / 1000);
+            onFx(() -> {
+                buffers.getSelectionModel().clearSelection();
+                for (int j = 0; j < buffers.getItems().size(); j += step) {
+                    buffers.getSelectionModel().select(j);
+                }
+            });
+            r.handlerNanos.add(onFx(() -> buffers.fireEvent(
+                    new KeyEvent(KeyEvent.KEY_PRESSED, "", "", KeyCode.DELETE, false, false, false, false))));
+            waitFrames(1);
+        }
+        end(r);
+    }
+
+    /** Fire a button the same way a click does, and record how long its handler took */
+    private void click(Result r, String id) throws InterruptedException {
+        r.handlerNanos.add(onFx(() -> ((Button) scene.lookup(id)).fire()));
+        waitFrames(1); // let the frame with the change render, so its time shows up in the frame times
+    }
+
+    private Result begin(String name) throws InterruptedException {
+        Result r = new Result(name);
+        onFx(() -> frameTimes = r.frameNanos);
+        results.add(r);
+        return r;
+    }
+
+    private void end(Result r) throws InterruptedException {
+        waitFrames(2);
+        onFx(() -> frameTimes = null);
+        System.gc();
+        r.heapBytes = memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /** Run action on the JavaFX thread and wait for it. Returns how long it took there, in nanos. */
+    private long onFx(Runnable action) throws InterruptedException {
+        long[] nanos = new long[1];
+        CountDownLatch done = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            long start = System.nanoTime();
+            try {
+                action.run();
+            } finally {
+                nanos[0] = System.nanoTime() - start;
+                done.countDown();
+            }
+        });
+        if (!done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("The JavaFX thread didn't respond in " + TIMEOUT_SECONDS + "s");
+        }
+        return nanos[0];
+    }
+
+    private void waitFrames(int count) throws InterruptedException {
+        long target = frames.get() + count;
+        waitUntil(() -> frames.get() >= target);
+    }
+
+    private void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Gave up waiting after " + TIMEOUT_SECONDS + "s");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /** Print the results table and any thresholds that were exceeded. Returns the exit status. */
+    private int report() {
+        List<String> failures = new ArrayList<>();
+        System.out.println(String.format("%-45s %7s %9s %9s %7s %9s %9s %8s",
+                "scenario", "events", "p50 ms", "p99 ms", "frames", "p50 ms", "p99 ms", "heap MB"));
+        for (Result r : results) {
+            double handlerP99 = r.handlerNanos.percentileMs(99);
+            double frameP99 = r.frameNanos.percentileMs(99);
+            long heapMb = r.heapBytes / (1024 * 1024);
+            System.out.println(String.format("%-45s %7d %9.2f %9.2f %7d %9.2f %9.2f %8d",
+                    r.name, r.handlerNanos.size(), r.handlerNanos.percentileMs(50), handlerP99,
+                    r.frameNanos.size(), r.frameNanos.percentileMs(50), frameP99, heapMb));
+            if (handlerP99 > MAX_HANDLER_MS) {
+                failures.add(String.format("%s: p99 handler latency %.2fms is over %.0fms", r.name, handlerP99, MAX_HANDLER_MS));
+            }
+            if (frameP99 > MAX_FRAME_MS) {
+                failures.add(String.format("%s: p99 frame time %.2fms is over %.0fms", r.name, frameP99, MAX_FRAME_MS));
+            }
+            if (heapMb > MAX_HEAP_MB) {
+                failures.add(String.format("%s: heap in use %dMB is over %dMB", r.name, heapMb, MAX_HEAP_MB));
+            }
+        }
+        for (String f : failures) {
+            System.out.println("FAIL " + f);
+        }
+        System.out.println(failures.isEmpty() ? "All UI thresholds met" : failures.size() + " UI threshold(s) exceeded");
+        return failures.isEmpty() ? 0 : 1;
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+}
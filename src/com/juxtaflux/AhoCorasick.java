@@ -0,0 +1,193 @@
+package com.juxtaflux;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds any of a set of literal strings in one pass over the text (Aho-Corasick automaton).
+ *
+ * The patterns are built into a trie, with a failure link from each node to the longest suffix of it that is also in
+ * the trie, so scanning never backs up in the text. Edges out of the root are a flat table indexed by char, the rest
+ * are in one open addressing hash table keyed by (state, char).
+ */
+class AhoCorasick {
+    private final String[] patterns;
+    private final int[] rootNext = new int[Character.MAX_VALUE + 1]; // 0 means stay at the root
+    private long[] edgeKeys; // (state << 16 | char), or -1 for an empty slot
+    private int[] edgeValues;
+    private int edgeMask;
+    private int stateCount = 1;
+    private int[] fail;
+    private int[] depth;
+    private int[] match; // index of the longest pattern that ends at this state (following failure links), or -1
+
+    /** Empty patterns are ignored (they would match everywhere) */
+    AhoCorasick(List<String> patterns) {
+        this.patterns = patterns.toArray(new String[0]);
+        int maxStates = 1;
+        for (String p : this.patterns) {
+            maxStates += p.length();
+        }
+        int capacity = Integer.highestOneBit(Math.max(16, maxStates * 2 - 1)) * 2;
+        edgeKeys = new long[capacity];
+        Arrays.fill(edgeKeys, -1);
+        edgeValues = new int[capacity];
+        edgeMask = capacity - 1;
+        fail = new int[maxStates];
+        depth = new int[maxStates];
+        match = new int[maxStates];
+        Arrays.fill(match, -1);
+        int[] parent = new int[maxStates];
+        char[] via = new char[maxStates];
+
+        for (int i = 0; i < this.patterns.length; ++i) {
+            String p = this.patterns[i];
+            if (p.isEmpty()) {
+                continue;
+            }
+            int s = 0;
+            for (int j = 0; j < p.length(); ++j) {
+                char c = p.charAt(j);
+                int t = edge(s, c);
+                if (t == 0) {
+                    t = stateCount++;
+                    parent[t] = s;
+                    via[t] = c;
+                    depth[t] = depth[s] + 1;
+                    addEdge(s, c, t);
+                }
+                s = t;
+            }
+            if (match[s] < 0) {
+                match[s] = i; // first of any duplicate patterns wins
+            }
+        }
+
+        // failure links, shallowest states first so links always point at states that are already done
+        int maxDepth = 0;
+        for (int t = 1; t < stateCount; ++t) {
+            maxDepth = Math.max(maxDepth, depth[t]);
+        }
+        int[] firstAtDepth = new int[maxDepth + 2];
+        for (int t = 1; t < stateCount; ++t) {
+            ++firstAtDepth[depth[t] + 1];
+        }
+        for (int d = 1; d < firstAtDepth.length; ++d) {
+            firstAtDepth[d] += firstAtDepth[d - 1];
+        }
+        int n = stateCount - 1;
+        int[] byDepth = new int[n];
+        for (int t = 1; t < stateCount; ++t) {
+            byDepth[firstAtDepth[depth[t]]++] = t;
+        }
+        for (int k = 0; k < n; ++k) {
+            int t = byDepth[k];
+            fail[t] = parent[t] == 0 ? 0 : next(fail[parent[t]], via[t]);
+            if (match[t] < 0) {
+                match[t] = match[fail[t]];
+            }
+        }
+    }
+
+    int patternCount() {
+        return patterns.length;
+    }
+
+    /** Does the text contain any of the patterns? Stops at the first match. */
+    boolean containsAny(CharSequence text) {
+        int s = 0;
+        for (int i = 0, len = text.length(); i < len; ++i) {
+            s = next(s, text.charAt(i));
+            if (match[s] >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replace every match of pattern i with replacements[i]. Same rules as String.replace() applied to all patterns at
+     * once: matches don't overlap, the match that starts first wins, and of matches that start at the same place the
+     * longest wins. Returns the new text and the number of replacements made.
+     */
+    Pair<String, Integer> replace(String text, String[] replacements) {
+        StringBuilder out = new StringBuilder(text.length());
+        int count = 0;
+        int copied = 0; // text before this has been handled
+        int bestStart = -1; // leftmost (then longest) match seen that can't be beaten yet
+        int bestEnd = -1;
+        int bestPattern = -1;
+        int s = 0;
+        int len = text.length();
+        for (int i = copied; i <= len; ++i) {
+            if (i < len) {
+                s = next(s, text.charAt(i));
+                int m = match[s];
+                if (m >= 0) {
+                    int start = i + 1 - patterns[m].length();
+                    if (bestStart < 0 || start < bestStart || (start == bestStart && i + 1 > bestEnd)) {
+                        bestStart = start;
+                        bestEnd = i + 1;
+                        bestPattern = m;
+                    }
+                }
+            }
+            // once nothing in progress started at or before the best match, it is final
+            if (bestStart >= 0 && (i == len || i + 1 - depth[s] > bestStart)) {
+                out.append(text, copied, bestStart).append(replacements[bestPattern]);
+                ++count;
+                copied = bestEnd;
+                bestStart = -1;
+                s = 0;
+                i = copied - 1; // rescan what came after the match, at most the length of the longest pattern
+            }
+        }
+        out.append(text, copied, len);
+        return Pair.of(out.toString(), count);
+    }
+
+    private int next(int s, char c) {
+        while (true) {
+            int t = s == 0 ? rootNext[c] : edge(s, c);
+            if (t != 0 || s == 0) {
+                return t;
+            }
+            s = fail[s];
+        }
+    }
+
+    private int edge(int s, char c) {
+        if (s == 0) {
+            return rootNext[c];
+        }
+        long key = ((long) s << 16) | c;
+        for (int slot = hash(key); ; slot = (slot + 1) & edgeMask) {
+            if (edgeKeys[slot] == key) {
+                return edgeValues[slot];
+            }
+            if (edgeKeys[slot] == -1) {
+                return 0;
+            }
+        }
+    }
+
+    private void addEdge(int s, char c, int t) {
+        if (s == 0) {
+            rootNext[c] = t;
+            return;
+        }
+        long key = ((long) s << 16) | c;
+        int slot = hash(key);
+        while (edgeKeys[slot] != -1) {
+            slot = (slot + 1) & edgeMask;
+        }
+        edgeKeys[slot] = key;
+        edgeValues[slot] = t;
+    }
+
+    private int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & edgeMask;
+    }
+}
@@ -0,0 +1,84 @@
+package com.juxtaflux;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AhoCorasickTest {
+    @Test
+    public void containsAny() throws Exception {
+        AhoCorasick ac = new AhoCorasick(Arrays.asList("he", "she", "his", "hers", ""));
+        assertTrue(ac.containsAny("ushers"));
+        assertTrue(ac.containsAny("this"));
+        assertTrue(ac.containsAny("ahe"));
+        assertFalse(ac.containsAny("hi s"));
+        assertFalse(ac.containsAny(""));
+        assertFalse(new AhoCorasick(Arrays.asList()).containsAny("abc"));
+    }
+
+    @Test
+    public void replaceLeftmostThenLongest() throws Exception {
+        AhoCorasick ac = new AhoCorasick(Arrays.asList("bc", "abcd", "ab", "d"));
+        String[] repl = {"1", "2", "3", "4"};
+        assertEquals("2", ac.replace("abcd", repl).getLeft()); // "abcd" starts before "bc"
+        assertEquals("3x", ac.replace("abx", repl).getLeft()); // "abcd" didn't finish, so "ab"
+        assertEquals("3144", ac.replace("abbcdd", repl).getLeft());
+        assertEquals(Integer.valueOf(4), ac.replace("abbcdd", repl).getRight());
+        assertEquals("xyz", ac.replace("xyz", repl).getLeft());
+    }
+
+    @Test
+    public void singlePatternMatchesStringReplace() throws Exception {
+        for (String pattern : Arrays.asList("a", "aa", "aba", "abab")) {
+            AhoCorasick ac = new AhoCorasick(Arrays.asList(pattern));
+            for (String text : Arrays.asList("", "aaaaa", "abababa", "xabaababx")) {
+                assertEquals(pattern + " in " + text, text.replace(pattern, "_"), ac.replace(text, new String[] {"_"}).getLeft());
+            }
+        }
+    }
+
+    @Test
+    public void matchesBruteForce() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; ++round) {
+            List<String> patterns = Arrays.asList(randomText(random, 1, 4), randomText(random, 1, 4), randomText(random, 1, 4));
+            String[] repl = {"<0>", "<1>", "<2>"};
+            String text = randomText(random, 0, 30);
+            AhoCorasick ac = new AhoCorasick(patterns);
+            assertEquals(patterns + " in " + text, bruteForceReplace(text, patterns, repl), ac.replace(text, repl).getLeft());
+            assertEquals(patterns.stream().anyMatch(text::contains), ac.containsAny(text));
+        }
+    }
+
+    private static String randomText(Random random, int min, int max) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = min + random.nextInt(max - min + 1); i > 0; --i) {
+            sb.append((char) ('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+
+    private static String bruteForceReplace(String text, List<String> patterns, String[] repl) {
+        StringBuilder out = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            int best = -1;
+            for (int p = 0; p < patterns.size(); ++p) {
+                if (text.startsWith(patterns.get(p), i) && (best < 0 || patterns.get(p).length() > patterns.get(best).length())) {
+                    best = p;
+                }
+            }
+            if (best < 0) {
+                out.append(text.charAt(i++));
+            } else {
+                out.append(repl[best]);
+                i += patterns.get(best).length();
+            }
+        }
+        return out.toString();
+    }
+}
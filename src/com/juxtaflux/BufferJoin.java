@@ -0,0 +1,376 @@
+package com.juxtaflux;
+
+import java.util.Arrays;
+
+/** Which left rows a join outputs */
+enum JoinType {
+    INNER, // rows with a match, once per match, with the matching right row's other columns added
+    LEFT,  // like INNER, plus rows without a match (with empty columns added)
+    ANTI   // only rows without a match, as they are
+}
+
+/**
+ * Hash join of two delimited buffers (like two tables pasted from a spreadsheet) on a key column of each. Fields are
+ * split on a plain delimiter (no CSV quoting) and keys are compared with surrounding whitespace trimmed.
+ *
+ * The side with fewer rows is built into a hash table of row numbers (no String per row, keys are compared in place
+ * in the buffer text) and the other side is streamed past it. If the table would go over Config.JOIN_TABLE_BUDGET,
+ * the build rows are split into partitions by key hash and joined one partition per pass, so the table never gets
+ * bigger than the budget. Output is always in the order of the left rows (and of the right rows for each left row).
+ * When the right side is built in one pass, left rows are probed in order and their output is written straight away.
+ * Otherwise the matches are kept as (left row, right row) pairs until the end, 8 bytes per output row on top of the
+ * table (the output text itself is bigger than that).
+ */
+class BufferJoin {
+    private static final int BYTES_PER_BUILD_ROW = 56; // up to 4 slots of three ints (a table is 25-50% full), plus the row and chain link
+
+    private final Side left;
+    private final Side right;
+    private final String outSeparator;
+    private long tableBudget = Config.JOIN_TABLE_BUDGET;
+    private int passes = 1;
+    private boolean firstLine; // no line separator needed before the next output row
+
+    /** leftDelim/rightDelim split fields, leftKey/rightKey are 0 based column numbers */
+    BufferJoin(String leftText, String leftDelim, int leftKey, String rightText, String rightDelim, int rightKey) throws ArgParseError {
+        if (leftDelim.isEmpty() || rightDelim.isEmpty()) {
+            throw new ArgParseError("The delimiter can't be empty");
+        }
+        if (leftKey < 0 || rightKey < 0) {
+            throw new ArgParseError("Key columns start at 0");
+        }
+        left = new Side(new ClipSnapshot(leftText), leftDelim, leftKey);
+        right = new Side(new ClipSnapshot(rightText), rightDelim, rightKey);
+        outSeparator = left.lines.lineEnding().separator;
+    }
+
+    /** Use a different hash table budget (in bytes) than Config.JOIN_TABLE_BUDGET */
+    BufferJoin tableBudget(long bytes) {
+        tableBudget = bytes;
+        return this;
+    }
+
+    /** Number of passes the last join() took (more than 1 if the table was partitioned to fit the budget) */
+    int passes() {
+        return passes;
+    }
+
+    /** Returns the joined rows, joined with the left buffer's line ending */
+    String join(JoinType type) {
+        int leftRows = left.lines.lineCount();
+        boolean buildRight = right.lines.lineCount() <= leftRows;
+        Side build = buildRight ? right : left;
+        Side probe = buildRight ? left : right;
+        long tableBytes = (long) build.lines.lineCount() * BYTES_PER_BUILD_ROW;
+        passes = (int) Math.max(1, (tableBytes + tableBudget - 1) / tableBudget);
+        int[] partitionRows = new int[passes]; // so each pass's table is sized for its own rows only
+        for (int row = 0; row < build.lines.lineCount(); ++row) {
+            if (build.keyAt(row)) {
+                ++partitionRows[partitionOf(build.keyHash, passes)];
+            }
+        }
+        StringBuilder sb = new StringBuilder(left.lines.text.length() + 16);
+        firstLine = true;
+
+        if (buildRight && passes == 1) {
+            HashTable table = new HashTable(build, 0, 1, partitionRows[0]);
+            int[] rights = new int[16]; // matches of the current left row
+            for (int l = 0; l < leftRows; ++l) {
+                int count = 0;
+                if (left.keyAt(l)) {
+                    for (int b = table.first(left); b >= 0; b = table.next(b)) {
+                        if (count == rights.length) {
+                            rights = Arrays.copyOf(rights, count * 2);
+                        }
+                        rights[count++] = table.row(b);
+                    }
+                }
+                appendLeftRow(sb, type, l, count > 0, rights, 0, count);
+            }
+            return sb.toString();
+        }
+
+        // matches as (left row, right row) pairs. ANTI only needs to know which left rows matched.
+        boolean[] matched = new boolean[leftRows];
+        IntPairs pairs = new IntPairs();
+        for (int pass = 0; pass < passes; ++pass) {
+            HashTable table = new HashTable(build, pass, passes, partitionRows[pass]);
+            for (int row = 0; row < probe.lines.lineCount(); ++row) {
+                if (!probe.keyAt(row) || partitionOf(probe.keyHash, passes) != pass) {
+                    continue;
+                }
+                for (int b = table.first(probe); b >= 0; b = table.next(b)) {
+                    int l = buildRight ? row : table.row(b);
+                    int r = buildRight ? table.row(b) : row;
+                    matched[l] = true;
+                    if (type != JoinType.ANTI) {
+                        pairs.add(l, r);
+                    }
+                }
+            }
+        }
+        int[] offsets = new int[leftRows + 1];
+        int[] rights = pairs.groupByFirst(leftRows, offsets);
+        for (int l = 0; l < leftRows; ++l) {
+            appendLeftRow(sb, type, l, matched[l], rights, offsets[l], offsets[l + 1]);
+        }
+        return sb.toString();
+    }
+
+    /** Partition of a key. Uses the high bits of a remixed hash, since the table slot uses the low bits of the hash. */
+    private static int partitionOf(int hash, int partitions) {
+        return (int) (((hash * 0x9E3779B9L) & 0xffffffffL) * partitions >>> 32);
+    }
+
+    /** Output for left row l, whose matching right rows are rights[from, to) */
+    private void appendLeftRow(StringBuilder sb, JoinType type, int l, boolean matched, int[] rights, int from, int to) {
+        int start = left.lines.lineStart(l);
+        int end = left.lines.lineEnd(l);
+        if (type == JoinType.ANTI) {
+            if (!matched) {
+                newLine(sb);
+                sb.append(left.lines.text, start, end);
+            }
+            return;
+        }
+        if (matched) {
+            for (int i = from; i < to; ++i) {
+                newLine(sb);
+                sb.append(left.lines.text, start, end);
+                right.appendOtherFields(rights[i], left.delim, sb);
+            }
+        } else if (type == JoinType.LEFT) {
+            newLine(sb);
+            sb.append(left.lines.text, start, end);
+            int padding = right.lines.lineCount() > 0 ? Math.max(0, right.fieldCount(0) - 1) : 0;
+            for (int i = 0; i < padding; ++i) {
+                sb.append(left.delim);
+            }
+        }
+    }
+
+    private void newLine(StringBuilder sb) {
+        if (!firstLine) {
+            sb.append(outSeparator);
+        }
+        firstLine = false;
+    }
+
+    /** One of the buffers being joined, with a cursor for finding the key of a row */
+    private static class Side {
+        final ClipSnapshot lines;
+        final String delim;
+        final int key;
+        // set by keyAt()
+        int keyStart;
+        int keyEnd;
+        int keyHash;
+
+        Side(ClipSnapshot lines, String delim, int key) {
+            this.lines = lines;
+            this.delim = delim;
+            this.key = key;
+        }
+
+        /** Find the key of row and its hash. Returns false if the row doesn't have that many columns. */
+        boolean keyAt(int row) {
+            String text = lines.text;
+            int start = lines.lineStart(row);
+            int end = lines.lineEnd(row);
+            for (int col = 0; col < key; ++col) {
+                int d = delimAt(start, end);
+                if (d < 0) {
+                    return false;
+                }
+                start = d + delim.length();
+            }
+            int d = delimAt(start, end);
+            if (d >= 0) {
+                end = d;
+            }
+            while (start < end && Character.isWhitespace(text.charAt(start))) {
+                ++start;
+            }
+            while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+                --end;
+            }
+            keyStart = start;
+            keyEnd = end;
+            int h = 0;
+            for (int i = start; i < end; ++i) {
+                h = 31 * h + text.charAt(i);
+            }
+            keyHash = h ^ (h >>> 16);
+            return true;
+        }
+
+        /** Offset of the first delimiter in text[from, end), or -1. Doesn't look past the end of the line like indexOf() would. */
+        int delimAt(int from, int end) {
+            String text = lines.text;
+            char first = delim.charAt(0);
+            for (int i = from; i <= end - delim.length(); ++i) {
+                if (text.charAt(i) == first && text.startsWith(delim, i)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** Is the key found by the last keyAt() the same as other's? */
+        boolean keyEquals(Side other) {
+            int len = keyEnd - keyStart;
+            return len == other.keyEnd - other.keyStart && lines.text.regionMatches(keyStart, other.lines.text, other.keyStart, len);
+        }
+
+        int fieldCount(int row) {
+            int count = 1;
+            int end = lines.lineEnd(row);
+            for (int d = delimAt(lines.lineStart(row), end); d >= 0; d = delimAt(d + delim.length(), end)) {
+                ++count;
+            }
+            return count;
+        }
+
+        /** Append the fields of row other than the key, each after sep */
+        void appendOtherFields(int row, String sep, StringBuilder out) {
+            String text = lines.text;
+            int start = lines.lineStart(row);
+            int end = lines.lineEnd(row);
+            int col = 0;
+            while (true) {
+                int d = delimAt(start, end);
+                int fieldEnd = d >= 0 ? d : end;
+                if (col != key) {
+                    out.append(sep).append(text, start, fieldEnd);
+                }
+                if (fieldEnd == end) {
+                    break;
+                }
+                start = fieldEnd + delim.length();
+                ++col;
+            }
+        }
+    }
+
+    /**
+     * Open-addressing table from key to the build side's rows with that key (in one partition). Each slot holds the
+     * first entry with a key; the rest are chained through next[] in row order. Entries are numbered within the
+     * partition, so every array is sized for the partition's rows, not the whole side.
+     */
+    private static class HashTable {
+        private final Side build;
+        private final int[] slots; // first entry + 1, 0 if empty
+        private final int[] slotHashes;
+        private final int[] rows; // build row of each entry
+        private final int[] next; // next entry with the same key, or -1
+        private final int mask;
+
+        /** rowCount is the number of build rows in the partition */
+        HashTable(Side build, int partition, int partitions, int rowCount) {
+            this.build = build;
+            int capacity = 16;
+            while (capacity < 2L * rowCount + 2) {
+                capacity <<= 1;
+            }
+            slots = new int[capacity];
+            slotHashes = new int[capacity];
+            rows = new int[rowCount];
+            next = new int[rowCount];
+            mask = capacity - 1;
+            int[] tails = new int[capacity];
+            int entry = 0;
+            for (int row = 0; row < build.lines.lineCount(); ++row) {
+                if (!build.keyAt(row) || partitionOf(build.keyHash, partitions) != partition) {
+                    continue;
+                }
+                int hash = build.keyHash;
+                int keyStart = build.keyStart;
+                int keyEnd = build.keyEnd;
+                int slot = hash & mask;
+                while (slots[slot] != 0) {
+                    if (slotHashes[slot] == hash && sameKey(rows[slots[slot] - 1], keyStart, keyEnd)) {
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                rows[entry] = row;
+                next[entry] = -1;
+                if (slots[slot] == 0) {
+                    slots[slot] = entry + 1;
+                    slotHashes[slot] = hash;
+                } else {
+                    next[tails[slot]] = entry;
+                }
+                tails[slot] = entry;
+                ++entry;
+            }
+        }
+
+        private boolean sameKey(int row, int keyStart, int keyEnd) {
+            build.keyAt(row);
+            int len = keyEnd - keyStart;
+            return len == build.keyEnd - build.keyStart && build.lines.text.regionMatches(keyStart, build.lines.text, build.keyStart, len);
+        }
+
+        /** First entry with the same key as probe's current key, or -1 */
+        int first(Side probe) {
+            int slot = probe.keyHash & mask;
+            while (slots[slot] != 0) {
+                int entry = slots[slot] - 1;
+                if (slotHashes[slot] == probe.keyHash) {
+                    build.keyAt(rows[entry]);
+                    if (build.keyEquals(probe)) {
+                        return entry;
+                    }
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        int next(int entry) {
+            return next[entry];
+        }
+
+        /** The build row of an entry */
+        int row(int entry) {
+            return rows[entry];
+        }
+    }
+
+    /** Growable list of int pairs */
+    private static class IntPairs {
+        private int[] firsts = new int[16];
+        private int[] seconds = new int[16];
+        private int size = 0;
+
+        void add(int first, int second) {
+            if (size == firsts.length) {
+                firsts = Arrays.copyOf(firsts, size * 2);
+                seconds = Arrays.copyOf(seconds, size * 2);
+            }
+            firsts[size] = first;
+            seconds[size] = second;
+            ++size;
+        }
+
+        /**
+         * The seconds grouped by first, for firsts in [0, n), in the order they were added (a counting sort). The
+         * seconds for first f are result[offsets[f], offsets[f + 1]). offsets must have room for n + 1 entries.
+         */
+        int[] groupByFirst(int n, int[] offsets) {
+            for (int i = 0; i < size; ++i) {
+                ++offsets[firsts[i] + 1];
+            }
+            for (int f = 0; f < n; ++f) {
+                offsets[f + 1] += offsets[f];
+            }
+            int[] grouped = new int[size];
+            int[] fill = Arrays.copyOf(offsets, n);
+            for (int i = 0; i < size; ++i) {
+                grouped[fill[firsts[i]]++] = seconds[i];
+            }
+            return grouped;
+        }
+    }
+}
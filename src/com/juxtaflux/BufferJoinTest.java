@@ -0,0 +1,83 @@
+package com.juxtaflux;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BufferJoinTest {
+    private static final String PEOPLE = "1\tann\n2\tbob\n3\tcid\n2\tbea";
+    private static final String ORDERS = "2\tpen\t3\n9\tink\t1\n1\tcup\t2\n2\tmug\t5";
+
+    private static String join(JoinType type, String left, String right) throws ArgParseError {
+        return new BufferJoin(left, "\t", 0, right, "\t", 0).join(type);
+    }
+
+    @Test
+    public void inner() throws ArgParseError {
+        assertEquals("1\tann\tcup\t2\n2\tbob\tpen\t3\n2\tbob\tmug\t5\n2\tbea\tpen\t3\n2\tbea\tmug\t5", join(JoinType.INNER, PEOPLE, ORDERS));
+    }
+
+    @Test
+    public void left() throws ArgParseError {
+        assertEquals("1\tann\tcup\t2\n2\tbob\tpen\t3\n2\tbob\tmug\t5\n3\tcid\t\t\n2\tbea\tpen\t3\n2\tbea\tmug\t5", join(JoinType.LEFT, PEOPLE, ORDERS));
+    }
+
+    @Test
+    public void anti() throws ArgParseError {
+        assertEquals("3\tcid", join(JoinType.ANTI, PEOPLE, ORDERS));
+        assertEquals("9\tink\t1", join(JoinType.ANTI, ORDERS, PEOPLE));
+    }
+
+    @Test
+    public void delimitersAndKeyColumns() throws ArgParseError {
+        String left = "ann, 1\nbob, 2\ncid, 4";
+        String right = "pen;x; 2 \ncup;y;1";
+        assertEquals("ann, 1, cup, y\nbob, 2, pen, x", new BufferJoin(left, ", ", 1, right, ";", 2).join(JoinType.INNER));
+        assertEquals("cid, 4", new BufferJoin(left, ", ", 1, right, ";", 2).join(JoinType.ANTI));
+    }
+
+    @Test
+    public void rowsWithoutTheKeyColumnDontMatch() throws ArgParseError {
+        assertEquals("a,1,x", new BufferJoin("a,1\nb\n", ",", 1, "1,x\n\n", ",", 0).join(JoinType.INNER));
+    }
+
+    @Test(expected = ArgParseError.class)
+    public void emptyDelimiter() throws ArgParseError {
+        new BufferJoin("a", "", 0, "a", ",", 0);
+    }
+
+    @Test
+    public void partitionedMatchesSinglePass() throws ArgParseError {
+        Random random = new Random(42);
+        StringBuilder left = new StringBuilder();
+        StringBuilder right = new StringBuilder();
+        for (int i = 0; i < 3000; ++i) {
+            left.append(random.nextInt(1000)).append(",l").append(i).append('\n');
+            right.append(random.nextInt(1000)).append(",r").append(i).append('\n');
+        }
+        for (JoinType type : JoinType.values()) {
+            BufferJoin whole = new BufferJoin(left.toString(), ",", 0, right.toString(), ",", 0);
+            BufferJoin parts = new BufferJoin(left.toString(), ",", 0, right.toString(), ",", 0).tableBudget(4096);
+            assertEquals(whole.join(type), parts.join(type));
+            assertEquals(1, whole.passes());
+            assertTrue(parts.passes() > 1);
+            // left side smaller, so it's the one built into the table
+            String fewer = left.substring(0, left.length() / 2);
+            assertEquals(new BufferJoin(fewer, ",", 0, right.toString(), ",", 0).join(type),
+                    new BufferJoin(fewer, ",", 0, right.toString(), ",", 0).tableBudget(4096).join(type));
+        }
+    }
+
+    @Test
+    public void parseArgs() throws ArgParseError {
+        assertArrayEquals(new int[] {0, 0}, Functions.parseKeyColumns(""));
+        assertArrayEquals(new int[] {2, 2}, Functions.parseKeyColumns("2"));
+        assertArrayEquals(new int[] {1, 3}, Functions.parseKeyColumns("1,3"));
+        assertArrayEquals(new String[] {"\t", "\t"}, Functions.parseDelimiters(""));
+        assertArrayEquals(new String[] {",", ";"}, Functions.parseDelimiters(", ;"));
+        assertArrayEquals(new String[] {" ", " "}, Functions.parseDelimiters(" "));
+        assertArrayEquals(new String[] {"\t", "\t"}, Functions.parseDelimiters("\\t"));
+    }
+}
@@ -0,0 +1,103 @@
+package com.juxtaflux;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The buffer list, for code that isn't on the JavaFX thread.
+ *
+ * The ListView's ObservableList is still the working copy, and only the JavaFX thread changes it. Other threads
+ * (the local server, file drops being read in the background, ...) add buffers to a lock-free append log. Changes to
+ * the list only mark the store as changed. Either one asks for a flush (see onWork()) when there is no flush pending
+ * yet, and the flush moves everything in the log into the list as a single change (drain()) and publishes an
+ * immutable snapshot of the list (publishIfChanged()), so a burst of adds or edits costs one flush and one copy, and
+ * nothing runs while the store is idle. Readers on any thread get a consistent list without locks and without copying
+ * it themselves.
+ */
+class BufferStore {
+    private final ConcurrentLinkedQueue<ClipBuffer> log = new ConcurrentLinkedQueue<>();
+    private volatile List<ClipBuffer> snapshot = Collections.emptyList();
+    private volatile long version = 0;
+    private boolean changed = false; // only used on the JavaFX thread
+    private final AtomicBoolean flushPending = new AtomicBoolean(false);
+    private volatile Runnable scheduleFlush = () -> {};
+
+    /**
+     * scheduleFlush is called when there is new work and no flush is pending. It should get the JavaFX thread to
+     * drain() and publishIfChanged(), ex: with Platform.runLater(). It runs on the thread that added the work.
+     */
+    void onWork(Runnable scheduleFlush) {
+        this.scheduleFlush = scheduleFlush;
+    }
+
+    /** Queue a new buffer. Any thread. It shows up in the list (and snapshots) at the next drain(). */
+    void add(ClipBuffer buffer) {
+        log.add(buffer);
+        requestFlush();
+    }
+
+    /** Queue new buffers, oldest first. Any thread. */
+    void addAll(Collection<ClipBuffer> buffers) {
+        log.addAll(buffers);
+        requestFlush();
+    }
+
+    /** The buffers as of the last publish(). Any thread. The list can't change, so it can be read without locking. */
+    List<ClipBuffer> snapshot() {
+        return snapshot;
+    }
+
+    /** Goes up by one with every publish(), so readers can tell whether the snapshot they hold is stale */
+    long version() {
+        return version;
+    }
+
+    /** Make list the new snapshot now. JavaFX thread. */
+    void publish(List<ClipBuffer> list) {
+        changed = false;
+        snapshot = Collections.unmodifiableList(Arrays.asList(list.toArray(new ClipBuffer[0])));
+        ++version; // only the JavaFX thread writes it
+    }
+
+    /** The list has changed since the last publish. JavaFX thread, from the list's change listener. Cheap. */
+    void changed() {
+        if (!changed) {
+            changed = true;
+            requestFlush();
+        }
+    }
+
+    /** Publish list if it changed since the last publish. JavaFX thread, in the flush and before each action. */
+    boolean publishIfChanged(List<ClipBuffer> list) {
+        if (!changed) {
+            return false;
+        }
+        publish(list);
+        return true;
+    }
+
+    /** Buffers added since the last call, oldest first. JavaFX thread, at the start of the flush. */
+    List<ClipBuffer> drain() {
+        flushPending.set(false); // anything added from here on asks for another flush
+        if (log.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<ClipBuffer> batch = new ArrayList<>();
+        ClipBuffer b;
+        while ((b = log.poll()) != null) {
+            batch.add(b);
+        }
+        return batch;
+    }
+
+    private void requestFlush() {
+        if (flushPending.compareAndSet(false, true)) {
+            scheduleFlush.run();
+        }
+    }
+}
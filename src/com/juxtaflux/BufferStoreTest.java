@@ -0,0 +1,114 @@
+package com.juxtaflux;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BufferStoreTest {
+    @Test
+    public void snapshotsDontChange() {
+        BufferStore store = new BufferStore();
+        assertTrue(store.snapshot().isEmpty());
+        List<ClipBuffer> list = new ArrayList<>(Arrays.asList(new ClipBuffer("a"), new ClipBuffer("b")));
+        store.publish(list);
+        List<ClipBuffer> snapshot = store.snapshot();
+        long version = store.version();
+        list.remove(0);
+        assertEquals(2, snapshot.size());
+        assertEquals("a", snapshot.get(0).text());
+        store.publish(list);
+        assertEquals(version + 1, store.version());
+        assertEquals(1, store.snapshot().size());
+        assertEquals(2, snapshot.size());
+        try {
+            snapshot.add(new ClipBuffer("c"));
+            fail("Snapshots should be read only");
+        } catch (UnsupportedOperationException exc) {
+            // expected
+        }
+    }
+
+    @Test
+    public void publishesOnlyWhenChanged() {
+        BufferStore store = new BufferStore();
+        List<ClipBuffer> list = new ArrayList<>(Arrays.asList(new ClipBuffer("a")));
+        assertFalse(store.publishIfChanged(list));
+        store.changed();
+        store.changed();
+        assertTrue(store.publishIfChanged(list));
+        assertEquals(1, store.version());
+        assertFalse(store.publishIfChanged(list));
+        assertEquals(1, store.version());
+    }
+
+    @Test
+    public void asksForOneFlushPerBurst() {
+        BufferStore store = new BufferStore();
+        AtomicInteger flushes = new AtomicInteger();
+        store.onWork(flushes::incrementAndGet);
+        store.add(new ClipBuffer("a"));
+        store.add(new ClipBuffer("b"));
+        store.changed();
+        assertEquals(1, flushes.get());
+        assertEquals(2, store.drain().size());
+        assertTrue(store.publishIfChanged(new ArrayList<>()));
+        assertEquals(1, flushes.get());
+
+        store.changed();
+        store.changed();
+        assertEquals(2, flushes.get());
+        store.drain();
+        store.publishIfChanged(new ArrayList<>());
+        store.addAll(Arrays.asList(new ClipBuffer("c"), new ClipBuffer("d")));
+        assertEquals(3, flushes.get());
+    }
+
+    @Test
+    public void concurrentProducers() throws Exception {
+        BufferStore store = new BufferStore();
+        int producers = 4;
+        int perProducer = 5000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; ++p) {
+            String prefix = p + ":";
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException exc) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; ++i) {
+                    store.add(new ClipBuffer(prefix + i));
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        // drain while the producers are still going, like the UI does in each flush
+        List<ClipBuffer> all = new ArrayList<>();
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            all.addAll(store.drain());
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        all.addAll(store.drain());
+        assertEquals(producers * perProducer, all.size());
+        // each producer's buffers come out in the order they went in
+        int[] next = new int[producers];
+        for (ClipBuffer b : all) {
+            String[] parts = b.text().split(":");
+            int p = Integer.parseInt(parts[0]);
+            assertEquals(next[p]++, Integer.parseInt(parts[1]));
+        }
+        assertTrue(store.drain().isEmpty());
+    }
+}
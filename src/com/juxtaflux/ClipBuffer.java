@@ -2,20 +2,153 @@ package com.juxtaflux;
 
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A stored clip. Buffers that haven't been used for a while are compressed in the background (see ColdBuffers) and
+ * expanded again the next time their text is asked for, so always go through text().
+ */
 class ClipBuffer {
-    String clip;
+    private Object content; // String, or byte[] while packed
+    private final int length;
+    private volatile long lastUsed = System.currentTimeMillis();
+    private final String display;
+    final ClipFlavors flavors; // other formats that were in the clipboard with the text, or null
     ClipBuffer(String msg) {
-        clip = msg;
+        this(msg, null);
+    }
+    ClipBuffer(String msg, ClipFlavors flavors) {
+        content = msg;
+        length = msg.length();
+        this.flavors = flavors;
+        display = format(msg, flavors);
+    }
+
+    /** The buffer's text, expanding it first if it was packed */
+    String text() {
+        lastUsed = System.currentTimeMillis();
+        byte[] packed;
+        synchronized (this) {
+            if (content instanceof String) {
+                ColdBuffers.hits.incrementAndGet();
+                return (String) content;
+            }
+            packed = (byte[]) content;
+        }
+        ColdBuffers.misses.incrementAndGet();
+        String s = PackedText.unpack(packed);
+        synchronized (this) {
+            if (content == packed) {
+                content = s;
+            }
+        }
+        return s;
+    }
+
+    /** Number of chars in the text (without expanding it) */
+    int length() {
+        return length;
+    }
+
+    /** Size of the compressed text, or -1 if it is expanded */
+    synchronized int packedSize() {
+        return content instanceof byte[] ? ((byte[]) content).length : -1;
+    }
+
+    /** Compress the text if it hasn't been used since cutoff (a currentTimeMillis() time). Slow, call in the background. */
+    void packIfUnusedSince(long cutoff) {
+        String s;
+        synchronized (this) {
+            if (!(content instanceof String) || length < Config.BUFFER_PACK_MIN_CHARS || lastUsed >= cutoff) {
+                return;
+            }
+            s = (String) content;
+        }
+        byte[] packed = PackedText.pack(s);
+        if (packed.length >= 2L * length) {
+            return; // doesn't compress
+        }
+        synchronized (this) {
+            if (content == s && lastUsed < cutoff) {
+                content = packed;
+            }
+        }
     }
 
     /** Reformat string for display in ListView. If it is too long, truncate it. If it has multiple lines, display char/line summary. */
-    public String toString() {
+    private static String format(String clip, ClipFlavors flavors) {
         int lineCount = StringUtils.countMatches(clip, System.lineSeparator()) + 1;
         String formatted = clip.replace(System.lineSeparator(), " ");
         if (formatted.length() > Config.BUFFER_CROP_LENGTH || lineCount > 1) {
             String suffix = formatted.length() > Config.BUFFER_CROP_LENGTH ? "..." : "";
             formatted = formatted.format("%s%s (%d chars, %d lines)", formatted.substring(0, Math.min(formatted.length(), Config.BUFFER_CROP_LENGTH)), suffix, formatted.length(), lineCount);
         }
+        if (flavors != null) {
+            formatted += " [" + flavors.describe() + "]";
+        }
         return formatted;
     }
-}
\ No newline at end of file
+
+    /** Worked out once up front, so showing the list never expands a packed buffer */
+    public String toString() {
+        return display;
+    }
+}
+
+/**
+ * Compresses buffers that haven't been used for Config.BUFFER_COLD_MINUTES, on a background thread, and keeps count
+ * of how well that is working. The check runs on that thread too, so it doesn't keep the JavaFX pulse going.
+ */
+class ColdBuffers {
+    private static final ScheduledExecutorService packer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Cold buffer packer");
+        t.setDaemon(true);
+        return t;
+    });
+    static final AtomicLong hits = new AtomicLong(); // text() found the buffer expanded
+    static final AtomicLong misses = new AtomicLong(); // text() had to expand it
+    // totals over the buffers that were packed at the end of the last pass
+    private static volatile long packedCount = 0;
+    private static volatile long rawBytes = 0;
+    private static volatile long packedBytes = 0;
+
+    /** Look for cold buffers every Config.BUFFER_COLD_CHECK_MS. buffers is called on the packer thread, so it has to be safe to read there. */
+    static void start(Supplier<List<ClipBuffer>> buffers) {
+        packer.scheduleWithFixedDelay(() -> packCold(buffers.get()), Config.BUFFER_COLD_CHECK_MS, Config.BUFFER_COLD_CHECK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void packCold(List<ClipBuffer> buffers) {
+        long cutoff = System.currentTimeMillis() - Config.BUFFER_COLD_MINUTES * 60_000L;
+        long count = 0;
+        long raw = 0;
+        long packed = 0;
+        for (ClipBuffer b : buffers) {
+            b.packIfUnusedSince(cutoff);
+            int size = b.packedSize();
+            if (size >= 0) {
+                ++count;
+                raw += 2L * b.length();
+                packed += size;
+            }
+        }
+        packedCount = count;
+        rawBytes = raw;
+        packedBytes = packed;
+    }
+
+    /** Text for the metrics panel */
+    static String report() {
+        long raw = rawBytes;
+        long packed = packedBytes;
+        long h = hits.get();
+        long m = misses.get();
+        return String.format("Cold buffers\n  packed=%d %s -> %s (ratio %.1f)  hits=%d misses=%d (%.1f%% hit)\n",
+                packedCount, OpMetrics.formatBytes(raw), OpMetrics.formatBytes(packed),
+                packed == 0 ? 0.0 : (double) raw / packed, h, m, h + m == 0 ? 100.0 : 100.0 * h / (h + m));
+    }
+}
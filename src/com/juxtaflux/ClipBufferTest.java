@@ -0,0 +1,38 @@
+package com.juxtaflux;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ClipBufferTest {
+    private static final String BIG = StringUtils.repeat("some text that repeats\n", 1000);
+
+    @Test
+    public void packsOnlyWhenUnused() {
+        ClipBuffer b = new ClipBuffer(BIG);
+        b.packIfUnusedSince(System.currentTimeMillis() - 60_000);
+        assertEquals(-1, b.packedSize()); // used more recently than the cutoff
+        b.packIfUnusedSince(System.currentTimeMillis() + 1);
+        assertTrue(b.packedSize() > 0);
+        assertTrue(b.packedSize() < 2 * BIG.length());
+    }
+
+    @Test
+    public void expandsOnAccess() {
+        ClipBuffer b = new ClipBuffer(BIG);
+        String display = b.toString();
+        b.packIfUnusedSince(System.currentTimeMillis() + 1);
+        assertEquals(display, b.toString());
+        assertEquals(BIG.length(), b.length());
+        assertEquals(BIG, b.text());
+        assertEquals(-1, b.packedSize());
+    }
+
+    @Test
+    public void smallBuffersStayExpanded() {
+        ClipBuffer b = new ClipBuffer("abc");
+        b.packIfUnusedSince(System.currentTimeMillis() + 1);
+        assertEquals(-1, b.packedSize());
+    }
+}
@@ -0,0 +1,178 @@
+package com.juxtaflux;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The formats other than plain text that were in the clipboard when a buffer was stored (HTML, RTF, files, an image).
+ *
+ * Cheap formats (file list, URL) are kept as they are. Heavy ones (HTML, RTF, image pixels) are compressed in the
+ * background after capture, and only decompressed if the buffer is put back into the clipboard. A thumbnail of an
+ * image is made in the background too, for showing in the buffer list.
+ */
+class ClipFlavors {
+    private static final ExecutorService packer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Clip flavor packer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    final List<File> files;
+    final String url;
+    private volatile Object html; // String until packed, then byte[]
+    private volatile Object rtf;
+    private volatile Object pixels; // int[] (ARGB) until packed, then byte[]
+    final int imageWidth;
+    final int imageHeight;
+    private final CompletableFuture<Image> thumbnail;
+
+    private ClipFlavors(List<File> files, String url, String html, String rtf, int[] pixels, int imageWidth, int imageHeight) {
+        this.files = files;
+        this.url = url;
+        this.html = html;
+        this.rtf = rtf;
+        this.pixels = pixels;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        thumbnail = pixels == null ? CompletableFuture.completedFuture(null) : CompletableFuture.supplyAsync(() -> makeThumbnail(pixels, imageWidth, imageHeight), packer);
+        packer.submit(this::pack);
+    }
+
+    /** Capture what is in the clipboard besides plain text. Returns null if there's nothing else. Must run on the JavaFX thread. */
+    static ClipFlavors capture(Clipboard clipboard) {
+        if (!clipboard.hasFiles() && !clipboard.hasUrl() && !clipboard.hasHtml() && !clipboard.hasRtf() && !clipboard.hasImage()) {
+            return null;
+        }
+        int[] pixels = null;
+        int w = 0;
+        int h = 0;
+        Image image = clipboard.hasImage() ? clipboard.getImage() : null;
+        if (image != null && image.getPixelReader() != null) {
+            w = (int) image.getWidth();
+            h = (int) image.getHeight();
+            pixels = new int[w * h];
+            image.getPixelReader().getPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+        }
+        return new ClipFlavors(
+                clipboard.hasFiles() ? new ArrayList<>(clipboard.getFiles()) : null,
+                clipboard.hasUrl() ? clipboard.getUrl() : null,
+                clipboard.hasHtml() ? clipboard.getHtml() : null,
+                clipboard.hasRtf() ? clipboard.getRtf() : null,
+                pixels, w, h);
+    }
+
+    /** Add all the formats to content, decompressing the heavy ones */
+    void putInto(ClipboardContent content) {
+        if (files != null) {
+            content.putFiles(files);
+        }
+        if (url != null) {
+            content.putUrl(url);
+        }
+        String h = text(html);
+        if (h != null) {
+            content.putHtml(h);
+        }
+        String r = text(rtf);
+        if (r != null) {
+            content.putRtf(r);
+        }
+        int[] p = pixels();
+        if (p != null) {
+            WritableImage image = new WritableImage(imageWidth, imageHeight);
+            image.getPixelWriter().setPixels(0, 0, imageWidth, imageHeight, PixelFormat.getIntArgbInstance(), p, 0, imageWidth);
+            content.putImage(image);
+        }
+    }
+
+    /** Small version of the image, or null if there's no image or it isn't ready yet */
+    Image thumbnail() {
+        return thumbnail.getNow(null);
+    }
+
+    /** Run when the thumbnail is ready (on the background thread) */
+    void whenThumbnailReady(Runnable r) {
+        thumbnail.thenRun(r);
+    }
+
+    /** Short list of the formats, ex: "html, image 640x480, 2 files" */
+    String describe() {
+        List<String> parts = new ArrayList<>();
+        if (html != null) {
+            parts.add("html");
+        }
+        if (rtf != null) {
+            parts.add("rtf");
+        }
+        if (pixels != null) {
+            parts.add("image " + imageWidth + "x" + imageHeight);
+        }
+        if (files != null) {
+            parts.add(files.size() + " file(s)");
+        }
+        if (url != null) {
+            parts.add("url");
+        }
+        return String.join(", ", parts);
+    }
+
+    private void pack() {
+        if (html instanceof String) {
+            html = PackedText.pack((String) html);
+        }
+        if (rtf instanceof String) {
+            rtf = PackedText.pack((String) rtf);
+        }
+        if (pixels instanceof int[]) {
+            int[] p = (int[]) pixels;
+            byte[] raw = new byte[4 * p.length];
+            ByteBuffer.wrap(raw).asIntBuffer().put(p);
+            pixels = PackedText.packBytes(raw);
+        }
+    }
+
+    private static String text(Object o) {
+        return o instanceof byte[] ? PackedText.unpack((byte[]) o) : (String) o;
+    }
+
+    private int[] pixels() {
+        Object p = pixels;
+        if (p instanceof byte[]) {
+            int[] unpacked = new int[imageWidth * imageHeight];
+            ByteBuffer.wrap(PackedText.unpackBytes((byte[]) p)).asIntBuffer().get(unpacked);
+            return unpacked;
+        }
+        return (int[]) p;
+    }
+
+    /** Scale down to fit Config.THUMBNAIL_SIZE (nearest neighbour, which is plenty for a list icon) */
+    private static Image makeThumbnail(int[] pixels, int w, int h) {
+        if (w == 0 || h == 0) {
+            return null;
+        }
+        double scale = Math.min(1.0, (double) Config.THUMBNAIL_SIZE / Math.max(w, h));
+        int tw = Math.max(1, (int) (w * scale));
+        int th = Math.max(1, (int) (h * scale));
+        int[] small = new int[tw * th];
+        for (int y = 0; y < th; ++y) {
+            int sy = Math.min(h - 1, (int) (y / scale));
+            for (int x = 0; x < tw; ++x) {
+                small[y * tw + x] = pixels[sy * w + Math.min(w - 1, (int) (x / scale))];
+            }
+        }
+        WritableImage image = new WritableImage(tw, th);
+        image.getPixelWriter().setPixels(0, 0, tw, th, PixelFormat.getIntArgbInstance(), small, 0, tw);
+        return image;
+    }
+}
@@ -2,7 +2,6 @@ package com.juxtaflux;
 
 import org.apache.commons.lang3.tuple.Pair;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Predicate;
 
@@ -22,11 +21,21 @@ interface LineTransformer {
 abstract class ClipboardAsListMutatorBase {
     public List<String> mutate() {
         List<String> result = SysClipboard.readAsLines();
+        long start = OpMetrics.phaseStart();
         mutateImpl(result);
-        SysClipboard.write(String.join(System.lineSeparator(), result));
+        OpMetrics.phaseEnd(OpPhase.TRANSFORM, start);
+        SysClipboard.write(joinLines(result));
         return result;
     }
     protected abstract void mutateImpl(List<String> result);
+
+    /** Join lines back together for writing to the clipboard */
+    static String joinLines(List<String> lines) {
+        long start = OpMetrics.phaseStart();
+        String s = String.join(SysClipboard.lineSeparator(), lines);
+        OpMetrics.phaseEnd(OpPhase.JOIN, start);
+        return s;
+    }
 }
 
 /** Treat the clipboard contents as a list and mutate the list by the given ListTransformer */
@@ -40,34 +49,191 @@ class ClipboardAsListMutator extends ClipboardAsListMutatorBase {
     }
 }
 
-/** Treat the clipboard contents as a list and mutate each line by given LineTransformer */
-class ClipboardAsListMutatorByLine extends ClipboardAsListMutatorBase {
+/**
+ * Treat the clipboard contents as a list and mutate each line by given LineTransformer.
+ * Lines are streamed straight into the result, so only one line at a time exists as a String.
+ */
+class ClipboardAsListMutatorByLine {
     private LineTransformer lineMutator;
     ClipboardAsListMutatorByLine(LineTransformer mutatorFunction) {
         lineMutator = mutatorFunction;
     }
-    protected void mutateImpl(List<String> result) {
-        for (int i = 0; i < result.size(); ++i) {
-            result.set(i, lineMutator.transform(result.get(i)));
+    /** Returns the number of lines mutated */
+    public int mutate() {
+        ClipSnapshot lines = SysClipboard.snapshot();
+        String sep = lines.lineEnding().separator;
+        long start = OpMetrics.phaseStart();
+        StringBuilder sb = new StringBuilder(lines.text.length() + 16);
+        for (int i = 0; i < lines.lineCount(); ++i) {
+            if (i > 0) {
+                sb.append(sep);
+            }
+            sb.append(lineMutator.transform(lines.line(i)));
+        }
+        OpMetrics.phaseEnd(OpPhase.TRANSFORM, start);
+        SysClipboard.write(sb.toString());
+        return lines.lineCount();
+    }
+}
+
+/** for lambdas that write a new version of the line text[start, end) into out */
+@FunctionalInterface
+interface LineRangeTransformer {
+    void transform(String text, int start, int end, StringBuilder out);
+}
+
+/** Like ClipboardAsListMutatorByLine, but works on the line's offsets in the clipboard text so no Strings are created for lines */
+class ClipboardAsLineRangeMutator {
+    private LineRangeTransformer rangeMutator;
+    ClipboardAsLineRangeMutator(LineRangeTransformer mutatorFunction) {
+        rangeMutator = mutatorFunction;
+    }
+    /** Returns the number of lines mutated */
+    public int mutate() {
+        ClipSnapshot lines = SysClipboard.snapshot();
+        String sep = lines.lineEnding().separator;
+        long start = OpMetrics.phaseStart();
+        StringBuilder sb = new StringBuilder(lines.text.length());
+        for (int i = 0; i < lines.lineCount(); ++i) {
+            if (i > 0) {
+                sb.append(sep);
+            }
+            rangeMutator.transform(lines.text, lines.lineStart(i), lines.lineEnd(i), sb);
         }
+        OpMetrics.phaseEnd(OpPhase.TRANSFORM, start);
+        SysClipboard.write(sb.toString());
+        return lines.lineCount();
+    }
+}
+
+/** for lambdas that pick which lines (by line number, in output order) to keep. Returns how many entries of selected are used. */
+@FunctionalInterface
+interface LineSelector {
+    int select(ClipSnapshot lines, int[] selected);
+}
+
+/**
+ * Treat the clipboard contents as a list and keep/reorder whole lines, working only with line numbers and offsets.
+ * The lines that are kept are copied straight from the clipboard text into the result.
+ */
+class ClipboardAsLineSelection {
+    private LineSelector selector;
+    ClipboardAsLineSelection(LineSelector lineSelector) {
+        selector = lineSelector;
+    }
+    /** Returns line count before and after */
+    public Pair<Integer, Integer> select() {
+        ClipSnapshot lines = SysClipboard.snapshot();
+        long start = OpMetrics.phaseStart();
+        int[] selected = new int[lines.lineCount()];
+        int count = selector.select(lines, selected);
+        OpMetrics.phaseEnd(OpPhase.TRANSFORM, start);
+        SysClipboard.write(lines.join(selected, count));
+        return Pair.of(lines.lineCount(), count);
     }
 }
 
-/** Treat the clipboard contents as a list and filter it by the given predicate */
+/** Treat the clipboard contents as a list and filter it by the given predicate. The predicate sees a view of each line, not a copy. */
 class ClipboardAsListFilter {
-    private Predicate<String> filterPredicate;
-    ClipboardAsListFilter(Predicate<String> predicate) {
+    private Predicate<LineView> filterPredicate;
+    ClipboardAsListFilter(Predicate<LineView> predicate) {
         filterPredicate = predicate;
     }
-    public Pair<List<String>, List<String>> filter() {
-        List<String> list = SysClipboard.readAsLines();
-        List<String> filtered = new ArrayList();
-        for (String line : list) {
-            if (filterPredicate.test(line)) {
-                filtered.add(line);
+    /** Returns line count before and after */
+    public Pair<Integer, Integer> filter() {
+        return new ClipboardAsLineSelection( (lines, selected) -> {
+            LineView view = new LineView(lines.text);
+            int count = 0;
+            for (int i = 0; i < lines.lineCount(); ++i) {
+                if (filterPredicate.test(view.moveTo(lines.lineStart(i), lines.lineEnd(i)))) {
+                    selected[count++] = i;
+                }
             }
+            return count;
+        }).select();
+    }
+}
+
+/** Treat the clipboard contents as a list and remove adjacent duplicate lines */
+class ClipboardAsListUniq {
+    /** Returns line count before and after */
+    public Pair<Integer, Integer> uniq() {
+        return new ClipboardAsLineSelection( (lines, selected) -> {
+            int count = 0;
+            for (int i = 0; i < lines.lineCount(); ++i) {
+                if (i == 0 || ! lines.lineEquals(i, selected[count - 1])) {
+                    selected[count++] = i;
+                }
+            }
+            return count;
+        }).select();
+    }
+}
+
+/** Treat the clipboard contents as a list and reverse the order of the lines */
+class ClipboardAsListReverse {
+    /** Returns line count */
+    public int reverse() {
+        return new ClipboardAsLineSelection( (lines, selected) -> {
+            int n = lines.lineCount();
+            for (int i = 0; i < n; ++i) {
+                selected[i] = n - 1 - i;
+            }
+            return n;
+        }).select().getRight();
+    }
+}
+
+/** Basic stats on the clipboard contents when treated as a list of lines */
+class ClipboardAsListStats {
+    int lineCount;
+    int charCount;
+    int wordCount;
+    int minLineLen = Integer.MAX_VALUE;
+    int maxLineLen = 0;
+    long totalLineLen = 0;
+
+    static ClipboardAsListStats calculate() {
+        ClipboardAsListStats stats = new ClipboardAsListStats();
+        ClipSnapshot snapshot = SysClipboard.snapshot();
+        String clipboard = snapshot.text;
+        stats.lineCount = snapshot.lineCount();
+        long start = OpMetrics.phaseStart();
+        for (int i = 0; i < stats.lineCount; ++i) {
+            int lineLength = snapshot.lineEnd(i) - snapshot.lineStart(i);
+            stats.minLineLen = Math.min(stats.minLineLen, lineLength);
+            stats.maxLineLen = Math.max(stats.maxLineLen, lineLength);
+            stats.totalLineLen += lineLength;
         }
-        SysClipboard.write(String.join(System.lineSeparator(), filtered));
-        return Pair.of(list, filtered);
+        stats.charCount = clipboard.length();
+        stats.wordCount = countWords(clipboard);
+        OpMetrics.phaseEnd(OpPhase.TRANSFORM, start);
+        return stats;
     }
-}
\ No newline at end of file
+
+    /**
+     * Count runs of non-whitespace characters (Character.isWhitespace), without creating the words. This is the real
+     * word count, so the "words" stat can differ from the old split("\\s+").length. That counted an empty first
+     * "word" when the text started with whitespace, counted 1 for empty text, and only split on ASCII whitespace.
+     */
+    static int countWords(String s) {
+        int count = 0;
+        boolean inWord = false;
+        for (int i = 0; i < s.length(); ++i) {
+            boolean isSpace = Character.isWhitespace(s.charAt(i));
+            if (! isSpace && ! inWord) {
+                ++count;
+            }
+            inWord = ! isSpace;
+        }
+        return count;
+    }
+
+    public String toString() {
+        return String.format(
+                "List stats: lines=%d chars=%d words=%d min/max/avgLineLength=%d / %d / %.1f",
+                lineCount, charCount, wordCount,
+                minLineLen, maxLineLen, (float) totalLineLen / lineCount
+        );
+    }
+}
@@ -0,0 +1,247 @@
+package com.juxtaflux;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** for lambdas that apply an operation (with the user's two arguments) to some text and return the result */
+@FunctionalInterface
+interface TextOp {
+    String apply(String text, String arg1, String arg2) throws Exception;
+}
+
+/** for lambdas that apply an operation to one line */
+@FunctionalInterface
+interface LineOp {
+    String apply(String line, String arg1, String arg2) throws Exception;
+}
+
+/** for lambdas that decide whether to keep a line */
+@FunctionalInterface
+interface LineTest {
+    boolean test(String line, String arg1, String arg2) throws Exception;
+}
+
+/** for lambdas that change a list of lines in place */
+@FunctionalInterface
+interface LinesOp {
+    void apply(List<String> lines, String arg1, String arg2) throws Exception;
+}
+
+/**
+ * Simple, String based versions of the clipboard operations, keyed by the id of their button.
+ *
+ * The button handlers in Controller are tuned for big clipboards. These versions work on any piece of text without
+ * touching the clipboard, which is what is needed to preview what a button would do to a small sample of lines.
+ */
+class ClipOps {
+    private static final Map<String, TextOp> ops = new HashMap<>();
+    private static final Pattern BUFFER_REF = Pattern.compile("\\$\\{(\\d+)\\}");
+    private static final BufferStore store = new BufferStore();
+
+    static {
+        ops.put("btnStrLTrim", (text, arg1, arg2) -> StringUtil.ltrim(text));
+        ops.put("btnStrTrim", (text, arg1, arg2) -> text.trim());
+        ops.put("btnStrRTrim", (text, arg1, arg2) -> StringUtil.rtrim(text));
+        ops.put("btnStrLower", (text, arg1, arg2) -> text.toLowerCase());
+        ops.put("btnStrUpper", (text, arg1, arg2) -> text.toUpperCase());
+        ops.put("btnStrPrepend", (text, arg1, arg2) -> arg1 + text);
+        ops.put("btnStrAppend", (text, arg1, arg2) -> text + arg1);
+        ops.put("btnStrWordWrap", (text, arg1, arg2) -> wrap(text, arg1, arg2, Align.LEFT));
+        ops.put("btnStrJustify", (text, arg1, arg2) -> wrap(text, arg1, arg2, Align.JUSTIFY));
+        ops.put("btnStrSplit", (text, arg1, arg2) -> text.replace(arg1, "\n"));
+        ops.put("btnStrReplace", (text, arg1, arg2) -> {
+            List<String> patterns = bufferLines(arg1);
+            if (patterns != null) {
+                return new AhoCorasick(patterns).replace(text, replacements(arg2, patterns.size())).getLeft();
+            }
+            return text.replace(StringUtil.replaceSpecialChars(arg1), StringUtil.replaceSpecialChars(arg2));
+        });
+        ops.put("btnStrRegexRepl", (text, arg1, arg2) -> text.replaceAll(arg1, arg2));
+        ops.put("btnStrPretty", (text, arg1, arg2) -> StructuredText.pretty(text, Functions.parseIndentUnit(arg1), "\n"));
+        ops.put("btnStrMinify", (text, arg1, arg2) -> StructuredText.minify(text));
+        ops.put("btnStrExtract", (text, arg1, arg2) -> StructuredText.extract(text, arg1, "\n").getLeft());
+
+        ops.put("btnListLTrim", byLine( (line, arg1, arg2) -> StringUtil.ltrim(line) ));
+        ops.put("btnListTrim", byLine( (line, arg1, arg2) -> line.trim() ));
+        ops.put("btnListRTrim", byLine( (line, arg1, arg2) -> StringUtil.rtrim(line) ));
+        ops.put("btnListCollapse", filter( (line, arg1, arg2) -> line.length() > 0 ));
+        ops.put("btnListUniq", lines( (lines, arg1, arg2) -> {
+            List<String> uniq = new ArrayList<>();
+            for (String line : lines) {
+                if (uniq.isEmpty() || ! line.equals(uniq.get(uniq.size() - 1))) {
+                    uniq.add(line);
+                }
+            }
+            lines.clear();
+            lines.addAll(uniq);
+        }));
+        ops.put("btnListSort", lines( (lines, arg1, arg2) -> Collections.sort(lines) ));
+        ops.put("btnListReverse", lines( (lines, arg1, arg2) -> Collections.reverse(lines) ));
+        ops.put("btnListPrepend", byLine( (line, arg1, arg2) -> arg1 + line ));
+        ops.put("btnListAppend", byLine( (line, arg1, arg2) -> line + arg1 ));
+        ops.put("btnListCenter", (text, arg1, arg2) -> new LineFormatter(Integer.valueOf(arg1), Align.CENTER, false, 0, 0, "\n").format(text));
+        ops.put("btnListRight", (text, arg1, arg2) -> new LineFormatter(Integer.valueOf(arg1), Align.RIGHT, false, 0, 0, "\n").format(text));
+        ops.put("btnListIndent", (text, arg1, arg2) -> new LineFormatter(0, Align.LEFT, false, Integer.valueOf(arg1), 0, "\n").format(text));
+        ops.put("btnListSlice", (text, arg1, arg2) -> {
+            Slice slice = Slice.parse(arg1);
+            return byLine( (line, a1, a2) -> slice.of(line) ).apply(text, arg1, arg2);
+        });
+        ops.put("btnListSliceLines", (text, arg1, arg2) -> String.join("\n", Slice.parse(arg1).of(splitLines(text))));
+        ops.put("btnListHead", (text, arg1, arg2) -> new ClipSnapshot(text).head(Functions.parseLineCount(arg1)));
+        ops.put("btnListTail", (text, arg1, arg2) -> new ClipSnapshot(text).tail(Functions.parseLineCount(arg1)));
+        ops.put("btnListEvery", (text, arg1, arg2) -> new ClipSnapshot(text).everyNth(Functions.parseLineCount(arg1)));
+        ops.put("btnListSample", (text, arg1, arg2) -> {
+            Number size = Functions.parseSampleSize(arg1);
+            ClipSnapshot snapshot = new ClipSnapshot(text);
+            return size instanceof Integer ? snapshot.sample(size.intValue(), new Random()) : snapshot.sample(size.doubleValue(), new Random());
+        });
+        ops.put("btnListJoin", (text, arg1, arg2) -> String.join(arg1, splitLines(text)));
+        ops.put("btnListContains", (text, arg1, arg2) -> {
+            List<String> patterns = bufferLines(arg1);
+            if (patterns != null) {
+                AhoCorasick matcher = new AhoCorasick(patterns);
+                return filter( (line, a1, a2) -> matcher.containsAny(line) ).apply(text, arg1, arg2);
+            }
+            return filter( (line, a1, a2) -> line.contains(arg1) ).apply(text, arg1, arg2);
+        });
+        ops.put("btnListRegex", (text, arg1, arg2) -> {
+            Pattern regex = Pattern.compile("^.*" + arg1 + ".*$");
+            return filter( (line, a1, a2) -> regex.matcher(line).matches() ).apply(text, arg1, arg2);
+        });
+        ops.put("btnListRegexFull", (text, arg1, arg2) -> {
+            Pattern regex = Pattern.compile(arg1);
+            return filter( (line, a1, a2) -> regex.matcher(line).matches() ).apply(text, arg1, arg2);
+        });
+        ops.put("btnListRegexRepl", (text, arg1, arg2) -> {
+            Pattern regex = Pattern.compile(arg1);
+            return byLine( (line, a1, a2) -> regex.matcher(line).replaceAll(arg2) ).apply(text, arg1, arg2);
+        });
+        ops.put("btnListExpr", (text, arg1, arg2) -> {
+            LineExpr expr = LineExpr.compile(arg1, LineExpr.delimiter(arg2));
+            if (expr.isFilter()) {
+                Predicate<String> keep = expr.predicate();
+                return filter( (line, a1, a2) -> keep.test(line) ).apply(text, arg1, arg2);
+            }
+            LineTransformer transformer = expr.transformer();
+            return byLine( (line, a1, a2) -> transformer.transform(line) ).apply(text, arg1, arg2);
+        });
+
+        codec("btnCodecBase64", () -> Codecs.encoder(Codec.BASE64));
+        codec("btnCodecUnBase64", () -> Codecs.decoder(Codec.BASE64));
+        codec("btnCodecUrl", () -> Codecs.encoder(Codec.URL));
+        codec("btnCodecUnUrl", () -> Codecs.decoder(Codec.URL));
+        codec("btnCodecHex", () -> Codecs.encoder(Codec.HEX));
+        codec("btnCodecUnHex", () -> Codecs.decoder(Codec.HEX));
+        codec("btnCodecHtml", () -> Codecs.encoder(Codec.HTML));
+        codec("btnCodecUnHtml", () -> Codecs.decoder(Codec.HTML));
+        codec("btnCodecMd5", () -> Codecs.digest(Digest.MD5));
+        codec("btnCodecSha256", () -> Codecs.digest(Digest.SHA256));
+        codec("btnCodecCrc32", () -> Codecs.digest(Digest.CRC32));
+    }
+
+    /** Register a codec button's operation on the whole text, and on each line as buttonId + "Lines" */
+    private static void codec(String buttonId, Supplier<LineRangeTransformer> transformer) {
+        ops.put(buttonId, (text, arg1, arg2) -> Codecs.apply(transformer.get(), text));
+        ops.put(buttonId + "Lines", (text, arg1, arg2) -> Codecs.applyByLine(transformer.get(), text));
+    }
+
+    /** The operation for the given button, or null if the button doesn't transform the clipboard */
+    static TextOp get(String buttonId) {
+        return ops.get(buttonId);
+    }
+
+    /**
+     * Publish the buffer list for operations that refer to buffers. Call from the JavaFX thread. Changes after that
+     * go through store().changed() and store().publishIfChanged(), so a burst of changes is published once. Only the buffers that are actually referred to get their text expanded.
+     */
+    static void setBuffers(List<ClipBuffer> buffers) {
+        store.publish(buffers);
+    }
+
+    /** The buffer list as of the last change (safe to read from any thread) */
+    static List<ClipBuffer> buffers() {
+        return store.snapshot();
+    }
+
+    /** Where background threads add buffers, and read the buffer list */
+    static BufferStore store() {
+        return store;
+    }
+
+    /** If arg refers to a buffer ("${N}", like in templates), returns that buffer's lines. Otherwise null. */
+    static List<String> bufferLines(String arg) throws ArgParseError {
+        Matcher m = BUFFER_REF.matcher(arg.trim());
+        if (!m.matches()) {
+            return null;
+        }
+        List<ClipBuffer> buffers = store.snapshot();
+        int idx = Integer.parseInt(m.group(1));
+        if (idx >= buffers.size()) {
+            throw new ArgParseError("There is no buffer " + idx + " (there are " + buffers.size() + ")");
+        }
+        return splitLines(buffers.get(idx).text());
+    }
+
+    /** Replacement for each of count patterns: either the lines of a buffer ("${N}"), one per pattern, or arg for all of them */
+    static String[] replacements(String arg, int count) throws ArgParseError {
+        List<String> lines = bufferLines(arg);
+        if (lines == null) {
+            String[] all = new String[count];
+            Arrays.fill(all, StringUtil.replaceSpecialChars(arg));
+            return all;
+        }
+        if (lines.size() != count) {
+            throw new ArgParseError("There are " + count + " patterns but " + lines.size() + " replacements (one per line)");
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    private static String wrap(String text, String arg1, String arg2, Align align) throws ArgParseError {
+        int[] indents = Functions.parseIndents(arg2);
+        return new LineFormatter(Integer.valueOf(arg1), align, true, indents[0], indents[1], "\n").format(text);
+    }
+
+    static List<String> splitLines(String text) {
+        return new ClipSnapshot(text).lines();
+    }
+
+    static TextOp byLine(LineOp op) {
+        return (text, arg1, arg2) -> {
+            List<String> lines = splitLines(text);
+            for (int i = 0; i < lines.size(); ++i) {
+                lines.set(i, op.apply(lines.get(i), arg1, arg2));
+            }
+            return String.join("\n", lines);
+        };
+    }
+
+    static TextOp filter(LineTest test) {
+        return (text, arg1, arg2) -> {
+            List<String> kept = new ArrayList<>();
+            for (String line : splitLines(text)) {
+                if (test.test(line, arg1, arg2)) {
+                    kept.add(line);
+                }
+            }
+            return String.join("\n", kept);
+        };
+    }
+
+    static TextOp lines(LinesOp op) {
+        return (text, arg1, arg2) -> {
+            List<String> lines = new ArrayList<>(splitLines(text));
+            op.apply(lines, arg1, arg2);
+            return String.join("\n", lines);
+        };
+    }
+}
@@ -0,0 +1,270 @@
+package com.juxtaflux;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Message framing for ClipServer: a 4 byte big-endian length, then that many bytes of UTF-8 */
+class Frames {
+    /** Returns null at the end of the stream */
+    static String read(DataInputStream in) throws IOException {
+        return read(in, Config.SERVER_MAX_FRAME);
+    }
+
+    /** Frames longer than maxLength bytes are refused before anything is allocated for them */
+    static String read(DataInputStream in, int maxLength) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException exc) {
+            return null;
+        }
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Bad frame length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void write(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
+
+/**
+ * Lets scripts store, retrieve, list and transform buffers over a socket on the loopback interface.
+ *
+ * Buffers are clipboard history, which often has passwords and such in it, so other local users and processes must
+ * not be able to read them. Each start() makes a new random token and writes it to a file only the user can read
+ * (Config.SERVER_TOKEN_FILE in the home folder). The first frame of every connection has to be "auth\t(token)",
+ * or the connection is dropped.
+ *
+ * After that, each request is one frame (see Frames): a header line of tab separated fields, then optionally a newline and a body.
+ *   store\n(text)                            add a buffer
+ *   retrieve\tN                              text of buffer N
+ *   list                                     one line per buffer: index, chars, what the buffer list shows
+ *   transform\tbuttonId\targ1\targ2\n(text)  run a clipboard operation (ex: btnListSort) on the text
+ * Each reply is one frame: "ok" or "err", a newline, then the result or error message.
+ *
+ * Connections are served on their own threads and never touch the JavaFX thread. Stored buffers go into the
+ * BufferStore's append log, and the UI adds everything that arrived since the last frame in one go. Retrieve and list
+ * read the store's snapshot, so a buffer shows up there once the UI has added it.
+ */
+class ClipServer {
+    private final BufferStore store;
+    private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "Clip server connection");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Path tokenFile;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet(); // open connections, closed by stop()
+    private volatile ServerSocket serverSocket;
+    private volatile byte[] token;
+
+    ClipServer(BufferStore store, Path tokenFile) {
+        this.store = store;
+        this.tokenFile = tokenFile;
+    }
+
+    /** Start listening on the loopback interface. Port 0 picks a free port. Returns the port. */
+    int start(int port) throws IOException {
+        token = newToken();
+        writeTokenFile(token);
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        connections.submit(this::acceptLoop);
+        return serverSocket.getLocalPort();
+    }
+
+    /** Stop listening, drop every open connection and delete the token file */
+    void stop() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException exc) {
+            System.out.println("Problem closing clip server: " + exc);
+        }
+        serverSocket = null;
+        for (Socket s : clients) {
+            try {
+                s.close(); // the connection's thread gets an IOException and finishes
+            } catch (IOException exc) {
+                System.out.println("Problem closing clip server connection: " + exc);
+            }
+        }
+        clients.clear();
+        token = null;
+        try {
+            Files.deleteIfExists(tokenFile);
+        } catch (IOException exc) {
+            System.out.println("Problem deleting " + tokenFile + ": " + exc);
+        }
+    }
+
+    /** Where the token for this run is written */
+    Path tokenFile() {
+        return tokenFile;
+    }
+
+    private static byte[] newToken() {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : random) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Write the token to a new file that only the user can read and write */
+    private void writeTokenFile(byte[] token) throws IOException {
+        Files.deleteIfExists(tokenFile); // a new file, so nobody else can already have it open
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(tokenFile);
+            File f = tokenFile.toFile();
+            f.setReadable(false, false);
+            f.setWritable(false, false);
+            f.setReadable(true, true);
+            f.setWritable(true, true);
+        }
+        Files.write(tokenFile, token);
+    }
+
+    /** Is the first frame of a connection "auth\t(token)" with this run's token? Compared in constant time. */
+    boolean authorized(String request) {
+        byte[] expected = token;
+        if (expected == null || request == null || !request.startsWith("auth\t")) {
+            return false;
+        }
+        return MessageDigest.isEqual(expected, request.substring("auth\t".length()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void acceptLoop() {
+        ServerSocket ss = serverSocket;
+        while (ss != null && !ss.isClosed()) {
+            try {
+                Socket s = ss.accept();
+                connections.submit(() -> serve(s));
+            } catch (IOException exc) {
+                if (!ss.isClosed()) {
+                    System.out.println("Problem accepting clip server connection: " + exc);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket s) {
+        clients.add(s);
+        try (Socket socket = s) {
+            if (serverSocket == null) {
+                return; // stopped while this connection was waiting to be served
+            }
+            socket.setTcpNoDelay(true);
+            InputStream raw = socket.getInputStream();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 64 * 1024));
+            OutputStream rawOut = socket.getOutputStream();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(rawOut, 64 * 1024));
+            if (!authorized(Frames.read(in, Config.SERVER_MAX_AUTH_FRAME))) {
+                Frames.write(out, "err\nThe first request must be auth\t(token from " + tokenFile.getFileName() + ")");
+                out.flush();
+                return;
+            }
+            Frames.write(out, "ok\n");
+            out.flush();
+            String request;
+            while ((request = Frames.read(in)) != null) {
+                Frames.write(out, handle(request));
+                if (in.available() == 0) {
+                    out.flush(); // flush once per burst of pipelined requests, not once per reply
+                }
+            }
+            out.flush();
+        } catch (IOException exc) {
+            System.out.println("Clip server connection closed: " + exc.getMessage());
+        } finally {
+            clients.remove(s);
+        }
+    }
+
+    /** The reply to one request */
+    String handle(String request) {
+        int newline = request.indexOf('\n');
+        String header = newline < 0 ? request : request.substring(0, newline);
+        String body = newline < 0 ? "" : request.substring(newline + 1);
+        String[] fields = header.split("\t", -1);
+        try {
+            switch (fields[0]) {
+                case "store":
+                    store.add(new ClipBuffer(body));
+                    return "ok\n";
+                case "retrieve":
+                    return "ok\n" + buffer(fields).text();
+                case "list":
+                    return "ok\n" + list();
+                case "transform":
+                    return "ok\n" + transform(fields, body);
+                default:
+                    return "err\nUnknown request: " + fields[0];
+            }
+        } catch (Exception exc) {
+            return "err\n" + exc.getMessage();
+        }
+    }
+
+    private ClipBuffer buffer(String[] fields) throws ArgParseError {
+        if (fields.length < 2) {
+            throw new ArgParseError("retrieve needs a buffer index");
+        }
+        Integer idx = Functions.parseToken(fields[1]);
+        List<ClipBuffer> list = store.snapshot();
+        if (idx == null || idx < 0 || idx >= list.size()) {
+            throw new ArgParseError("There is no buffer " + fields[1] + " (there are " + list.size() + ")");
+        }
+        return list.get(idx);
+    }
+
+    private String list() {
+        StringBuilder sb = new StringBuilder();
+        List<ClipBuffer> list = store.snapshot();
+        for (int i = 0; i < list.size(); ++i) {
+            ClipBuffer b = list.get(i);
+            sb.append(i).append('\t').append(b.length()).append('\t').append(b).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private String transform(String[] fields, String text) throws Exception {
+        TextOp op = fields.length < 2 ? null : ClipOps.get(fields[1]);
+        if (op == null) {
+            throw new ArgParseError("Unknown operation: " + (fields.length < 2 ? "" : fields[1]));
+        }
+        return op.apply(text, fields.length > 2 ? fields[2] : "", fields.length > 3 ? fields[3] : "");
+    }
+}
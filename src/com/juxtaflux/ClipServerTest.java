@@ -0,0 +1,125 @@
+package com.juxtaflux;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ClipServerTest {
+    private BufferStore store;
+    private ClipServer server;
+    private Path tokenFile;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new BufferStore();
+        store.publish(Arrays.asList(new ClipBuffer("first"), new ClipBuffer("second")));
+        tokenFile = Files.createTempDirectory("ClipServerTest").resolve("token");
+        server = new ClipServer(store, tokenFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        Files.deleteIfExists(tokenFile.getParent());
+    }
+
+    private Socket connect(int port) throws Exception {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        Frames.write(out, "auth\t" + new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8));
+        out.flush();
+        assertEquals("ok\n", Frames.read(new DataInputStream(socket.getInputStream())));
+        return socket;
+    }
+
+    @Test
+    public void storeIsQueued() {
+        assertEquals("ok\n", server.handle("store\nabc"));
+        assertEquals("ok\n", server.handle("store\ndef\nghi"));
+        List<ClipBuffer> batch = store.drain();
+        assertEquals(2, batch.size());
+        assertEquals("abc", batch.get(0).text());
+        assertEquals("def\nghi", batch.get(1).text());
+        assertTrue(store.drain().isEmpty());
+    }
+
+    @Test
+    public void retrieveAndList() {
+        assertEquals("ok\nsecond", server.handle("retrieve\t1"));
+        assertEquals("ok\n0\t5\tfirst\n1\t6\tsecond\n", server.handle("list"));
+        assertTrue(server.handle("retrieve\t2").startsWith("err\n"));
+        assertTrue(server.handle("retrieve\tx").startsWith("err\n"));
+    }
+
+    @Test
+    public void transform() {
+        assertEquals("ok\nb\nc\nz", server.handle("transform\tbtnListSort\t\t\nz\nb\nc"));
+        assertTrue(server.handle("transform\tbtnNope\nabc").startsWith("err\n"));
+        assertTrue(server.handle("bogus").startsWith("err\n"));
+    }
+
+    @Test
+    public void pipelinedOverSocket() throws Exception {
+        int port = server.start(0);
+        try (Socket socket = connect(port)) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            for (int i = 0; i < 100; ++i) {
+                Frames.write(out, "store\nclip " + i);
+            }
+            Frames.write(out, "retrieve\t0");
+            out.flush();
+            for (int i = 0; i < 100; ++i) {
+                assertEquals("ok\n", Frames.read(in));
+            }
+            assertEquals("ok\nfirst", Frames.read(in));
+        }
+        assertEquals(100, store.drain().size());
+    }
+
+    @Test
+    public void needsTheToken() throws Exception {
+        int port = server.start(0);
+        assertTrue(Files.exists(tokenFile));
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            Frames.write(out, "list");
+            out.flush();
+            assertTrue(Frames.read(in).startsWith("err\n"));
+            assertNull(Frames.read(in)); // and the connection is closed
+        }
+        assertFalse(server.authorized("auth\twrong"));
+        server.stop();
+        assertFalse(Files.exists(tokenFile));
+    }
+
+    @Test
+    public void stopClosesOpenConnections() throws Exception {
+        int port = server.start(0);
+        try (Socket socket = connect(port)) {
+            server.stop();
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            try {
+                Frames.write(out, "list");
+                out.flush();
+                assertNull(Frames.read(in));
+            } catch (java.io.IOException exc) {
+                // also fine: the server already closed it
+            }
+        }
+    }
+}
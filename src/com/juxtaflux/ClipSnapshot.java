@@ -0,0 +1,369 @@
+package com.juxtaflux;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** Line ending styles that can show up in clipboard text */
+enum LineEnding {
+    LF("\n"), CRLF("\r\n"), CR("\r");
+
+    final String separator;
+    LineEnding(String separator) {
+        this.separator = separator;
+    }
+    static LineEnding platformDefault() {
+        for (LineEnding e : values()) {
+            if (e.separator.equals(System.lineSeparator())) {
+                return e;
+            }
+        }
+        return LF;
+    }
+}
+
+/**
+ * Read-only window onto part of a larger String. It can be moved to another range, so one instance can be reused to
+ * look at every line in turn without copying any characters. Only valid until it is moved, so don't hang on to it.
+ */
+class LineView implements CharSequence {
+    private final String text;
+    private int start;
+    private int end;
+
+    LineView(String text) {
+        this.text = text;
+    }
+    LineView moveTo(int start, int end) {
+        this.start = start;
+        this.end = end;
+        return this;
+    }
+    public int length() {
+        return end - start;
+    }
+    public char charAt(int index) {
+        return text.charAt(start + index);
+    }
+    public CharSequence subSequence(int from, int to) {
+        return text.subSequence(start + from, start + to);
+    }
+    public String toString() {
+        return text.substring(start, end);
+    }
+    /** String.contains() without copying the line out first */
+    boolean contains(String s) {
+        int last = end - s.length();
+        for (int i = start; i <= last; ++i) {
+            if (text.startsWith(s, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
+
+/**
+ * Text read from the clipboard at one point in time, plus a lazily built index of where each line starts and ends.
+ *
+ * Lines can be split by any mix of \n, \r\n and \r. The most common one is remembered as the line ending style so
+ * list operations can write their result back with the same style they read.
+ */
+class ClipSnapshot {
+    final String text;
+    private int[] bounds; // start and end offset of each line: line i is text[bounds[2*i], bounds[2*i+1])
+    private int lineCount;
+    private LineEnding lineEnding;
+    private boolean mixedLineEndings;
+    private Boolean surrogates;
+
+    ClipSnapshot(String text) {
+        this.text = text == null ? "" : text; // clipboard has no text in it (ex: an image)
+    }
+
+    int lineCount() {
+        index();
+        return lineCount;
+    }
+    int lineStart(int i) {
+        index();
+        return bounds[2 * i];
+    }
+    int lineEnd(int i) {
+        index();
+        return bounds[2 * i + 1];
+    }
+    String line(int i) {
+        index();
+        return text.substring(bounds[2 * i], bounds[2 * i + 1]);
+    }
+    /** All lines as Strings. The list can be modified with set() and sorted, but not resized. */
+    List<String> lines() {
+        index();
+        String[] lines = new String[lineCount];
+        for (int i = 0; i < lineCount; ++i) {
+            lines[i] = text.substring(bounds[2 * i], bounds[2 * i + 1]);
+        }
+        return Arrays.asList(lines);
+    }
+    /** Number of the line that the given offset into the text falls on. Binary search of the index. */
+    int lineAt(int offset) {
+        index();
+        int lo = 0;
+        int hi = lineCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (bounds[2 * mid] <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+    /** Text of the first n lines. Only scans as far as it needs to, so it doesn't build the index of the whole text. */
+    String head(int n) {
+        if (n <= 0) {
+            return "";
+        }
+        if (bounds != null) {
+            return n >= lineCount ? text : text.substring(0, bounds[2 * (n - 1) + 1]);
+        }
+        int lines = 0;
+        int len = text.length();
+        for (int i = 0; i < len; ++i) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                if (++lines == n) {
+                    return text.substring(0, i);
+                }
+                if (c == '\r' && i + 1 < len && text.charAt(i + 1) == '\n') {
+                    ++i;
+                }
+            }
+        }
+        return text;
+    }
+    /** Text of the last n lines. Scans backwards from the end, so it doesn't build the index of the whole text. */
+    String tail(int n) {
+        if (n <= 0) {
+            return "";
+        }
+        if (bounds != null) {
+            return n >= lineCount ? text : text.substring(bounds[2 * (lineCount - n)]);
+        }
+        int lines = 0;
+        for (int i = text.length() - 1; i >= 0; --i) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                if (++lines == n) {
+                    return text.substring(i + 1);
+                }
+                if (c == '\n' && i > 0 && text.charAt(i - 1) == '\r') {
+                    --i;
+                }
+            }
+        }
+        return text;
+    }
+    /** Every nth line, starting with the first. One pass over the text that copies the lines it keeps, without building the index. */
+    String everyNth(int n) {
+        StringBuilder sb = new StringBuilder(text.length() / n + 16);
+        int[] last = {-1, -1}; // start and end (after its line break) of the last line kept
+        scanLines( (number, start, next) -> {
+            if (number % n == 0) {
+                sb.append(text, start, next);
+                last[0] = start;
+                last[1] = next;
+            }
+        });
+        sb.setLength(sb.length() - (last[1] - withoutLineBreak(last[0], last[1])));
+        return sb.toString();
+    }
+    /**
+     * k lines picked at random, in their original order. Reservoir sampling: one pass over the text, keeping only the
+     * offsets of k lines, so memory doesn't grow with the size of the text.
+     */
+    String sample(int k, Random rand) {
+        // start << 32 | end (after its line break), so sorting puts them in text order. Grows as lines are seen, so a
+        // huge k on a small text doesn't allocate k slots.
+        long[][] reservoir = {new long[Math.min(k, 64)]};
+        int[] count = {0};
+        scanLines( (number, start, next) -> {
+            long line = (long) start << 32 | next;
+            if (number < k) {
+                if (count[0] == reservoir[0].length) {
+                    reservoir[0] = Arrays.copyOf(reservoir[0], (int) Math.min(k, 2L * count[0]));
+                }
+                reservoir[0][count[0]++] = line;
+            } else {
+                int j = rand.nextInt(number + 1);
+                if (j < k) {
+                    reservoir[0][j] = line;
+                }
+            }
+        });
+        long[] kept = reservoir[0];
+        Arrays.sort(kept, 0, count[0]);
+        return joinKept(kept, count[0]);
+    }
+    /** Each line kept with probability fraction, in their original order. One pass, memory only for the lines kept. */
+    String sample(double fraction, Random rand) {
+        long[][] kept = {new long[64]};
+        int[] count = {0};
+        scanLines( (number, start, next) -> {
+            if (rand.nextDouble() < fraction) {
+                if (count[0] == kept[0].length) {
+                    kept[0] = Arrays.copyOf(kept[0], count[0] * 2);
+                }
+                kept[0][count[0]++] = (long) start << 32 | next;
+            }
+        });
+        return joinKept(kept[0], count[0]);
+    }
+    /** Copy out lines given as start << 32 | end (after its line break), with the line break of the last one dropped */
+    private String joinKept(long[] lines, int count) {
+        long size = 0;
+        for (int i = 0; i < count; ++i) {
+            size += (int) lines[i] - (int) (lines[i] >>> 32);
+        }
+        StringBuilder sb = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8, size));
+        for (int i = 0; i < count; ++i) {
+            int start = (int) (lines[i] >>> 32);
+            int next = (int) lines[i];
+            sb.append(text, start, i == count - 1 ? withoutLineBreak(start, next) : next);
+        }
+        return sb.toString();
+    }
+    /** End of the line text[start, next) without its line break (lines never have \n or \r in them, only at the end) */
+    private int withoutLineBreak(int start, int next) {
+        while (next > start && (text.charAt(next - 1) == '\n' || text.charAt(next - 1) == '\r')) {
+            --next;
+        }
+        return next;
+    }
+
+    /** Called for each line: its number, where it starts, and where the next one starts (the end of its line break) */
+    private interface LineVisitor {
+        void line(int number, int start, int next);
+    }
+    /** Visit every line from the top, without building the index */
+    private void scanLines(LineVisitor visitor) {
+        int number = 0;
+        int lineStart = 0;
+        int len = text.length();
+        for (int i = 0; i < len; ++i) {
+            char c = text.charAt(i);
+            if (c != '\n' && c != '\r') {
+                continue;
+            }
+            if (c == '\r' && i + 1 < len && text.charAt(i + 1) == '\n') {
+                ++i;
+            }
+            visitor.line(number++, lineStart, i + 1);
+            lineStart = i + 1;
+        }
+        visitor.line(number, lineStart, len);
+    }
+    /** Are lines i and j the same text? Compares in place without creating Strings. */
+    boolean lineEquals(int i, int j) {
+        index();
+        int len = bounds[2 * i + 1] - bounds[2 * i];
+        return len == bounds[2 * j + 1] - bounds[2 * j] && text.regionMatches(bounds[2 * i], text, bounds[2 * j], len);
+    }
+    /** Join the given lines (by line number, first count entries) with this snapshot's line ending, copying straight from the text */
+    String join(int[] lineNumbers, int count) {
+        index();
+        long start = OpMetrics.phaseStart();
+        String sep = lineEnding.separator;
+        long size = 0;
+        for (int i = 0; i < count; ++i) {
+            size += bounds[2 * lineNumbers[i] + 1] - bounds[2 * lineNumbers[i]] + sep.length();
+        }
+        StringBuilder sb = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8, size));
+        for (int i = 0; i < count; ++i) {
+            if (i > 0) {
+                sb.append(sep);
+            }
+            sb.append(text, bounds[2 * lineNumbers[i]], bounds[2 * lineNumbers[i] + 1]);
+        }
+        OpMetrics.phaseEnd(OpPhase.JOIN, start);
+        return sb.toString();
+    }
+    /** The most common line ending in the text. Falls back to the platform's line ending if there is only one line. */
+    LineEnding lineEnding() {
+        index();
+        return lineEnding;
+    }
+    boolean hasMixedLineEndings() {
+        index();
+        return mixedLineEndings;
+    }
+
+    /** Does the text have any surrogate chars in it? (ie: characters outside of the BMP, like emoji) */
+    boolean hasSurrogates() {
+        if (surrogates == null) {
+            boolean found = false;
+            for (int i = 0, len = text.length(); i < len && !found; ++i) {
+                found = Character.isSurrogate(text.charAt(i));
+            }
+            surrogates = found;
+        }
+        return surrogates;
+    }
+
+    private void index() {
+        if (bounds != null) {
+            return;
+        }
+        long start = OpMetrics.phaseStart();
+        int[] b = new int[32];
+        int count = 0;
+        int lf = 0;
+        int crlf = 0;
+        int cr = 0;
+        int lineStart = 0;
+        int len = text.length();
+        for (int i = 0; i < len; ++i) {
+            char c = text.charAt(i);
+            if (c != '\n' && c != '\r') {
+                continue;
+            }
+            if (2 * count + 2 > b.length) {
+                b = Arrays.copyOf(b, b.length * 2);
+            }
+            b[2 * count] = lineStart;
+            b[2 * count + 1] = i;
+            ++count;
+            if (c == '\n') {
+                ++lf;
+            } else if (i + 1 < len && text.charAt(i + 1) == '\n') {
+                ++crlf;
+                ++i;
+            } else {
+                ++cr;
+            }
+            lineStart = i + 1;
+        }
+        if (2 * count + 2 > b.length) {
+            b = Arrays.copyOf(b, 2 * count + 2);
+        }
+        b[2 * count] = lineStart;
+        b[2 * count + 1] = len;
+        ++count;
+
+        bounds = b;
+        lineCount = count;
+        mixedLineEndings = (lf > 0 ? 1 : 0) + (crlf > 0 ? 1 : 0) + (cr > 0 ? 1 : 0) > 1;
+        if (lf == 0 && crlf == 0 && cr == 0) {
+            lineEnding = LineEnding.platformDefault();
+        } else if (crlf >= lf && crlf >= cr) {
+            lineEnding = LineEnding.CRLF;
+        } else if (lf >= cr) {
+            lineEnding = LineEnding.LF;
+        } else {
+            lineEnding = LineEnding.CR;
+        }
+        OpMetrics.phaseEnd(OpPhase.SPLIT, start);
+    }
+}
@@ -0,0 +1,150 @@
+package com.juxtaflux;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ClipSnapshotTest {
+    @Test
+    public void singleLine() throws Exception {
+        ClipSnapshot s = new ClipSnapshot("abc");
+        assertEquals(1, s.lineCount());
+        assertEquals("abc", s.line(0));
+        assertEquals(LineEnding.platformDefault(), s.lineEnding());
+        assertFalse(s.hasMixedLineEndings());
+    }
+
+    @Test
+    public void emptyAndMissing() throws Exception {
+        assertEquals(Arrays.asList(""), new ClipSnapshot("").lines());
+        assertEquals(Arrays.asList(""), new ClipSnapshot(null).lines());
+    }
+
+    @Test
+    public void lineEndings() throws Exception {
+        assertEquals(Arrays.asList("a", "b", ""), new ClipSnapshot("a\nb\n").lines());
+        assertEquals(LineEnding.LF, new ClipSnapshot("a\nb\n").lineEnding());
+        assertEquals(Arrays.asList("a", "b", ""), new ClipSnapshot("a\r\nb\r\n").lines());
+        assertEquals(LineEnding.CRLF, new ClipSnapshot("a\r\nb\r\n").lineEnding());
+        assertEquals(Arrays.asList("a", "b"), new ClipSnapshot("a\rb").lines());
+        assertEquals(LineEnding.CR, new ClipSnapshot("a\rb").lineEnding());
+    }
+
+    @Test
+    public void mixedLineEndings() throws Exception {
+        ClipSnapshot s = new ClipSnapshot("a\r\nb\nc\r\n\r\nd");
+        assertEquals(Arrays.asList("a", "b", "c", "", "d"), s.lines());
+        assertEquals(LineEnding.CRLF, s.lineEnding());
+        assertTrue(s.hasMixedLineEndings());
+        assertEquals(3, s.lineStart(1));
+        assertEquals(4, s.lineEnd(1));
+    }
+
+    @Test
+    public void lineAtOffset() throws Exception {
+        ClipSnapshot s = new ClipSnapshot("ab\r\n\r\ncd\ne");
+        assertEquals(0, s.lineAt(0));
+        assertEquals(0, s.lineAt(3)); // in the line ending
+        assertEquals(1, s.lineAt(4));
+        assertEquals(2, s.lineAt(6));
+        assertEquals(3, s.lineAt(9));
+        assertEquals(3, s.lineAt(10));
+    }
+
+    @Test
+    public void joinAndCompareByOffsets() throws Exception {
+        ClipSnapshot s = new ClipSnapshot("b\na\nb\nbb");
+        assertTrue(s.lineEquals(0, 2));
+        assertFalse(s.lineEquals(0, 1));
+        assertFalse(s.lineEquals(0, 3));
+        assertEquals("bb\na\nb", s.join(new int[] {3, 1, 0, 99}, 3));
+        assertEquals("", s.join(new int[0], 0));
+    }
+
+    @Test
+    public void headAndTailWithoutIndex() throws Exception {
+        String text = "a\r\nb\nc\rd";
+        assertEquals("a\r\nb", new ClipSnapshot(text).head(2));
+        assertEquals("c\rd", new ClipSnapshot(text).tail(2));
+        assertEquals("b\nc\rd", new ClipSnapshot(text).tail(3));
+        assertEquals(text, new ClipSnapshot(text).tail(10));
+        assertEquals("", new ClipSnapshot(text).tail(0));
+        assertEquals("", new ClipSnapshot("a\nb\n").tail(1)); // the empty line after the last line break
+        ClipSnapshot indexed = new ClipSnapshot(text);
+        indexed.lineCount();
+        assertEquals("c\rd", indexed.tail(2));
+        assertEquals("a\r\nb", indexed.head(2));
+    }
+
+    @Test
+    public void everyNthLine() throws Exception {
+        assertEquals("0\n3\n6", new ClipSnapshot("0\n1\n2\n3\n4\n5\n6\n7").everyNth(3));
+        assertEquals("a\r\nc", new ClipSnapshot("a\r\nb\r\nc").everyNth(2));
+        assertEquals("a\n", new ClipSnapshot("a\nb\n").everyNth(2)); // keeps the empty last line
+        assertEquals("a", new ClipSnapshot("a").everyNth(5));
+    }
+
+    @Test
+    public void sampleKeepsOrderAndSize() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            sb.append(i).append(i < 999 ? "\n" : "");
+        }
+        ClipSnapshot s = new ClipSnapshot(sb.toString());
+        String[] picked = s.sample(50, new Random(1)).split("\n");
+        assertEquals(50, picked.length);
+        for (int i = 1; i < picked.length; ++i) {
+            assertTrue(Integer.parseInt(picked[i - 1]) < Integer.parseInt(picked[i]));
+        }
+        assertEquals("0\n1\n2", new ClipSnapshot("0\n1\n2").sample(10, new Random(1)));
+        assertEquals("0\n1\n2", new ClipSnapshot("0\n1\n2").sample(Integer.MAX_VALUE, new Random(1))); // no k-sized allocation
+        int kept = s.sample(0.1, new Random(1)).split("\n").length;
+        assertTrue("kept " + kept, kept > 60 && kept < 140);
+        assertEquals(sb.toString(), s.sample(1.0, new Random(1)));
+    }
+
+    @Test
+    public void listOperationsOnInMemoryClipboard() throws Exception {
+        SysClipboard.setSource(new InMemoryClipboardSource());
+        SysClipboard.write("c\r\n\r\nb\r\nb\r\na");
+        assertEquals(Pair.of(5, 4), new ClipboardAsListFilter( (line) -> line.length() > 0 ).filter());
+        assertEquals(Pair.of(4, 3), new ClipboardAsListUniq().uniq());
+        assertEquals(3, new ClipboardAsListReverse().reverse());
+        assertEquals("a\r\nb\r\nc", SysClipboard.read());
+        new ClipboardAsListMutatorByLine( (line) -> line + "!" ).mutate();
+        assertEquals("a!\r\nb!\r\nc!", SysClipboard.read());
+    }
+
+    @Test
+    public void wordCount() throws Exception {
+        assertEquals(0, ClipboardAsListStats.countWords(""));
+        assertEquals(0, ClipboardAsListStats.countWords(" \r\n\t"));
+        assertEquals(2, ClipboardAsListStats.countWords("  a b\n"));
+        assertEquals(3, ClipboardAsListStats.countWords("a\u2003b\u001Fc")); // whitespace outside of \\s splits words too
+    }
+
+    @Test
+    public void snapshotIsReadOncePerAction() throws Exception {
+        final int[] reads = {0};
+        SysClipboard.setSource(new InMemoryClipboardSource() {
+            public String read() {
+                reads[0]++;
+                return super.read();
+            }
+        });
+        SysClipboard.write("x\ny"); // the undo history reads what was in the clipboard before the write
+        assertEquals(1, reads[0]);
+        assertEquals("x\ny", SysClipboard.read());
+        assertEquals(1, reads[0]); // written text is known, no need to read it back
+
+        SysClipboard.invalidate();
+        SysClipboard.read();
+        SysClipboard.readAsLines();
+        assertEquals("\n", SysClipboard.lineSeparator());
+        assertEquals(2, reads[0]);
+    }
+}
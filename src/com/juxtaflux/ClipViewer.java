@@ -0,0 +1,187 @@
+package com.juxtaflux;
+
+import javafx.collections.ObservableListBase;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** The lines of a snapshot as a read-only list. Lines are only cut out of the text when the ListView asks for them. */
+class SnapshotLines extends ObservableListBase<String> {
+    private final ClipSnapshot snapshot;
+    SnapshotLines(ClipSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+    @Override
+    public String get(int index) {
+        return snapshot.line(index);
+    }
+    @Override
+    public int size() {
+        return snapshot.lineCount();
+    }
+}
+
+/**
+ * Window for looking through clipboard text of any size.
+ *
+ * The ListView only creates cells for the lines on screen, and each cell gets its line from the snapshot's line index,
+ * so scrolling and jumping to a line cost the same for 10 lines or 10 million. The index is built in the background,
+ * and searches scan the text in chunks in the background so they can be cancelled and report progress.
+ */
+class ClipViewer {
+    private final String text;
+    private final Stage stage = new Stage();
+    private final ListView<String> list = new ListView<>();
+    private final TextField txtLine = new TextField();
+    private final TextField txtFind = new TextField();
+    private final CheckBox chkIgnoreCase = new CheckBox("ignore case");
+    private final Label status = new Label();
+    private ClipSnapshot snapshot; // null until indexed
+    private Task<Integer> searchTask;
+
+    ClipViewer(String text, Window owner) {
+        this.text = text;
+        list.setStyle("-fx-font-family: monospace");
+        list.setCellFactory(lv -> new ListCell<String>() {
+            @Override
+            protected void updateItem(String item, boolean empty) {
+                super.updateItem(item, empty);
+                // keep very long lines from being laid out in full
+                setText(empty || item == null ? null : item.length() > Config.VIEWER_MAX_LINE_CHARS ? item.substring(0, Config.VIEWER_MAX_LINE_CHARS) + "..." : item);
+            }
+        });
+
+        txtLine.setPromptText("line #");
+        txtLine.setPrefColumnCount(8);
+        txtLine.setOnAction(e -> goToLine());
+        txtFind.setPromptText("find");
+        txtFind.setOnAction(e -> findNext());
+        HBox.setHgrow(txtFind, Priority.ALWAYS);
+        Button btnGo = new Button("go");
+        btnGo.setOnAction(e -> goToLine());
+        Button btnFind = new Button("find next");
+        btnFind.setOnAction(e -> findNext());
+        HBox bar = new HBox(5.0, txtLine, btnGo, txtFind, chkIgnoreCase, btnFind);
+        bar.setPadding(new Insets(5.0));
+
+        BorderPane root = new BorderPane(list, bar, null, status, null);
+        BorderPane.setMargin(status, new Insets(2.0, 5.0, 2.0, 5.0));
+        stage.initOwner(owner);
+        stage.setTitle(Config.APP_TITLE + " - clipboard viewer");
+        stage.setScene(new Scene(root, Config.VIEWER_WIDTH, Config.VIEWER_HEIGHT));
+        stage.setOnHidden(e -> cancelSearch());
+    }
+
+    void show() {
+        stage.show();
+        status.setText("Indexing " + OpMetrics.formatBytes(2L * text.length()) + "...");
+        Task<ClipSnapshot> indexer = new Task<ClipSnapshot>() {
+            @Override
+            protected ClipSnapshot call() {
+                ClipSnapshot s = new ClipSnapshot(text);
+                s.lineCount(); // builds the index
+                return s;
+            }
+        };
+        indexer.setOnSucceeded(e -> {
+            snapshot = indexer.getValue();
+            list.setItems(new SnapshotLines(snapshot));
+            status.setText(snapshot.lineCount() + " lines, " + text.length() + " chars, " + snapshot.lineEnding() + " line endings" + (snapshot.hasMixedLineEndings() ? " (mixed)" : ""));
+        });
+        indexer.setOnFailed(e -> status.setText("ERROR: couldn't index the text: " + indexer.getException().getMessage()));
+        startDaemon(indexer, "Viewer indexer");
+    }
+
+    private void goToLine() {
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            int line = Integer.parseInt(txtLine.getText().trim()) - 1;
+            line = Math.max(0, Math.min(snapshot.lineCount() - 1, line));
+            select(line);
+        } catch (NumberFormatException exc) {
+            status.setText("ERROR: not a line number: " + txtLine.getText());
+        }
+    }
+
+    private void select(int line) {
+        list.getSelectionModel().clearAndSelect(line);
+        list.scrollTo(Math.max(0, line - 3)); // leave a few lines of context above
+    }
+
+    /** Search forward from the line after the selected one, wrapping around to the top */
+    private void findNext() {
+        if (snapshot == null || txtFind.getText().isEmpty()) {
+            return;
+        }
+        cancelSearch();
+        Pattern pattern = Pattern.compile(Pattern.quote(txtFind.getText()), chkIgnoreCase.isSelected() ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+        int selected = list.getSelectionModel().getSelectedIndex();
+        int from = selected < 0 || selected + 1 >= snapshot.lineCount() ? 0 : snapshot.lineStart(selected + 1);
+        int overlap = txtFind.getText().length() - 1; // so matches spanning two chunks are still found
+        ClipSnapshot s = snapshot;
+        Task<Integer> task = new Task<Integer>() {
+            @Override
+            protected Integer call() {
+                int found = find(from, text.length());
+                if (found < 0 && from > 0) {
+                    found = find(0, from);
+                }
+                return found < 0 ? -1 : s.lineAt(found);
+            }
+            /** Offset of the first match that starts in [from, to), or -1 */
+            private int find(int from, int to) {
+                Matcher m = pattern.matcher(text);
+                for (int start = from; start < to && !isCancelled(); start += Config.VIEWER_SEARCH_CHUNK) {
+                    int end = (int) Math.min(to, (long) start + Config.VIEWER_SEARCH_CHUNK);
+                    m.region(start, (int) Math.min(text.length(), (long) end + overlap));
+                    if (m.find() && m.start() < end) {
+                        return m.start();
+                    }
+                    updateMessage("Searching... " + (int) (100.0 * (end - from) / Math.max(1, to - from)) + "%");
+                }
+                return -1;
+            }
+        };
+        task.messageProperty().addListener((obs, oldMsg, newMsg) -> status.setText(newMsg));
+        task.setOnSucceeded(e -> {
+            if (task.getValue() < 0) {
+                status.setText("Not found: " + txtFind.getText());
+            } else {
+                status.setText("Found on line " + (task.getValue() + 1));
+                select(task.getValue());
+            }
+        });
+        task.setOnFailed(e -> status.setText("ERROR: search failed: " + task.getException().getMessage()));
+        searchTask = task;
+        startDaemon(task, "Viewer search");
+    }
+
+    private void cancelSearch() {
+        if (searchTask != null) {
+            searchTask.cancel();
+            searchTask = null;
+        }
+    }
+
+    private static void startDaemon(Task<?> task, String name) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.start();
+    }
+}
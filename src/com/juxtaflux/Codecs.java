@@ -0,0 +1,450 @@
+package com.juxtaflux;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/** Text encodings that the codec buttons convert to and from. Encoding works on the UTF-8 bytes of the text. */
+enum Codec {
+    BASE64, URL, HEX, HTML
+}
+
+/** Checksums of the UTF-8 bytes of the text, shown as hex */
+enum Digest {
+    MD5, SHA256, CRC32
+}
+
+/**
+ * Encoders, decoders and digests as LineRangeTransformers, so they can run on the whole clipboard or on each line
+ * (ClipboardAsLineRangeMutator). They stream: the text is turned into UTF-8 (and back) a chunk at a time through
+ * buffers that each transformer reuses for every line, so there's never a full extra copy of the text as bytes.
+ * A transformer isn't thread safe, make a new one for each operation.
+ */
+class Codecs {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final char[] BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int[] BASE64_VALUES = new int[128];
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        for (int i = 0; i < BASE64_DIGITS.length; ++i) {
+            BASE64_VALUES[BASE64_DIGITS[i]] = i;
+        }
+        BASE64_VALUES['-'] = 62; // URL-safe alphabet
+        BASE64_VALUES['_'] = 63;
+    }
+
+    static LineRangeTransformer encoder(Codec codec) {
+        switch (codec) {
+            case BASE64: return new Base64Encoder();
+            case URL: return new ByteEncoder() {
+                @Override
+                void accept(byte[] b, int len, StringBuilder out) {
+                    for (int i = 0; i < len; ++i) {
+                        int c = b[i] & 0xff;
+                        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_' || c == '~') {
+                            out.append((char) c);
+                        } else {
+                            out.append('%').append(Character.toUpperCase(HEX_DIGITS[c >> 4])).append(Character.toUpperCase(HEX_DIGITS[c & 0xf]));
+                        }
+                    }
+                }
+            };
+            case HEX: return new ByteEncoder() {
+                @Override
+                void accept(byte[] b, int len, StringBuilder out) {
+                    for (int i = 0; i < len; ++i) {
+                        out.append(HEX_DIGITS[(b[i] >> 4) & 0xf]).append(HEX_DIGITS[b[i] & 0xf]);
+                    }
+                }
+            };
+            case HTML: return Codecs::escapeHtml;
+        }
+        throw new IllegalArgumentException("No encoder for " + codec);
+    }
+
+    static LineRangeTransformer decoder(Codec codec) {
+        switch (codec) {
+            case BASE64: return new Base64Decoder();
+            case URL: return new UrlDecoder();
+            case HEX: return new HexDecoder();
+            case HTML: return Codecs::unescapeHtml;
+        }
+        throw new IllegalArgumentException("No decoder for " + codec);
+    }
+
+    static LineRangeTransformer digest(Digest digest) {
+        if (digest == Digest.CRC32) {
+            CRC32 crc = new CRC32();
+            Utf8Chunks chunks = new Utf8Chunks();
+            return (text, start, end, out) -> {
+                crc.reset();
+                chunks.encode(text, start, end, (b, len) -> crc.update(b, 0, len));
+                out.append(String.format("%08x", crc.getValue()));
+            };
+        }
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(digest == Digest.MD5 ? "MD5" : "SHA-256");
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException(exc);
+        }
+        Utf8Chunks chunks = new Utf8Chunks();
+        return (text, start, end, out) -> {
+            md.reset();
+            chunks.encode(text, start, end, (b, len) -> md.update(b, 0, len));
+            for (byte b : md.digest()) {
+                out.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+            }
+        };
+    }
+
+    /** Run t over all of text */
+    static String apply(LineRangeTransformer t, String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        t.transform(text, 0, text.length(), sb);
+        return sb.toString();
+    }
+
+    /** Run t over each line of text, keeping text's line endings */
+    static String applyByLine(LineRangeTransformer t, String text) {
+        ClipSnapshot lines = new ClipSnapshot(text);
+        String sep = lines.lineEnding().separator;
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < lines.lineCount(); ++i) {
+            if (i > 0) {
+                sb.append(sep);
+            }
+            t.transform(text, lines.lineStart(i), lines.lineEnd(i), sb);
+        }
+        return sb.toString();
+    }
+
+    private static void escapeHtml(String text, int start, int end, StringBuilder out) {
+        for (int i = start; i < end; ++i) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': out.append("&amp;"); break;
+                case '<': out.append("&lt;"); break;
+                case '>': out.append("&gt;"); break;
+                case '"': out.append("&quot;"); break;
+                case '\'': out.append("&#39;"); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    /** Numeric entities and the few named ones that escapeHtml() makes (plus &apos; and &nbsp;). Others are left as they are. */
+    private static void unescapeHtml(String text, int start, int end, StringBuilder out) {
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            int semi = -1;
+            if (c == '&') {
+                for (int j = i + 1; j < Math.min(end, i + 12); ++j) { // entities are short, don't scan far for the ';'
+                    if (text.charAt(j) == ';') {
+                        semi = j;
+                        break;
+                    }
+                }
+            }
+            if (semi < 0) {
+                out.append(c);
+                ++i;
+                continue;
+            }
+            String name = text.substring(i + 1, semi);
+            int cp = -1;
+            switch (name) {
+                case "amp": cp = '&'; break;
+                case "lt": cp = '<'; break;
+                case "gt": cp = '>'; break;
+                case "quot": cp = '"'; break;
+                case "apos": cp = '\''; break;
+                case "nbsp": cp = 0xa0; break;
+                default:
+                    try {
+                        if (name.startsWith("#x") || name.startsWith("#X")) {
+                            cp = Integer.parseInt(name.substring(2), 16);
+                        } else if (name.startsWith("#")) {
+                            cp = Integer.parseInt(name.substring(1));
+                        }
+                    } catch (NumberFormatException exc) {
+                        cp = -1;
+                    }
+            }
+            if (cp < 0 || !Character.isValidCodePoint(cp)) {
+                out.append(c);
+                ++i;
+            } else {
+                out.appendCodePoint(cp);
+                i = semi + 1;
+            }
+        }
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private static int hexValue(char c, int offset) {
+        int v = Character.digit(c, 16);
+        if (v < 0) {
+            throw new IllegalArgumentException("Not hex: '" + c + "' at " + offset);
+        }
+        return v;
+    }
+
+    /** Encoders that work on the text's UTF-8 bytes, a chunk at a time */
+    private abstract static class ByteEncoder implements LineRangeTransformer {
+        private final Utf8Chunks chunks = new Utf8Chunks();
+
+        @Override
+        public void transform(String text, int start, int end, StringBuilder out) {
+            chunks.encode(text, start, end, (b, len) -> accept(b, len, out));
+            finish(out);
+        }
+
+        abstract void accept(byte[] b, int len, StringBuilder out);
+
+        void finish(StringBuilder out) {
+        }
+    }
+
+    private static class Base64Encoder extends ByteEncoder {
+        private int carry = 0; // up to 2 bytes left over from the last chunk
+        private int carryCount = 0;
+
+        @Override
+        void accept(byte[] b, int len, StringBuilder out) {
+            for (int i = 0; i < len; ++i) {
+                carry = (carry << 8) | (b[i] & 0xff);
+                if (++carryCount == 3) {
+                    out.append(BASE64_DIGITS[(carry >> 18) & 0x3f]).append(BASE64_DIGITS[(carry >> 12) & 0x3f])
+                            .append(BASE64_DIGITS[(carry >> 6) & 0x3f]).append(BASE64_DIGITS[carry & 0x3f]);
+                    carry = 0;
+                    carryCount = 0;
+                }
+            }
+        }
+
+        @Override
+        void finish(StringBuilder out) {
+            if (carryCount == 1) {
+                out.append(BASE64_DIGITS[(carry >> 2) & 0x3f]).append(BASE64_DIGITS[(carry << 4) & 0x3f]).append("==");
+            } else if (carryCount == 2) {
+                out.append(BASE64_DIGITS[(carry >> 10) & 0x3f]).append(BASE64_DIGITS[(carry >> 4) & 0x3f])
+                        .append(BASE64_DIGITS[(carry << 2) & 0x3f]).append('=');
+            }
+            carry = 0;
+            carryCount = 0;
+        }
+    }
+
+    /** Ignores whitespace, so wrapped base64 decodes too. Takes the URL-safe alphabet as well. */
+    private static class Base64Decoder implements LineRangeTransformer {
+        private final Utf8Sink sink = new Utf8Sink();
+
+        @Override
+        public void transform(String text, int start, int end, StringBuilder out) {
+            sink.begin(out);
+            int bits = 0;
+            int bitCount = 0;
+            for (int i = start; i < end; ++i) {
+                char c = text.charAt(i);
+                if (c == '=') {
+                    break;
+                }
+                if (isSpace(c)) {
+                    continue;
+                }
+                int v = c < 128 ? BASE64_VALUES[c] : -1;
+                if (v < 0) {
+                    throw new IllegalArgumentException("Not base64: '" + c + "' at " + (i - start));
+                }
+                bits = (bits << 6) | v;
+                bitCount += 6;
+                if (bitCount >= 8) {
+                    bitCount -= 8;
+                    sink.put((byte) (bits >> bitCount));
+                }
+            }
+            sink.end();
+        }
+    }
+
+    private static class HexDecoder implements LineRangeTransformer {
+        private final Utf8Sink sink = new Utf8Sink();
+
+        @Override
+        public void transform(String text, int start, int end, StringBuilder out) {
+            sink.begin(out);
+            int high = -1;
+            for (int i = start; i < end; ++i) {
+                char c = text.charAt(i);
+                if (isSpace(c)) {
+                    continue;
+                }
+                int v = hexValue(c, i - start);
+                if (high < 0) {
+                    high = v;
+                } else {
+                    sink.put((byte) ((high << 4) | v));
+                    high = -1;
+                }
+            }
+            if (high >= 0) {
+                throw new IllegalArgumentException("Hex has an odd number of digits");
+            }
+            sink.end();
+        }
+    }
+
+    /** %XX escapes, and + for space */
+    private static class UrlDecoder implements LineRangeTransformer {
+        private final Utf8Sink sink = new Utf8Sink();
+
+        @Override
+        public void transform(String text, int start, int end, StringBuilder out) {
+            sink.begin(out);
+            int i = start;
+            while (i < end) {
+                char c = text.charAt(i);
+                if (c == '%') {
+                    if (i + 3 > end) {
+                        throw new IllegalArgumentException("Incomplete % escape at " + (i - start));
+                    }
+                    sink.put((byte) ((hexValue(text.charAt(i + 1), i + 1 - start) << 4) | hexValue(text.charAt(i + 2), i + 2 - start)));
+                    i += 3;
+                } else if (c == '+') {
+                    sink.put((byte) ' ');
+                    ++i;
+                } else if (c < 0x80) {
+                    sink.put((byte) c);
+                    ++i;
+                } else {
+                    int cp = text.codePointAt(i);
+                    sink.putCodePoint(cp);
+                    i += Character.charCount(cp);
+                }
+            }
+            sink.end();
+        }
+    }
+}
+
+/** Turns a range of text into UTF-8 a chunk at a time, through a buffer that is reused. Lone surrogates become '?'. */
+class Utf8Chunks {
+    @FunctionalInterface
+    interface Sink {
+        void accept(byte[] b, int len);
+    }
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes = ByteBuffer.allocate(Config.CODEC_CHUNK);
+
+    void encode(String text, int start, int end, Sink sink) {
+        encoder.reset();
+        CharBuffer in = CharBuffer.wrap(text, start, end);
+        CoderResult r;
+        do {
+            r = encoder.encode(in, bytes, true);
+            drain(sink);
+        } while (r.isOverflow());
+        while (encoder.flush(bytes).isOverflow()) {
+            drain(sink);
+        }
+        drain(sink);
+    }
+
+    private void drain(Sink sink) {
+        if (bytes.position() > 0) {
+            sink.accept(bytes.array(), bytes.position());
+            bytes.clear();
+        }
+    }
+}
+
+/** Collects decoded bytes and turns them into text (as UTF-8) a chunk at a time, through buffers that are reused */
+class Utf8Sink {
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private final ByteBuffer bytes = ByteBuffer.allocate(Config.CODEC_CHUNK);
+    private final CharBuffer chars = CharBuffer.allocate(Config.CODEC_CHUNK);
+    private StringBuilder out;
+
+    void begin(StringBuilder out) {
+        this.out = out;
+        decoder.reset();
+        bytes.clear();
+        chars.clear();
+    }
+
+    void put(byte b) {
+        if (!bytes.hasRemaining()) {
+            decode(false);
+        }
+        bytes.put(b);
+    }
+
+    /** The UTF-8 bytes of one code point */
+    void putCodePoint(int cp) {
+        if (cp < 0x80) {
+            put((byte) cp);
+        } else if (cp < 0x800) {
+            put((byte) (0xc0 | (cp >> 6)));
+            put((byte) (0x80 | (cp & 0x3f)));
+        } else if (cp < 0x10000) {
+            put((byte) (0xe0 | (cp >> 12)));
+            put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+            put((byte) (0x80 | (cp & 0x3f)));
+        } else {
+            put((byte) (0xf0 | (cp >> 18)));
+            put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+            put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+            put((byte) (0x80 | (cp & 0x3f)));
+        }
+    }
+
+    /** All the bytes are in. Throws IllegalArgumentException if they weren't UTF-8. */
+    void end() {
+        decode(true);
+        CoderResult r = decoder.flush(chars);
+        chars.flip();
+        out.append(chars);
+        chars.clear();
+        if (r.isError() || bytes.position() > 0) {
+            throw new IllegalArgumentException("The decoded bytes aren't UTF-8 text");
+        }
+    }
+
+    private void decode(boolean last) {
+        bytes.flip();
+        CoderResult r;
+        do {
+            r = decoder.decode(bytes, chars, last);
+            chars.flip();
+            out.append(chars);
+            chars.clear();
+        } while (r.isOverflow());
+        if (r.isError()) {
+            try {
+                r.throwException();
+            } catch (CharacterCodingException exc) {
+                throw new IllegalArgumentException("The decoded bytes aren't UTF-8 text", exc);
+            }
+        }
+        bytes.compact();
+    }
+}
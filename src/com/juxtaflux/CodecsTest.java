@@ -0,0 +1,93 @@
+package com.juxtaflux;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class CodecsTest {
+    private static final String MIXED = "caf\u00e9 \u20ac & <b>\"x\"</b> 'y' \uD83D\uDE00 a+b=c/d?e";
+
+    private static String encode(Codec c, String s) {
+        return Codecs.apply(Codecs.encoder(c), s);
+    }
+
+    private static String decode(Codec c, String s) {
+        return Codecs.apply(Codecs.decoder(c), s);
+    }
+
+    @Test
+    public void roundTrips() {
+        for (Codec c : Codec.values()) {
+            assertEquals(c.toString(), MIXED, decode(c, encode(c, MIXED)));
+            assertEquals(c.toString(), "", decode(c, encode(c, "")));
+        }
+    }
+
+    @Test
+    public void base64MatchesJdk() {
+        for (int n = 0; n < 6; ++n) {
+            String s = MIXED.substring(0, n);
+            assertEquals(Base64.getEncoder().encodeToString(s.getBytes(StandardCharsets.UTF_8)), encode(Codec.BASE64, s));
+        }
+        assertEquals("hello", decode(Codec.BASE64, "aGVs\r\nbG8="));
+    }
+
+    @Test
+    public void urlHexHtml() {
+        assertEquals("a%20b%2Bc%C3%A9~", encode(Codec.URL, "a b+c\u00e9~"));
+        assertEquals("a b+c\u00e9", decode(Codec.URL, "a+b%2Bc%c3%a9"));
+        assertEquals("61e282ac", encode(Codec.HEX, "a\u20ac"));
+        assertEquals("&lt;a href=&quot;x&quot;&gt;&amp;&#39;", encode(Codec.HTML, "<a href=\"x\">&'"));
+        assertEquals("<\u00e9\uD83D\uDE00 &bogus; & ;", decode(Codec.HTML, "&lt;&#233;&#x1F600; &bogus; & ;"));
+    }
+
+    @Test
+    public void acrossChunks() {
+        String big = StringUtils.repeat(MIXED, 3 * Config.CODEC_CHUNK / MIXED.length());
+        String b64 = encode(Codec.BASE64, big);
+        assertEquals(Base64.getEncoder().encodeToString(big.getBytes(StandardCharsets.UTF_8)), b64);
+        assertEquals(big, decode(Codec.BASE64, b64));
+        assertEquals(big, decode(Codec.HEX, encode(Codec.HEX, big)));
+    }
+
+    @Test
+    public void digests() throws Exception {
+        byte[] bytes = MIXED.getBytes(StandardCharsets.UTF_8);
+        StringBuilder sha = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+            sha.append(String.format("%02x", b));
+        }
+        assertEquals(sha.toString(), Codecs.apply(Codecs.digest(Digest.SHA256), MIXED));
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", Codecs.apply(Codecs.digest(Digest.MD5), ""));
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        assertEquals(String.format("%08x", crc.getValue()), Codecs.apply(Codecs.digest(Digest.CRC32), MIXED));
+    }
+
+    @Test
+    public void byLine() {
+        assertEquals("YQ==\r\n\r\nYmM=", Codecs.applyByLine(Codecs.encoder(Codec.BASE64), "a\r\n\r\nbc"));
+        assertEquals("0cc175b9c0f1b6a831c399e269772661\n92eb5ffee6ae2fec3ad71c777531578f", Codecs.applyByLine(Codecs.digest(Digest.MD5), "a\nb"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badBase64() {
+        decode(Codec.BASE64, "ab$c");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oddHex() {
+        decode(Codec.HEX, "abc");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notUtf8() {
+        decode(Codec.HEX, "ff");
+    }
+}
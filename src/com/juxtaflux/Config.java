@@ -9,6 +9,8 @@ import java.util.List;
 /** Local config settings */
 class Config {
     static final boolean DEBUG = false; // toggle debugging (extra logging, etc.)
+    static final int STARTUP_TARGET_MS = 1500; // warn if the app takes longer than this to become interactive
+    static final boolean EXIT_AFTER_STARTUP = Boolean.getBoolean("clipdashboard.exitAfterStartup"); // training run for the CDS archive (see README)
     static final int APP_WIDTH = 700;
     static final int APP_HEIGHT = 750;
     static final String APP_TITLE = "ClipDashboard";
@@ -18,12 +20,58 @@ class Config {
     static final double DRAG_N_DROP_ENTER_OPACITY = 0.2;
     static final double DRAG_N_DROP_EXIT_OPACITY = 1.0;
     static final int WORDS_FOR_FILE_NAMING = 4;
+    static final int TAB_WIDTH = 4; // columns between tab stops, when working out how wide text is
+
+    // operation metrics
+    static final int METRICS_WINDOW = 200; // number of recent runs of each operation that percentiles are calculated over
+    static final int METRICS_RECENT_COUNT = 20; // number of recent operations listed in the metrics panel
+
+    // live preview
+    static final int PREVIEW_LINES = 30; // only this many lines from the top of the clipboard are run through the previewed operation
+    static final int PREVIEW_DELAY_MS = 250; // wait for typing/hovering to settle for this long before updating the preview
+
+    // clipboard viewer
+    static final int VIEWER_WIDTH = 900;
+    static final int VIEWER_HEIGHT = 700;
+    static final int VIEWER_MAX_LINE_CHARS = 10_000; // longer lines are cut off on screen
+    static final int VIEWER_SEARCH_CHUNK = 4 * 1024 * 1024; // chars scanned between checks for cancel/progress
+
+    // paste queue
+    static final int PASTE_QUEUE_PREFETCH = 4; // render this many buffers ahead of the one being pasted
+    static final int PASTE_QUEUE_AUTO_MS = 1500; // default interval when advancing on a timer
+    static final int PASTE_QUEUE_MIN_AUTO_MS = 100;
+    static final int PASTE_QUEUE_WIDTH = 320;
+    static final int PASTE_QUEUE_HEIGHT = 130;
+    static final int THUMBNAIL_SIZE = 48; // longest side of the image thumbnail shown in the buffer list
+
+    // cold buffers
+    static final int BUFFER_COLD_MINUTES = 10; // buffers not used for this long are compressed
+    static final int BUFFER_COLD_CHECK_MS = 60_000; // how often to look for cold buffers
+    static final int BUFFER_PACK_MIN_CHARS = 4 * 1024; // smaller buffers aren't worth compressing
+
+    // codecs
+    static final int CODEC_CHUNK = 64 * 1024; // bytes/chars converted at a time when encoding and decoding
+
+    // JSON/XML
+    static final int PRETTY_INDENT = 2; // spaces per nesting level when pretty-printing, if arg1 doesn't say
+
+    // joining buffers
+    static final long JOIN_TABLE_BUDGET = 64L * 1024 * 1024; // bytes for the hash table, bigger joins are done in several passes
+
+    // local server for scripts
+    static final int SERVER_PORT = 47123; // on the loopback interface only
+    static final int SERVER_MAX_FRAME = 16 * 1024 * 1024; // bytes, bigger frames drop the connection
+    static final int SERVER_MAX_AUTH_FRAME = 256; // bytes, for the first frame of a connection (before it's authorized)
+    static final String SERVER_TOKEN_FILE = ".ClipDashboard-server-token"; // in the user's home folder, readable only by them
+
+    // undo/redo history
+    static final int HISTORY_MAX_STEPS = 100;
+    static final long HISTORY_MAX_BYTES = 256L * 1024 * 1024; // oldest steps are dropped when the history is bigger than this
+    static final int HISTORY_PACK_THRESHOLD = 64 * 1024; // compress clipboard deltas bigger than this many chars
 
     // diffing
     static final String TEMP_FILE_EXT = ".txt";
     static final String DIFF_TEMP_FILE_A = "ClipDashboard_buffA_";
     static final String DIFF_TEMP_FILE_B = "ClipDashboard_buffB_";
-    static final String VIEW_APP = "notepad";
-    static final String VIEW_TEMP_FILE = "ClipDashboard_notepad_";
     static final String DIFF_APP = "C:\\Program Files (x86)\\Meld\\Meld.exe";
 }
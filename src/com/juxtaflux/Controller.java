@@ -1,10 +1,13 @@
 package com.juxtaflux;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.collections.ListChangeListener;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -12,18 +15,22 @@ import javafx.scene.control.*;
 import javafx.scene.control.Button;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
 import javafx.scene.input.*;
 import javafx.scene.text.Text;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.text.StrLookup;
 import org.apache.commons.lang3.text.StrSubstitutor;
-import org.apache.commons.lang3.text.WordUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.awt.*;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -33,6 +40,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
 
@@ -69,7 +82,7 @@ class Debug {
 
 /** generic utility functions */
 class Functions {
-    private static Integer parseToken(String token) throws ArgParseError {
+    static Integer parseToken(String token) throws ArgParseError {
         if (token.trim().equals("")) {
             return null;
         }
@@ -83,25 +96,72 @@ class Functions {
         }
     }
 
-    static Integer[] parseSliceSyntax(String sliceExpr) throws ArgParseError {
-        int colonCount = StringUtils.countMatches(sliceExpr, ":");
-        Integer singleIdx = null;
-        Integer startIdx = null;
-        Integer endIdx = null;
-        if (colonCount == 0) {
-            singleIdx = parseToken(sliceExpr);
-            if (singleIdx == null) {
-                throw new ArgParseError("The single value slice argument must be an integer");
-            }
-        } else if (colonCount == 1) {
-            String[] tokens = StringUtils.splitByWholeSeparatorPreserveAllTokens(sliceExpr, ":");
-            startIdx = parseToken(tokens[0]);
-            endIdx = parseToken(tokens[1]);
-        } else {
-            throw new ArgParseError("Too many colons (" + colonCount + ") in slice argument: \"" + sliceExpr + "\"");
+    /** Parse "" (no indent), "N" (hanging indent of N) or "F,R" (first line indent F, the rest R) into {first, rest} */
+    static int[] parseIndents(String arg) throws ArgParseError {
+        String[] tokens = StringUtils.splitByWholeSeparatorPreserveAllTokens(arg.trim(), ",");
+        if (tokens.length > 2) {
+            throw new ArgParseError("Indent must be \"N\" or \"first,rest\": \"" + arg + "\"");
         }
-        Integer[] idxs = {singleIdx, startIdx, endIdx};
-        return idxs;
+        Integer first = tokens.length == 2 ? parseToken(tokens[0]) : null;
+        Integer rest = parseToken(tokens[tokens.length - 1]);
+        return new int[] {first == null ? 0 : first, rest == null ? 0 : rest};
+    }
+    /** Parse a number of lines, which has to be at least 1 */
+    static int parseLineCount(String arg) throws ArgParseError {
+        Integer n = parseToken(arg.trim());
+        if (n == null || n < 1) {
+            throw new ArgParseError("Need a number of lines (1 or more): \"" + arg + "\"");
+        }
+        return n;
+    }
+    /** Parse a sample size, "N" (N lines) or "P%" (P percent of the lines), into a line count or a fraction (0, 1] */
+    static Number parseSampleSize(String arg) throws ArgParseError {
+        String s = arg.trim();
+        if (!s.endsWith("%")) {
+            return parseLineCount(s);
+        }
+        double percent;
+        try {
+            percent = Double.parseDouble(s.substring(0, s.length() - 1).trim());
+        } catch (NumberFormatException exc) {
+            throw new ArgParseError("Could not parse \"" + arg + "\" into a percentage");
+        }
+        if (!(percent > 0 && percent <= 100)) {
+            throw new ArgParseError("Percentage must be more than 0 and at most 100: \"" + arg + "\"");
+        }
+        return percent / 100;
+    }
+    /** Parse "" (Config.PRETTY_INDENT spaces), "N" (N spaces) or any other text (used as it is, \t for a tab) into an indent string */
+    static String parseIndentUnit(String arg) {
+        if (arg.isEmpty()) {
+            return StringUtils.repeat(' ', Config.PRETTY_INDENT);
+        }
+        if (arg.trim().matches("\\d{1,3}")) {
+            return StringUtils.repeat(' ', Integer.parseInt(arg.trim()));
+        }
+        return StringUtil.replaceSpecialChars(arg);
+    }
+    /** Parse "" (column 0 of both), "K" (column K of both) or "L,R" (column L of the left buffer, R of the right) into {left, right} */
+    static int[] parseKeyColumns(String arg) throws ArgParseError {
+        String[] tokens = StringUtils.splitByWholeSeparatorPreserveAllTokens(arg.trim(), ",");
+        if (tokens.length > 2) {
+            throw new ArgParseError("Key column must be \"K\" or \"left,right\": \"" + arg + "\"");
+        }
+        Integer left = parseToken(tokens.length == 0 ? "" : tokens[0]);
+        Integer right = tokens.length == 2 ? parseToken(tokens[1]) : left;
+        return new int[] {left == null ? 0 : left, right == null ? 0 : right};
+    }
+    /** Parse "" (tab for both), "D" (D for both) or "L R" (two delimiters separated by a space) into {left, right}. Supports \t. */
+    static String[] parseDelimiters(String arg) {
+        if (arg.isEmpty()) {
+            return new String[] {"\t", "\t"};
+        }
+        String[] tokens = arg.trim().split(" ");
+        if (tokens.length == 2 && !tokens[0].isEmpty() && !tokens[1].isEmpty()) {
+            return new String[] {StringUtil.replaceSpecialChars(tokens[0]), StringUtil.replaceSpecialChars(tokens[1])};
+        }
+        String d = StringUtil.replaceSpecialChars(arg);
+        return new String[] {d, d};
     }
     static Path writeToTempFile(String prefix, String suffix, byte[] text) {
         Path result = null;
@@ -129,6 +189,10 @@ public class Controller implements Initializable {
     @FXML
     private TextArea log;
     @FXML
+    private TextArea metricsView;
+    @FXML
+    private Tab tabMetrics;
+    @FXML
     private StatusBar statusBar;
 
     @FXML
@@ -137,6 +201,24 @@ public class Controller implements Initializable {
     private CheckMenuItem chkRetrieveOnFocus;
     @FXML
     private CheckMenuItem chkVariableSubstitution;
+    @FXML
+    private CheckMenuItem chkLocalServer;
+    @FXML
+    private CheckBox chkCodecEachLine;
+    @FXML
+    private CheckMenuItem chkSetIgnoreCase;
+    @FXML
+    private CheckMenuItem chkSetIgnoreWhitespace;
+    @FXML
+    private CheckMenuItem chkSetSorted;
+    @FXML
+    private RadioMenuItem radRetrieveForward;
+    @FXML
+    private RadioMenuItem radRetrieveBackward;
+    @FXML
+    private RadioMenuItem radRetrieveRandom;
+    private final RetrieveCursor retrieveCursor = new RetrieveCursor(new Random());
+    private boolean retrieveSelectionChanged = true;
 
     @FXML
     private TextField txtArg1;
@@ -146,10 +228,30 @@ public class Controller implements Initializable {
     private Text txtHelpHeader;
     @FXML
     private Text txtHelpBody;
+    @FXML
+    private TextArea txtPreview;
 
-    private HashMap<String, ButtonSetup> buttonMap = new HashMap();
+    private HashMap<String, ButtonSetup> buttonMap; // built on first hover, it isn't needed to show the window
     Stage primaryStage;
 
+    // buffers added by other threads (the local server, dropped files being read) go into the list in one change per flush
+    private final ClipServer clipServer = new ClipServer(ClipOps.store(), Paths.get(System.getProperty("user.home"), Config.SERVER_TOKEN_FILE));
+    private final ExecutorService fileReader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Dropped file reader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // live preview of the operation under the mouse
+    private String hoveredButtonId;
+    private PauseTransition previewDelay;
+    private Task<String> previewTask;
+    private final ExecutorService previewExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Preview");
+        t.setDaemon(true);
+        return t;
+    });
+
     class ButtonSetup {
         public List<TextField> disable;
         public String helpHeader;
@@ -162,87 +264,240 @@ public class Controller implements Initializable {
         }
     }
 
+    private ButtonSetup buttonSetup(String id) {
+        if (buttonMap == null) {
+            buttonMap = new HashMap<>();
+            buttonMap.put("btnStore", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Store", "Add contents of clipboard to buffer"));
+            buttonMap.put("btnReplace", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Replace", "Replace selected buffer with current clipboard contents"));
+            buttonMap.put("btnPrepend", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Prepend", "Prepend clipboard contents to the beginning of each selected buffer"));
+            buttonMap.put("btnAppend", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Append", "Append clipboard contents to the end of each selected buffer"));
+            buttonMap.put("btnJoin", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Join", "Join selected buffers with newlines"));
+            buttonMap.put("btnDiff", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Diff", "Diff two selected buffers"));
+            buttonMap.put("btnHashJoin", new ButtonSetup(Arrays.asList(), "Join on key", "Join the two selected buffers like database tables: each row of the top buffer gets the other columns of the rows of the bottom buffer with the same key\nDelimiter (arg1): default tab, or 'L R' for a different one per buffer. Key column (arg2): 0 based, 'K' or 'L,R'"));
+            buttonMap.put("btnLeftJoin", new ButtonSetup(Arrays.asList(), "Left join on key", "Like 'join on', but rows of the top buffer without a match are kept too (with empty columns)\nDelimiter (arg1): default tab, or 'L R'. Key column (arg2): 0 based, 'K' or 'L,R'"));
+            buttonMap.put("btnAntiJoin", new ButtonSetup(Arrays.asList(), "Anti join on key", "Keep the rows of the top buffer whose key isn't in the bottom buffer\nDelimiter (arg1): default tab, or 'L R'. Key column (arg2): 0 based, 'K' or 'L,R'"));
+            buttonMap.put("btnSetUnion", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Union", "Store a new buffer with every distinct line of the selected buffers\nCase, whitespace and sorting options are in the Buffer menu"));
+            buttonMap.put("btnSetIntersect", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Intersect", "Store a new buffer with the lines that are in all of the selected buffers"));
+            buttonMap.put("btnSetMinus", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "A - B", "Store a new buffer with the lines of the top selected buffer that aren't in any of the other selected buffers"));
+            buttonMap.put("btnSetXor", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Symmetric difference", "Store a new buffer with the lines that are in only one of the selected buffers"));
+            buttonMap.put("btnUp", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Up", "Move selected buffers up"));
+            buttonMap.put("btnDown", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Down", "Move selected buffers down"));
+
+            buttonMap.put("btnStrLTrim", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "String: Left trim", "Trim whitespace off the left side of the clipboard"));
+            buttonMap.put("btnStrTrim", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "String: Trim", "Trim whitespace off the left and right side of the clipboard"));
+            buttonMap.put("btnStrRTrim", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "String: Right trim", "Trim whitespace off the right side of the clipboard"));
+            buttonMap.put("btnStrLower", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "String: Lowercase", "Convert clipboard to lowercase"));
+            buttonMap.put("btnStrUpper", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "String: Uppercase", "Convert clipboard to uppercase"));
+            buttonMap.put("btnStrPretty", new ButtonSetup(Arrays.asList(txtArg2), "String: Pretty-print JSON/XML", "Reformat the JSON or XML in the clipboard with one value/element per line, indented by arg1 (spaces, or text like \\t; default 2)"));
+            buttonMap.put("btnStrMinify", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "String: Minify JSON/XML", "Take out all the whitespace between the tokens of the JSON or XML in the clipboard"));
+            buttonMap.put("btnStrValidate", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "String: Validate JSON/XML", "Check that the clipboard is valid JSON (or well-formed XML) and show where the first problem is. Doesn't change the clipboard."));
+            buttonMap.put("btnStrExtract", new ButtonSetup(Arrays.asList(txtArg2), "String: Extract from JSON/XML", "Replace the clipboard with the values at a path (arg1), one per line\nJSON: $.items[*].name, $..id, $['a key'][0]  XML: /root/item/name, //item/@id, //*/@*"));
+            buttonMap.put("btnStrPrepend", new ButtonSetup(Arrays.asList(txtArg2), "String: Prepend string", "Prepend text (arg1) to start of clipboard"));
+            buttonMap.put("btnStrAppend", new ButtonSetup(Arrays.asList(txtArg2), "String: Append string", "Append text (arg1) to end of clipboard"));
+            buttonMap.put("btnStrWordWrap", new ButtonSetup(Arrays.asList(), "String: Word wrap", "Wrap each line of the clipboard to the given width (arg1). Words longer than the width are not broken.\nOptional indent (arg2): 'N' indents wrapped lines by N, 'F,R' indents first lines by F and the rest by R"));
+            buttonMap.put("btnStrJustify", new ButtonSetup(Arrays.asList(), "String: Justify", "Word wrap each line of the clipboard to the given width (arg1), spreading out the words to fill it\nOptional indent (arg2): 'N' indents wrapped lines by N, 'F,R' indents first lines by F and the rest by R"));
+            buttonMap.put("btnStrSplit", new ButtonSetup(Arrays.asList(txtArg2), "String: Split", "Split clipboard into multiple lines on given string (arg1)"));
+            buttonMap.put("btnStrReplace", new ButtonSetup(Arrays.asList(), "String: Replace", "Replace all text that matches the search text (arg1), with the replacement string (arg2)\nUse ${N} in arg1 to replace every line of buffer N at once, and ${M} in arg2 to replace each with the matching line of buffer M"));
+            buttonMap.put("btnStrRegexRepl", new ButtonSetup(Arrays.asList(), "String: Replace via regex", "Replace all text that matches the regex (arg1) with the replacement string (arg2). Supports backreferences in replacement string.\nExample: arg1='(\\w+) (\\w+)' and arg2='$2,$1' which turns 'foo bar' into 'bar,foo'"));
+
+            buttonMap.put("btnListLTrim", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Left trim", "Trim whitespace off the left side of each line in the clipboard"));
+            buttonMap.put("btnListTrim", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Trim", "Trim whitespace off the left and right side of each line in the clipboard"));
+            buttonMap.put("btnListRTrim", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Right trim", "Trim whitespace off the right side of each line in the clipboard"));
+            buttonMap.put("btnListCollapse", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Collapse", "Strip out all empty lines (might be useful to do a trim first)"));
+            buttonMap.put("btnListUniq", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Uniquify", "Make items in list unique by removing duplicates next to each other (might be useful to do \"lower\" and \"sort\" operations first)"));
+            buttonMap.put("btnListSort", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Sort", "Sort the lines alphabetically in the clipboard"));
+            buttonMap.put("btnListReverse", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: List reverse", "Reverse the order of the lines in the clipboard"));
+            buttonMap.put("btnListStats", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Show stats", "Calculate basics stats on the lines in the clipboard"));
+            buttonMap.put("btnListStore", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Store lines", "Store each line from the clipboard into a separate buffer"));
+            buttonMap.put("btnListPrepend", new ButtonSetup(Arrays.asList(txtArg2), "List: Prepend to lines", "Prepend given text (arg1) to the beginning of each line in the clipboard"));
+            buttonMap.put("btnListAppend", new ButtonSetup(Arrays.asList(txtArg2), "List: Append to lines", "Append given text (arg1) to the end of each line in the clipboard"));
+            buttonMap.put("btnListCenter", new ButtonSetup(Arrays.asList(txtArg2), "List: Center lines", "Center each line in the clipboard with given column width (arg1)"));
+            buttonMap.put("btnListRight", new ButtonSetup(Arrays.asList(txtArg2), "List: Right align lines", "Right align each line in the clipboard to the given column width (arg1)"));
+            buttonMap.put("btnListIndent", new ButtonSetup(Arrays.asList(txtArg2), "List: Indent lines", "Indent each line in the clipboard by the given number of spaces (arg1)"));
+            buttonMap.put("btnListSlice", new ButtonSetup(Arrays.asList(txtArg2), "List: Slice", "Apply Python-style slice syntax (arg1) on each line's characters\nExamples: '4', '3:5', '2:', ':-4', '::-1' (reverse), '::2' (every other character)"));
+            buttonMap.put("btnListSliceLines", new ButtonSetup(Arrays.asList(txtArg2), "List: Slice lines", "Apply Python-style slice syntax (arg1) on the list of lines, keeping only the lines it picks out\nExamples: '0' (first line), '-10:' (last 10 lines), '::2' (every other line), '::-1' (reverse)"));
+            buttonMap.put("btnListHead", new ButtonSetup(Arrays.asList(txtArg2), "List: Head", "Keep the first N (arg1) lines. Stops reading at line N, so it's quick on huge clipboards."));
+            buttonMap.put("btnListTail", new ButtonSetup(Arrays.asList(txtArg2), "List: Tail", "Keep the last N (arg1) lines. Reads backwards from the end, so it's quick on huge clipboards."));
+            buttonMap.put("btnListEvery", new ButtonSetup(Arrays.asList(txtArg2), "List: Every Nth line", "Keep every Nth (arg1) line, starting with the first"));
+            buttonMap.put("btnListSample", new ButtonSetup(Arrays.asList(txtArg2), "List: Random sample", "Keep a random sample of the lines, in their original order. arg1 is a number of lines (ex: '1000') or a percentage (ex: '1%')"));
+            buttonMap.put("btnListJoin", new ButtonSetup(Arrays.asList(txtArg2), "List: Join lines with character", "Join each line in the clipboard with the given delimiter (arg1)"));
+            buttonMap.put("btnListContains", new ButtonSetup(Arrays.asList(txtArg2), "List Filter: lines that contain...", "Keep lines in the clipboard that contain the given literal string (arg1)\nUse ${N} to keep lines that contain any line of buffer N"));
+            buttonMap.put("btnListRegex", new ButtonSetup(Arrays.asList(txtArg2), "List Filter: lines that match regex...", "Keep lines in the clipboard that match the regex (arg1)"));
+            buttonMap.put("btnListRegexFull", new ButtonSetup(Arrays.asList(txtArg2), "List Filter: full lines that match regex", "Keep lines in the clipboard that match the regex (arg1) exactly. The regex must match the entire line."));
+            buttonMap.put("btnListRegexRepl", new ButtonSetup(Arrays.asList(), "List: Regex replace", "Replace text in each line that matches the regex (arg1) with the replacement string (arg2). Supports backreferences in replacement string.\nExample: arg1='(\\w+) (\\w+)' and arg2='$2,$1' which turns 'foo bar' into 'bar,foo'"));
+            buttonMap.put("btnListExpr", new ButtonSetup(Arrays.asList(), "List: Expression", "Replace each line with the value of an expression (arg1), or keep only the lines where it is true. Fields f[0], f[1].. are split on arg2 (default whitespace).\nExamples: upper(f[2]) + \":\" + len(line)   num(f[3]) > 100 && find(line, \"err\")   if(n % 2 == 0, line, \"\")\nAlso: n (line number), nf (field count), lower trim substr replace contains startsWith endsWith matches num str floor round abs min max lpad rpad"));
+
+            buttonMap.put("btnCodecBase64", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Codec: Base64 encode", "Encode the clipboard's UTF-8 bytes as Base64 (each line separately if 'each line' is checked)"));
+            buttonMap.put("btnCodecUnBase64", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Codec: Base64 decode", "Decode Base64 in the clipboard back to text. Whitespace is ignored and the URL-safe alphabet works too."));
+            buttonMap.put("btnCodecUrl", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Codec: URL encode", "Percent-encode the clipboard for use in a URL. Everything but letters, digits and -._~ is escaped."));
+            buttonMap.put("btnCodecUnUrl", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Codec: URL decode", "Decode %XX escapes (and + for space) in the clipboard"));
+            buttonMap.put("btnCodecHex", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Codec: Hex encode", "Show the clipboard's UTF-8 bytes as hex"));
+            buttonMap.put("btnCodecUnHex", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Codec: Hex decode", "Turn hex bytes in the clipboard back into text. Whitespace is ignored."));
+            buttonMap.put("btnCodecHtml", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Codec: HTML escape", "Escape & < > \" ' in the clipboard as HTML entities"));
+            buttonMap.put("btnCodecUnHtml", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Codec: HTML unescape", "Turn HTML entities in the clipboard back into characters (numeric ones, and &amp; &lt; &gt; &quot; &apos; &nbsp;)"));
+            buttonMap.put("btnCodecMd5", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Codec: MD5", "Replace the clipboard with the MD5 digest of its UTF-8 bytes (each line separately if 'each line' is checked)"));
+            buttonMap.put("btnCodecSha256", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Codec: SHA-256", "Replace the clipboard with the SHA-256 digest of its UTF-8 bytes (each line separately if 'each line' is checked)"));
+            buttonMap.put("btnCodecCrc32", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Codec: CRC32", "Replace the clipboard with the CRC32 of its UTF-8 bytes (each line separately if 'each line' is checked)"));
+
+            buttonMap.put("btnActionView", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Action: View", "Open contents of clipboard in a viewer window. Handles huge text: jump to a line number, or find text."));
+            buttonMap.put("btnActionOpenUrl", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Action: Open as URL", "Open contents of system clipboard as URL's (supports newline separated lists of URL's)"));
+            buttonMap.put("btnActionOpenFiles", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Action: Open files in explorer", "Open contents of system clipboard as files/folders (supports newline separated lists of paths)"));
+        }
+        if (! buttonMap.containsKey(id)) { throw new RuntimeException("Control ID doesn't exist in map: " + id); };
+        return buttonMap.get(id);
+    }
+
     public void onMouseEnter(MouseEvent e) {
         Button b = (Button) e.getSource();
-        if (! buttonMap.containsKey(b.getId())) { throw new RuntimeException("Control ID doesn't exist in map: " + b.getId()); };
-        ButtonSetup stuff = buttonMap.get(b.getId());
+        ButtonSetup stuff = buttonSetup(b.getId());
         for (TextField f : stuff.disable) {
             f.setDisable(true);
         }
         txtHelpHeader.setText(stuff.helpHeader + "\n");
         txtHelpBody.setText(stuff.helpBody);
+        hoveredButtonId = b.getId();
+        schedulePreview();
     }
     public void onMouseExit(MouseEvent e) {
         Button b = (Button) e.getSource();
-        if (! buttonMap.containsKey(b.getId())) { throw new RuntimeException("Control ID doesn't exist in map: " + b.getId()); };
-        ButtonSetup stuff = buttonMap.get(b.getId());
+        ButtonSetup stuff = buttonSetup(b.getId());
         for (TextField f : stuff.disable) {
             f.setDisable(false);
         }
         txtHelpHeader.setText("\n");
         txtHelpBody.setText("");
+        hoveredButtonId = null;
+        cancelPreview();
+        txtPreview.setText("");
+    }
+
+    /** (Re)start the countdown to updating the preview. Called on every hover and keystroke, so the preview only runs once they settle. */
+    private void schedulePreview() {
+        cancelPreview();
+        if (hoveredButtonId == null || ClipOps.get(hoveredButtonId) == null) {
+            txtPreview.setText("");
+            return;
+        }
+        previewDelay.playFromStart();
+    }
+
+    private void cancelPreview() {
+        previewDelay.stop();
+        if (previewTask != null) {
+            previewTask.cancel();
+            previewTask = null;
+        }
+    }
+
+    /** Run the hovered operation on the top lines of the clipboard in the background and show the result */
+    private void runPreview() {
+        TextOp eachLine = chkCodecEachLine.isSelected() ? ClipOps.get(hoveredButtonId + "Lines") : null;
+        TextOp op = eachLine != null ? eachLine : ClipOps.get(hoveredButtonId);
+        if (op == null) {
+            return;
+        }
+        String sample = SysClipboard.snapshot().head(Config.PREVIEW_LINES);
+        String arg1 = txtArg1.getText();
+        String arg2 = txtArg2.getText();
+        Task<String> task = new Task<String>() {
+            @Override
+            protected String call() throws Exception {
+                return op.apply(sample, arg1, arg2);
+            }
+        };
+        task.setOnSucceeded(e -> {
+            if (task == previewTask) {
+                txtPreview.setText(task.getValue());
+            }
+        });
+        task.setOnFailed(e -> {
+            if (task == previewTask) {
+                txtPreview.setText("ERROR: " + task.getException().getMessage());
+            }
+        });
+        previewTask = task;
+        previewExecutor.submit(task);
     }
 
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         buffers.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        buffers.getSelectionModel().getSelectedIndices().addListener((ListChangeListener<Integer>) c -> retrieveSelectionChanged = true);
         buffers.setItems(clips);
+        buffers.setCellFactory(lv -> new ListCell<ClipBuffer>() {
+            @Override
+            protected void updateItem(ClipBuffer item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : item.toString());
+                Image thumbnail = empty || item == null || item.flavors == null ? null : item.flavors.thumbnail();
+                setGraphic(thumbnail == null ? null : new ImageView(thumbnail));
+            }
+        });
+        clips.addListener((ListChangeListener<ClipBuffer>) c -> History.buffersChanged(c, clips));
+        ClipOps.store().onWork(() -> Platform.runLater(this::flushBufferStore)); // only runs when there is something to do
+        clips.addListener((ListChangeListener<ClipBuffer>) c -> ClipOps.store().changed());
+        ClipOps.setBuffers(clips);
+        ColdBuffers.start(ClipOps::buffers);
         statusBar.cacheTextFillColor();
 
-        buttonMap.put("btnStore", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Store", "Add contents of clipboard to buffer"));
-        buttonMap.put("btnReplace", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Replace", "Replace selected buffer with current clipboard contents"));
-        buttonMap.put("btnPrepend", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Prepend", "Prepend clipboard contents to the beginning of each selected buffer"));
-        buttonMap.put("btnAppend", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Append", "Append clipboard contents to the end of each selected buffer"));
-        buttonMap.put("btnJoin", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Join", "Join selected buffers with newlines"));
-        buttonMap.put("btnDiff", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Diff", "Diff two selected buffers"));
-        buttonMap.put("btnUp", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Up", "Move selected buffers up"));
-        buttonMap.put("btnDown", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Down", "Move selected buffers down"));
-
-        buttonMap.put("btnStrLTrim", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "String: Left trim", "Trim whitespace off the left side of the clipboard"));
-        buttonMap.put("btnStrTrim", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "String: Trim", "Trim whitespace off the left and right side of the clipboard"));
-        buttonMap.put("btnStrRTrim", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "String: Right trim", "Trim whitespace off the right side of the clipboard"));
-        buttonMap.put("btnStrLower", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "String: Lowercase", "Convert clipboard to lowercase"));
-        buttonMap.put("btnStrUpper", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "String: Uppercase", "Convert clipboard to uppercase"));
-        buttonMap.put("btnStrPrepend", new ButtonSetup(Arrays.asList(txtArg2), "String: Prepend string", "Prepend text (arg1) to start of clipboard"));
-        buttonMap.put("btnStrAppend", new ButtonSetup(Arrays.asList(txtArg2), "String: Append string", "Append text (arg1) to end of clipboard"));
-        buttonMap.put("btnStrWordWrap", new ButtonSetup(Arrays.asList(txtArg2), "String: Word wrap", "Wrap the clipboard to the given width (arg1). If a line goes too long with no whitespace, it will not be truncated."));
-        buttonMap.put("btnStrSplit", new ButtonSetup(Arrays.asList(txtArg2), "String: Split", "Split clipboard into multiple lines on given string (arg1)"));
-        buttonMap.put("btnStrReplace", new ButtonSetup(Arrays.asList(), "String: Replace", "Replace all text that matches the search text (arg1), with the replacement string (arg2)"));
-        buttonMap.put("btnStrRegexRepl", new ButtonSetup(Arrays.asList(), "String: Replace via regex", "Replace all text that matches the regex (arg1) with the replacement string (arg2). Supports backreferences in replacement string.\nExample: arg1='(\\w+) (\\w+)' and arg2='$2,$1' which turns 'foo bar' into 'bar,foo'"));
-
-        buttonMap.put("btnListLTrim", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Left trim", "Trim whitespace off the left side of each line in the clipboard"));
-        buttonMap.put("btnListTrim", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Trim", "Trim whitespace off the left and right side of each line in the clipboard"));
-        buttonMap.put("btnListRTrim", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Right trim", "Trim whitespace off the right side of each line in the clipboard"));
-        buttonMap.put("btnListCollapse", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Collapse", "Strip out all empty lines (might be useful to do a trim first)"));
-        buttonMap.put("btnListUniq", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Uniquify", "Make items in list unique by removing duplicates next to each other (might be useful to do \"lower\" and \"sort\" operations first)"));
-        buttonMap.put("btnListSort", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Sort", "Sort the lines alphabetically in the clipboard"));
-        buttonMap.put("btnListReverse", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: List reverse", "Reverse the order of the lines in the clipboard"));
-        buttonMap.put("btnListStats", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Show stats", "Calculate basics stats on the lines in the clipboard"));
-        buttonMap.put("btnListStore", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "List: Store lines", "Store each line from the clipboard into a separate buffer"));
-        buttonMap.put("btnListPrepend", new ButtonSetup(Arrays.asList(txtArg2), "List: Prepend to lines", "Prepend given text (arg1) to the beginning of each line in the clipboard"));
-        buttonMap.put("btnListAppend", new ButtonSetup(Arrays.asList(txtArg2), "List: Append to lines", "Append given text (arg1) to the end of each line in the clipboard"));
-        buttonMap.put("btnListCenter", new ButtonSetup(Arrays.asList(txtArg2), "List: Center lines", "Center each line in the clipboard with given column width (arg1)"));
-        buttonMap.put("btnListSlice", new ButtonSetup(Arrays.asList(txtArg2), "List: Slice", "Apply Python-style slice syntax (arg1) on each line's characters\nExamples: '4', '3:5', '2:', ':-4'"));
-        buttonMap.put("btnListJoin", new ButtonSetup(Arrays.asList(txtArg2), "List: Join lines with character", "Join each line in the clipboard with the given delimiter (arg1)"));
-        buttonMap.put("btnListContains", new ButtonSetup(Arrays.asList(txtArg2), "List Filter: lines that contain...", "Keep lines in the clipboard that contain the given literal string (arg1)"));
-        buttonMap.put("btnListRegex", new ButtonSetup(Arrays.asList(txtArg2), "List Filter: lines that match regex...", "Keep lines in the clipboard that match the regex (arg1)"));
-        buttonMap.put("btnListRegexFull", new ButtonSetup(Arrays.asList(txtArg2), "List Filter: full lines that match regex", "Keep lines in the clipboard that match the regex (arg1) exactly. The regex must match the entire line."));
-        buttonMap.put("btnListRegexRepl", new ButtonSetup(Arrays.asList(), "List: Regex replace", "Replace text in each line that matches the regex (arg1) with the replacement string (arg2). Supports backreferences in replacement string.\nExample: arg1='(\\w+) (\\w+)' and arg2='$2,$1' which turns 'foo bar' into 'bar,foo'"));
-
-        buttonMap.put("btnActionNotepad", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Action: Open in Notepad", "Open contents of clipboard in Notepad"));
-        buttonMap.put("btnActionOpenUrl", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Action: Open as URL", "Open contents of system clipboard as URL's (supports newline separated lists of URL's)"));
-        buttonMap.put("btnActionOpenFiles", new ButtonSetup(Arrays.asList(txtArg1, txtArg2), "Action: Open files in explorer", "Open contents of system clipboard as files/folders (supports newline separated lists of paths)"));
+        previewDelay = new PauseTransition(Duration.millis(Config.PREVIEW_DELAY_MS));
+        previewDelay.setOnFinished(e -> runPreview());
+        txtArg1.textProperty().addListener((obs, oldText, newText) -> schedulePreview());
+        txtArg2.textProperty().addListener((obs, oldText, newText) -> schedulePreview());
+        tabMetrics.selectedProperty().addListener((obs, wasSelected, selected) -> {
+            if (selected) {
+                updateMetricsView(); // only filled in while it is showing
+            }
+        });
+    }
+
+    /** Move buffers queued by other threads into the list, and publish the list. Asked for by the store when there is work. */
+    private void flushBufferStore() {
+        List<ClipBuffer> batch = ClipOps.store().drain();
+        if (!batch.isEmpty()) {
+            Collections.reverse(batch); // newest on top, like stored clips
+            History.beginStep("background store");
+            clips.addAll(0, batch);
+            History.endStep();
+        }
+        ClipOps.store().publishIfChanged(clips); // one copy of the list, however many changes came before it
+    }
+
+    private void updateMetricsView() {
+        metricsView.setText(OpMetrics.report() + "\n" + ColdBuffers.report() + "\n" + StartupTimer.report());
     }
 
     public void onReady(Stage primaryStage) {
         this.primaryStage = primaryStage;
+
+        // Time every button click. Filters run before the button's onAction handler and handlers run after it, as the
+        // ActionEvent bubbles back up to the scene.
+        primaryStage.getScene().addEventFilter(ActionEvent.ACTION, e -> {
+            SysClipboard.invalidate(); // another app may have changed the clipboard since the last action
+            ClipOps.store().publishIfChanged(clips); // the action sees every change made before it, even if no flush ran yet
+            if (e.getTarget() instanceof ButtonBase) {
+                String name = ((ButtonBase) e.getTarget()).getId();
+                OpMetrics.begin(name);
+                History.beginStep(name);
+            }
+        });
+        primaryStage.getScene().addEventHandler(ActionEvent.ACTION, e -> {
+            History.endStep();
+            if (OpMetrics.end() != null && tabMetrics.isSelected()) {
+                updateMetricsView();
+            }
+        });
+        primaryStage.getScene().addEventFilter(MouseEvent.MOUSE_PRESSED, e -> SysClipboard.invalidate());
+        primaryStage.getScene().addEventFilter(KeyEvent.KEY_PRESSED, e -> SysClipboard.invalidate());
+
         primaryStage.focusedProperty().addListener(new ChangeListener<Boolean>() {
             @Override
             public void changed(ObservableValue<? extends Boolean> ov, Boolean t, Boolean t1) {
                 if (ov.getValue()) {
+                    SysClipboard.invalidate(); // clipboard was probably changed while we were in another app
                     if (chkStoreOnFocus.isSelected()) {
                         log.insertText(0, "Storing clip to buffer when app gets focus\n");
-                        appendToClipBuffersAndShowStatus(SysClipboard.read());
+                        storeClipboardAndShowStatus();
                     }
                     if (chkRetrieveOnFocus.isSelected()) {
                         log.insertText(0, "Retrieve buffer to clipboard when app gets focus\n");
@@ -253,7 +508,8 @@ public class Controller implements Initializable {
         });
 
         if (chkStoreOnFocus.isSelected()) {
-            appendToClipBuffersAndShowStatus(SysClipboard.read()); // read and store first clip when app first opens
+            // read and store first clip when app first opens, once the window is up (reading the clipboard can be slow)
+            Platform.runLater(this::storeClipboardAndShowStatus);
         }
 
         txtHelpHeader.setText("my code header\n");
@@ -262,13 +518,15 @@ public class Controller implements Initializable {
 
     public void onBuffersKeyPressed(KeyEvent e) {
         if (e.getCode() == KeyCode.DELETE) {
-            ObservableList<Integer> idxs = buffers.getSelectionModel().getSelectedIndices();
-            int startingSize = idxs.size();
-            // delete items in reverse index order to not offset indexes while iterating
-            for (int i = idxs.size()-1; i >= 0; i--) {
-                clips.remove((int) idxs.get(i));
+            int[] selected = selectedBufferIndices();
+            if (selected.length == 0) {
+                return;
+            }
+            clips.setAll(ListBlocks.without(clips, selected));
+            if (!clips.isEmpty()) {
+                selectBuffers(new int[] {Math.min(selected[0], clips.size() - 1)});
             }
-            statusBar.show("Deleted " + startingSize + " selected clip buffer(s)");
+            statusBar.show("Deleted " + selected.length + " selected clip buffer(s)");
         }
     }
     public void onBuffersMouseClicked(MouseEvent e) {
@@ -311,25 +569,26 @@ public class Controller implements Initializable {
         URL url = getDragboardUrl(b);
 
         if (b.hasFiles()) {
-            List<File> items = b.getFiles();
-            int bufferCount = 0;
-            for (File item : items) {
-                if (item.isFile()) {
-                    if (readFileAndStoreInBuffer(item)) {
-                        bufferCount += 1;
-                    }
-                } else if (item.isDirectory()) {
+            List<File> files = new ArrayList<>();
+            for (File item : b.getFiles()) {
+                if (item.isDirectory()) {
                     File[] dirItems = item.listFiles();
-                    for (File dirItem : dirItems) {
-                        if (readFileAndStoreInBuffer(dirItem)) {
-                            bufferCount += 1;
-                        }
-                    }
+                    files.addAll(dirItems == null ? Collections.emptyList() : Arrays.asList(dirItems));
                 } else {
-                    // TODO: not sure if this case is even possible
+                    files.add(item);
                 }
-                statusBar.show("Read " + bufferCount + " files and stored contents in buffers");
             }
+            statusBar.show("Reading " + files.size() + " file(s) into buffers");
+            fileReader.submit(() -> {
+                int bufferCount = 0;
+                for (File file : files) {
+                    if (readFileAndStoreInBuffer(file)) {
+                        bufferCount += 1;
+                    }
+                }
+                int count = bufferCount;
+                Platform.runLater(() -> statusBar.show("Read " + count + " files and stored contents in buffers"));
+            });
         } else if (url != null) {
             System.out.println("dropped a URL");
             String txt = getDataFromURL(url);
@@ -370,6 +629,49 @@ public class Controller implements Initializable {
         statusBar.show("Upper-cased current clipboard contents");
         SysClipboard.write(SysClipboard.read().toUpperCase());
     }
+    public void onBtnStrPretty(ActionEvent e) {
+        String indent = Functions.parseIndentUnit(txtArg1.getText());
+        structured("Pretty-printed", text -> StructuredText.pretty(text, indent, SysClipboard.lineSeparator()));
+    }
+    public void onBtnStrMinify(ActionEvent e) {
+        structured("Minified", StructuredText::minify);
+    }
+    public void onBtnStrValidate(ActionEvent e) {
+        String clipboard = SysClipboard.read();
+        try {
+            statusBar.show(StructuredText.validate(clipboard));
+        } catch (IllegalArgumentException exc) {
+            statusBar.showErr("Not valid " + (StructuredText.isXml(clipboard) ? "XML" : "JSON") + ": " + exc.getMessage());
+        }
+    }
+    public void onBtnStrExtract(ActionEvent e) {
+        String path = txtArg1.getText();
+        String clipboard = SysClipboard.read();
+        try {
+            long start = OpMetrics.phaseStart();
+            Pair<String, Integer> result = StructuredText.extract(clipboard, path, SysClipboard.lineSeparator());
+            OpMetrics.phaseEnd(OpPhase.TRANSFORM, start);
+            SysClipboard.write(result.getLeft());
+            statusBar.show("Extracted " + result.getRight() + " value(s) at '" + path + "' from current clipboard");
+        } catch (ArgParseError exc) {
+            statusBar.showErr(exc.getMessage());
+        } catch (IllegalArgumentException exc) {
+            statusBar.showErr("Problem with the clipboard contents: " + exc.getMessage());
+        }
+    }
+    /** Reformat the JSON or XML in the clipboard */
+    private void structured(String what, UnaryOperator<String> reformat) {
+        String clipboard = SysClipboard.read();
+        try {
+            long start = OpMetrics.phaseStart();
+            String result = reformat.apply(clipboard);
+            OpMetrics.phaseEnd(OpPhase.TRANSFORM, start);
+            SysClipboard.write(result);
+            statusBar.show(what + " the " + (StructuredText.isXml(clipboard) ? "XML" : "JSON") + " in current clipboard (" + clipboard.length() + " -> " + result.length() + " chars)");
+        } catch (IllegalArgumentException exc) {
+            statusBar.showErr("Problem with the clipboard contents: " + exc.getMessage());
+        }
+    }
     public void onBtnStrPrepend(ActionEvent e) {
         String arg = txtArg1.getText();
         statusBar.show("Prepended " + arg.length() + " character to current clipboard");
@@ -381,32 +683,60 @@ public class Controller implements Initializable {
         SysClipboard.write(SysClipboard.read() + arg);
     }
     public void onBtnStrWordWrap(ActionEvent e) {
+        wrapLines(Align.LEFT, "Word wrapped");
+    }
+    public void onBtnStrJustify(ActionEvent e) {
+        wrapLines(Align.JUSTIFY, "Justified");
+    }
+    private void wrapLines(Align align, String verb) {
         try {
             int width = Integer.valueOf(txtArg1.getText());
-            statusBar.show("Word wrapped the current clipboard contents to " + width + " columns wide");
-            SysClipboard.write(WordUtils.wrap(SysClipboard.read(), width));
+            int[] indents = Functions.parseIndents(txtArg2.getText());
+            int lineCount = new ClipboardAsLineRangeMutator(new LineFormatter(width, align, true, indents[0], indents[1], SysClipboard.lineSeparator())).mutate();
+            statusBar.show(verb + " " + lineCount + " paragraph(s) in the current clipboard to " + width + " columns wide");
         } catch (NumberFormatException exc) {
-            statusBar.showErr("Invalid argument for word wrap. It must be an integer. (" + exc.getMessage() + ")");
+            statusBar.showErr("Invalid width for word wrap. It must be an integer. (" + exc.getMessage() + ")");
+        } catch (ArgParseError exc) {
+            statusBar.showErr(exc.getMessage());
         }
     }
     public void onBtnStrSplit(ActionEvent e) {
         String arg = txtArg1.getText();
         String clipboard = SysClipboard.read();
         int origSize = clipboard.length();
-        clipboard = clipboard.replace(arg, System.lineSeparator());
-        String[] array = StringUtils.splitByWholeSeparatorPreserveAllTokens(clipboard, System.lineSeparator());
-        statusBar.show("Split " + origSize + " character(s) using '" + arg + "' into " + array.length + " line(s) in current clipboard");
-        SysClipboard.write(clipboard);
+        SysClipboard.write(clipboard.replace(arg, SysClipboard.lineSeparator()));
+        statusBar.show("Split " + origSize + " character(s) using '" + arg + "' into " + SysClipboard.snapshot().lineCount() + " line(s) in current clipboard");
     }
     public void onBtnStrReplace(ActionEvent e) {
-        Debug.dumpString(SysClipboard.read());
+        String clipboard = SysClipboard.read();
+        List<String> patterns;
+        String[] replacements = null;
+        try {
+            patterns = ClipOps.bufferLines(txtArg1.getText());
+            if (patterns != null) {
+                replacements = ClipOps.replacements(txtArg2.getText(), patterns.size());
+            }
+        } catch (ArgParseError exc) {
+            statusBar.showErr(exc.getMessage());
+            return;
+        }
+        if (patterns != null) {
+            long start = OpMetrics.phaseStart();
+            Pair<String, Integer> result = new AhoCorasick(patterns).replace(clipboard, replacements);
+            OpMetrics.phaseEnd(OpPhase.TRANSFORM, start);
+            statusBar.show("Replaced " + result.getRight() + " match(es) of " + patterns.size() + " pattern(s) from buffer " + txtArg1.getText() + " in current clipboard");
+            SysClipboard.write(result.getLeft());
+            return;
+        }
+        if (Config.DEBUG) { Debug.dumpString(clipboard); }
         String trg = txtArg1.getText();
         String repl = txtArg2.getText();
         trg = StringUtil.replaceSpecialChars(trg);
         repl = StringUtil.replaceSpecialChars(repl);
         statusBar.show("Replaced '" + trg + "' with '" + repl + "' in current clipboard");
-        SysClipboard.write(SysClipboard.read().replace(trg, repl));
-        Debug.dumpString(SysClipboard.read());
+        String result = clipboard.replace(trg, repl);
+        SysClipboard.write(result);
+        if (Config.DEBUG) { Debug.dumpString(result); }
     }
     public void onBtnStrRegexReplace(ActionEvent e) {
         String regex = txtArg1.getText();
@@ -420,46 +750,27 @@ public class Controller implements Initializable {
         }
     }
     public void onBtnListLTrim(ActionEvent e) {
-        List<String> result = new ClipboardAsListMutatorByLine( (line) -> StringUtil.ltrim(line) ).mutate();
-        statusBar.show("Left-trimmed " + result.size() + " lines in current clipboard");
+        int lineCount = new ClipboardAsListMutatorByLine( (line) -> StringUtil.ltrim(line) ).mutate();
+        statusBar.show("Left-trimmed " + lineCount + " lines in current clipboard");
     }
     public void onBtnListTrim(ActionEvent e) {
-        List<String> result = new ClipboardAsListMutatorByLine( (line) -> line.trim() ).mutate();
-        statusBar.show("Trimmed " + result.size() + " lines in current clipboard");
+        int lineCount = new ClipboardAsListMutatorByLine( (line) -> line.trim() ).mutate();
+        statusBar.show("Trimmed " + lineCount + " lines in current clipboard");
     }
     public void onBtnListRTrim(ActionEvent e) {
-        List<String> result = new ClipboardAsListMutatorByLine( (line) -> StringUtil.rtrim(line) ).mutate();
-        statusBar.show("Right-trimmed " + result.size() + " lines in current clipboard");
+        int lineCount = new ClipboardAsListMutatorByLine( (line) -> StringUtil.rtrim(line) ).mutate();
+        statusBar.show("Right-trimmed " + lineCount + " lines in current clipboard");
     }
     public void onBtnListSort(ActionEvent e) {
         List<String> result = new ClipboardAsListMutator( (list) -> Collections.sort(list) ).mutate();
         statusBar.show("Sorted " + result.size() + " lines in current clipboard");
     }
     public void onBtnListReverse(ActionEvent e) {
-        List<String> result = new ClipboardAsListMutator( (list) -> Collections.reverse(list) ).mutate();
-        statusBar.show("Reversed " + result.size() + " lines in current clipboard");
+        int lineCount = new ClipboardAsListReverse().reverse();
+        statusBar.show("Reversed " + lineCount + " lines in current clipboard");
     }
     public void onBtnListStats(ActionEvent e) {
-        String clipboard = SysClipboard.read();
-        String[] array = StringUtils.splitByWholeSeparatorPreserveAllTokens(clipboard, System.lineSeparator());
-        List<String> list = Arrays.asList(array);
-        String[] words = clipboard.split("\\s+"); // want to collapse identical, adjacent tokens
-
-        Integer minLineLen = Integer.MAX_VALUE;
-        Integer maxLineLen = 0;
-        Integer totalLineLen = 0;
-        for (String line : list) {
-            Integer lineLength = line.length();
-            minLineLen = Math.min(minLineLen, lineLength);
-            maxLineLen = Math.max(maxLineLen, lineLength);
-            totalLineLen += lineLength;
-        }
-        String msg = String.format(
-                "List stats: lines=%d chars=%d words=%d min/max/avgLineLength=%d / %d / %.1f",
-                list.size(), clipboard.length(), words.length,
-                minLineLen, maxLineLen, (float) totalLineLen/list.size()
-        );
-        statusBar.show(msg);
+        statusBar.show(ClipboardAsListStats.calculate().toString());
     }
     public void onBtnListStore(ActionEvent e) {
         List<String> lines = SysClipboard.readAsLines();
@@ -471,99 +782,238 @@ public class Controller implements Initializable {
     }
     public void onBtnListPrepend(ActionEvent e) {
         String arg = txtArg1.getText();
-        List<String> result = new ClipboardAsListMutatorByLine( (line) -> arg + line ).mutate();
-        statusBar.show("Prepended " + arg.length() + " character(s) to " + result.size() + " lines in current clipboard");
+        int lineCount = new ClipboardAsListMutatorByLine( (line) -> arg + line ).mutate();
+        statusBar.show("Prepended " + arg.length() + " character(s) to " + lineCount + " lines in current clipboard");
     }
     public void onBtnListAppend(ActionEvent e) {
         String arg = txtArg1.getText();
-        List<String> result = new ClipboardAsListMutatorByLine( (line) -> line + arg ).mutate();
-        statusBar.show("Appended " + arg.length() + " character(s) to " + result.size() + " lines in current clipboard");
+        int lineCount = new ClipboardAsListMutatorByLine( (line) -> line + arg ).mutate();
+        statusBar.show("Appended " + arg.length() + " character(s) to " + lineCount + " lines in current clipboard");
     }
     public void onBtnListCenter(ActionEvent e) {
         try {
             int width = Integer.valueOf(txtArg1.getText());
-            List<String> result = new ClipboardAsListMutatorByLine( (line) -> StringUtils.center(line, width) ).mutate();
-            statusBar.show("Centered " + result.size() + " lines in current clipboard");
+            int lineCount = new ClipboardAsLineRangeMutator(new LineFormatter(width, Align.CENTER, false, 0, 0, null)).mutate();
+            statusBar.show("Centered " + lineCount + " lines in current clipboard");
         } catch (NumberFormatException exc) {
             statusBar.showErr("Invalid argument for center. It must be an integer. (" + exc.getMessage() + ")");
         }
     }
+    public void onBtnListRight(ActionEvent e) {
+        try {
+            int width = Integer.valueOf(txtArg1.getText());
+            int lineCount = new ClipboardAsLineRangeMutator(new LineFormatter(width, Align.RIGHT, false, 0, 0, null)).mutate();
+            statusBar.show("Right aligned " + lineCount + " lines in current clipboard");
+        } catch (NumberFormatException exc) {
+            statusBar.showErr("Invalid argument for right align. It must be an integer. (" + exc.getMessage() + ")");
+        }
+    }
+    public void onBtnListIndent(ActionEvent e) {
+        try {
+            int indent = Integer.valueOf(txtArg1.getText());
+            int lineCount = new ClipboardAsLineRangeMutator(new LineFormatter(0, Align.LEFT, false, indent, indent, null)).mutate();
+            statusBar.show("Indented " + lineCount + " lines by " + indent + " in current clipboard");
+        } catch (NumberFormatException exc) {
+            statusBar.showErr("Invalid argument for indent. It must be an integer. (" + exc.getMessage() + ")");
+        }
+    }
     public void onBtnListSlice(ActionEvent e) {
-        // parse slice argument syntax
         String sliceExpr = txtArg1.getText();
-        Integer[] idxs;
+        Slice slice;
         try {
-            idxs = Functions.parseSliceSyntax(sliceExpr);
+            slice = Slice.parse(sliceExpr);
         } catch(ArgParseError exc) {
             statusBar.showErr(exc.getMessage());
             return;
         }
-        Integer singleIdx = idxs[0];
-        Integer startIdx = idxs[1];
-        Integer endIdx = idxs[2];
-
-        List<String> result = singleIdx != null
-                ? new ClipboardAsListMutatorByLine( (line) -> StringUtil.slice(line, singleIdx)).mutate()
-                : new ClipboardAsListMutatorByLine( (line) -> StringUtil.slice(line, startIdx, endIdx)).mutate();
-        statusBar.show("Applied slice substring expression \"" + sliceExpr + "\" to " + result.size() + " line(s) in current clipboard");
+        boolean codePoints = SysClipboard.snapshot().hasSurrogates();
+        int lineCount = new ClipboardAsLineRangeMutator( (text, start, end, out) -> slice.appendTo(text, start, end, codePoints, out)).mutate();
+        statusBar.show("Applied slice substring expression \"" + sliceExpr + "\" to " + lineCount + " line(s) in current clipboard");
+    }
+    public void onBtnListSliceLines(ActionEvent e) {
+        String sliceExpr = txtArg1.getText();
+        Slice slice;
+        try {
+            slice = Slice.parse(sliceExpr);
+        } catch(ArgParseError exc) {
+            statusBar.showErr(exc.getMessage());
+            return;
+        }
+        ClipSnapshot snapshot = SysClipboard.snapshot();
+        int total = snapshot.lineCount();
+        int count = slice.count(total);
+        int[] lines = new int[count];
+        for (int k = 0, i = slice.first(total); k < count; ++k, i += slice.step()) {
+            lines[k] = i;
+        }
+        SysClipboard.write(snapshot.join(lines, count));
+        statusBar.show("Kept " + count + " of " + total + " line(s) using slice expression \"" + sliceExpr + "\"");
+    }
+    public void onBtnListHead(ActionEvent e) {
+        keepLines("Kept the first %d line(s)", (snapshot, n) -> snapshot.head(n));
+    }
+    public void onBtnListTail(ActionEvent e) {
+        keepLines("Kept the last %d line(s)", (snapshot, n) -> snapshot.tail(n));
+    }
+    public void onBtnListEvery(ActionEvent e) {
+        keepLines("Kept one line in every %d", (snapshot, n) -> snapshot.everyNth(n));
+    }
+    public void onBtnListSample(ActionEvent e) {
+        Number size;
+        try {
+            size = Functions.parseSampleSize(txtArg1.getText());
+        } catch(ArgParseError exc) {
+            statusBar.showErr(exc.getMessage());
+            return;
+        }
+        ClipSnapshot snapshot = SysClipboard.snapshot();
+        long start = OpMetrics.phaseStart();
+        String result = size instanceof Integer ? snapshot.sample(size.intValue(), new Random()) : snapshot.sample(size.doubleValue(), new Random());
+        OpMetrics.phaseEnd(OpPhase.TRANSFORM, start);
+        SysClipboard.write(result);
+        statusBar.show("Kept a random sample of " + SysClipboard.snapshot().lineCount() + " line(s) (" + txtArg1.getText().trim() + ") in current clipboard");
     }
     public void onBtnListJoin(ActionEvent e) {
-        String clipboard = SysClipboard.read();
+        ClipSnapshot snapshot = SysClipboard.snapshot();
         String arg = txtArg1.getText();
-        statusBar.show("Joined " + StringUtils.splitByWholeSeparatorPreserveAllTokens(clipboard, System.lineSeparator()).length + " lines with '" + arg + "' in current clipboard");
-        SysClipboard.write(clipboard.replace(System.lineSeparator(), arg));
+        StringBuilder sb = new StringBuilder(snapshot.text.length());
+        for (int i = 0; i < snapshot.lineCount(); ++i) {
+            if (i > 0) {
+                sb.append(arg);
+            }
+            sb.append(snapshot.text, snapshot.lineStart(i), snapshot.lineEnd(i));
+        }
+        statusBar.show("Joined " + snapshot.lineCount() + " lines with '" + arg + "' in current clipboard");
+        SysClipboard.write(sb.toString());
     }
     public void onBtnListCollapse(ActionEvent e) {
-        Pair<List<String>, List<String>> result = new ClipboardAsListFilter( (line) -> line.length() > 0 ).filter();
-        statusBar.show("Collapsed " + result.getLeft().size() + " lines down to " + result.getRight().size() + " by removing empty lines in current clipboard");
+        Pair<Integer, Integer> result = new ClipboardAsListFilter( (line) -> line.length() > 0 ).filter();
+        statusBar.show("Collapsed " + result.getLeft() + " lines down to " + result.getRight() + " by removing empty lines in current clipboard");
     }
     public void onBtnListUniq(ActionEvent e) {
-        List<String> list = SysClipboard.readAsLines();
-        List<String> filtered = new ArrayList();
-        String prev = null;
-        for (String line : list) {
-            if (! line.equals(prev)) {
-                filtered.add(line);
-                prev = line;
-            }
-        }
-        statusBar.show("Made " + list.size() + " lines " + filtered.size() + " by removing adjacent duplicates in current clipboard");
-        SysClipboard.write(String.join("\n", filtered));
+        Pair<Integer, Integer> result = new ClipboardAsListUniq().uniq();
+        statusBar.show("Made " + result.getLeft() + " lines " + result.getRight() + " by removing adjacent duplicates in current clipboard");
     }
     public void onBtnListContains(ActionEvent e) {
         String arg = txtArg1.getText();
-        Pair<List<String>, List<String>> result = new ClipboardAsListFilter( (line) -> line.contains(arg) ).filter();
-        statusBar.show("Filtered " + result.getLeft().size() + " lines down to " + result.getRight().size() + " in current clipboard");
+        List<String> patterns;
+        try {
+            patterns = ClipOps.bufferLines(arg);
+        } catch (ArgParseError exc) {
+            statusBar.showErr(exc.getMessage());
+            return;
+        }
+        if (patterns != null) {
+            AhoCorasick matcher = new AhoCorasick(patterns);
+            Pair<Integer, Integer> result = new ClipboardAsListFilter( (line) -> matcher.containsAny(line) ).filter();
+            statusBar.show("Filtered " + result.getLeft() + " lines down to " + result.getRight() + " containing any of " + patterns.size() + " pattern(s) from buffer " + arg + " in current clipboard");
+            return;
+        }
+        Pair<Integer, Integer> result = new ClipboardAsListFilter( (line) -> line.contains(arg) ).filter();
+        statusBar.show("Filtered " + result.getLeft() + " lines down to " + result.getRight() + " in current clipboard");
     }
     public void onBtnListRegex(ActionEvent e) {
         String rawRegex = txtArg1.getText();
-        String regex = "^.*" + rawRegex + ".*$";
-        Pair<List<String>, List<String>> result = new ClipboardAsListFilter( (line) -> line.matches(regex) ).filter();
-        statusBar.show("Regex filtered " + result.getLeft().size() + " lines down to " + result.getRight().size() + " in current clipboard");
+        try {
+            Pattern regex = Pattern.compile("^.*" + rawRegex + ".*$");
+            Pair<Integer, Integer> result = new ClipboardAsListFilter( (line) -> regex.matcher(line).matches() ).filter();
+            statusBar.show("Regex filtered " + result.getLeft() + " lines down to " + result.getRight() + " in current clipboard");
+        } catch (PatternSyntaxException exc) {
+            statusBar.showErr("Invalid regex: " + exc.getMessage());
+        }
     }
     public void onBtnListRegexFull(ActionEvent e) {
-        String regex = txtArg1.getText();
-        Pair<List<String>, List<String>> result = new ClipboardAsListFilter( (line) -> line.matches(regex) ).filter();
-        statusBar.show("Regex (full) filtered " + result.getLeft().size() + " lines down to " + result.getRight().size() + " in current clipboard");
+        try {
+            Pattern regex = Pattern.compile(txtArg1.getText());
+            Pair<Integer, Integer> result = new ClipboardAsListFilter( (line) -> regex.matcher(line).matches() ).filter();
+            statusBar.show("Regex (full) filtered " + result.getLeft() + " lines down to " + result.getRight() + " in current clipboard");
+        } catch (PatternSyntaxException exc) {
+            statusBar.showErr("Invalid regex: " + exc.getMessage());
+        }
+    }
+    public void onBtnListExpr(ActionEvent e) {
+        try {
+            LineExpr expr = LineExpr.compile(txtArg1.getText(), LineExpr.delimiter(txtArg2.getText()));
+            if (expr.isFilter()) {
+                Pair<Integer, Integer> result = new ClipboardAsListFilter(expr.predicate()).filter();
+                statusBar.show("Filtered " + result.getLeft() + " lines down to " + result.getRight() + " where " + expr + " in current clipboard");
+            } else {
+                int lineCount = new ClipboardAsListMutatorByLine(expr.transformer()).mutate();
+                statusBar.show("Replaced " + lineCount + " lines with " + expr + " in current clipboard");
+            }
+        } catch (ArgParseError exc) {
+            statusBar.showErr(exc.getMessage());
+        } catch (IllegalArgumentException exc) {
+            statusBar.showErr("Problem evaluating the expression: " + exc.getMessage());
+        }
     }
     public void onBtnListRegexRepl(ActionEvent e) {
         String regex = txtArg1.getText();
         String repl = txtArg2.getText();
-        List<String> result = new ClipboardAsListMutatorByLine( (line) -> line.replaceAll(regex, repl)).mutate();
-        statusBar.show("Replaced regex '" + regex + "' with '" + repl + "' in lines in current clipboard");
+        try {
+            Pattern pattern = Pattern.compile(regex);
+            new ClipboardAsListMutatorByLine( (line) -> pattern.matcher(line).replaceAll(repl)).mutate();
+            statusBar.show("Replaced regex '" + regex + "' with '" + repl + "' in lines in current clipboard");
+        } catch (Exception exc) {
+            statusBar.showErr("Problem doing the regex substitution: " + exc);
+        }
     }
-    public void onBtnNotepadAction(ActionEvent e) {
-        Path result = Functions.writeToTempFile(Config.VIEW_TEMP_FILE, Config.TEMP_FILE_EXT, SysClipboard.read().getBytes());
-        if (result != null) {
-            try {
-                new ProcessBuilder(Config.VIEW_APP, result.toString()).start();
-            } catch(Exception exc) {
-                statusBar.showErr("Couldn't launch notepad tool");
+    public void onBtnCodecBase64(ActionEvent e) {
+        codec("Base64 encoded", Codecs.encoder(Codec.BASE64));
+    }
+    public void onBtnCodecUnBase64(ActionEvent e) {
+        codec("Base64 decoded", Codecs.decoder(Codec.BASE64));
+    }
+    public void onBtnCodecUrl(ActionEvent e) {
+        codec("URL encoded", Codecs.encoder(Codec.URL));
+    }
+    public void onBtnCodecUnUrl(ActionEvent e) {
+        codec("URL decoded", Codecs.decoder(Codec.URL));
+    }
+    public void onBtnCodecHex(ActionEvent e) {
+        codec("Hex encoded", Codecs.encoder(Codec.HEX));
+    }
+    public void onBtnCodecUnHex(ActionEvent e) {
+        codec("Hex decoded", Codecs.decoder(Codec.HEX));
+    }
+    public void onBtnCodecHtml(ActionEvent e) {
+        codec("HTML escaped", Codecs.encoder(Codec.HTML));
+    }
+    public void onBtnCodecUnHtml(ActionEvent e) {
+        codec("HTML unescaped", Codecs.decoder(Codec.HTML));
+    }
+    public void onBtnCodecMd5(ActionEvent e) {
+        codec("Took the MD5 of", Codecs.digest(Digest.MD5));
+    }
+    public void onBtnCodecSha256(ActionEvent e) {
+        codec("Took the SHA-256 of", Codecs.digest(Digest.SHA256));
+    }
+    public void onBtnCodecCrc32(ActionEvent e) {
+        codec("Took the CRC32 of", Codecs.digest(Digest.CRC32));
+    }
+
+    /** Run a codec over the clipboard, or over each line of it if "each line" is checked */
+    private void codec(String what, LineRangeTransformer transformer) {
+        try {
+            if (chkCodecEachLine.isSelected()) {
+                int lineCount = new ClipboardAsLineRangeMutator(transformer).mutate();
+                statusBar.show(what + " each of the " + lineCount + " line(s) in current clipboard");
+            } else {
+                String clipboard = SysClipboard.read();
+                long start = OpMetrics.phaseStart();
+                String result = Codecs.apply(transformer, clipboard);
+                OpMetrics.phaseEnd(OpPhase.TRANSFORM, start);
+                SysClipboard.write(result);
+                statusBar.show(what + " the " + clipboard.length() + " char(s) in current clipboard (now " + result.length() + " chars)");
             }
-        } else {
-            statusBar.showErr("Couldn't write temp file for opening with Notepad");
+        } catch (IllegalArgumentException exc) {
+            statusBar.showErr("Problem with the clipboard contents: " + exc.getMessage());
         }
     }
+
+    public void onBtnViewAction(ActionEvent e) {
+        new ClipViewer(SysClipboard.read(), primaryStage).show();
+    }
     public void onBtnOpenUrl(ActionEvent e) {
         try {
             int count = 0;
@@ -592,7 +1042,7 @@ public class Controller implements Initializable {
     }
 
     public void onBtnStore(ActionEvent e) {
-        appendToClipBuffersAndShowStatus(SysClipboard.read());
+        storeClipboardAndShowStatus();
     }
 
     public void onBtnPrepend(ActionEvent e) {
@@ -600,7 +1050,7 @@ public class Controller implements Initializable {
         ObservableList<Integer> indices = buffers.getSelectionModel().getSelectedIndices();
         statusBar.show("Prepend " + clipboard.length() + " characters to " + indices.size() + " buffer(s)");
         for (Integer i : indices) { // Can't use for loop with function that returns a generic? http://stackoverflow.com/questions/6271960/how-to-iterate-over-a-wildcard-generic
-            clips.set(i, new ClipBuffer(clipboard + clips.get(i).clip));
+            clips.set(i, new ClipBuffer(clipboard + clips.get(i).text()));
         }
     }
 
@@ -609,7 +1059,7 @@ public class Controller implements Initializable {
         ObservableList<Integer> indices = buffers.getSelectionModel().getSelectedIndices();
         statusBar.show("Append " + clipboard.length() + " characters to " + indices.size() + " buffer(s)");
         for (Integer i : indices) {
-            clips.set(i, new ClipBuffer(clips.get(i).clip + clipboard));
+            clips.set(i, new ClipBuffer(clips.get(i).text() + clipboard));
         }
     }
 
@@ -629,46 +1079,27 @@ public class Controller implements Initializable {
     public void retrieveClip() {
         // Generic function that handles the "retrieve" action and all of its different functionality
 
-        // Cycle through selected buffers
-
-        // Give list control focus so we can see current focus, but focus makes no visual difference to items that are selected.
-        // items.requestFocus();
-        Integer focusIdx = buffers.getFocusModel().getFocusedIndex();
-        List<Integer> selIdxs = buffers.getSelectionModel().getSelectedIndices();
-        Integer lastSelIdx = selIdxs.get(selIdxs.size() - 1);
-
-        // Check for no selected items
-        if (selIdxs.size() == 0) {
+        // Cycle through selected buffers, starting from the focused one
+        if (retrieveSelectionChanged) {
+            retrieveCursor.setSelection(selectedBufferIndices());
+            retrieveSelectionChanged = false;
+        }
+        int idx = retrieveCursor.current(buffers.getFocusModel().getFocusedIndex());
+        if (idx < 0) {
             statusBar.showErr("No item selected");
             return;
         }
-
-        // Advance focus to next selected item if focused item not already selected
-        Integer ordinalOfSelected = -1; // first? second?
-        if (focusIdx > lastSelIdx) {
-            focusIdx = selIdxs.get(0);
-            buffers.getFocusModel().focus(focusIdx);
-            ordinalOfSelected = 0 + 1;
-        } else {
-            for (int i = 0; i < selIdxs.size(); ++i) {
-                if (selIdxs.get(i) >= focusIdx) {
-                    focusIdx = selIdxs.get(i);
-                    buffers.getFocusModel().focus(focusIdx);
-                    ordinalOfSelected = i + 1;
-                    break;
-                }
-            }
-        }
+        buffers.getFocusModel().focus(idx);
 
         // Set clipboard
         try {
             String clip = chkVariableSubstitution.isSelected() ? retrieveVarSubstitutedClipFromBuffer() : retrieveClipFromBuffer();
-            if (selIdxs.size() > 1) {
+            if (retrieveCursor.count() > 1) {
                 String msg = String.format("Retrieving %d line(s) and %d chars from buffer (#%d of %d) and storing to the clipboard",
                         StringUtils.countMatches(clip, "\n") + 1,
                         clip.length(),
-                        ordinalOfSelected,
-                        selIdxs.size()
+                        retrieveCursor.ordinal(),
+                        retrieveCursor.count()
                 );
                 statusBar.show(msg);
             } else {
@@ -679,20 +1110,56 @@ public class Controller implements Initializable {
             statusBar.showErr("Problem substituting variables in buffer: " + exc.toString());
         }
 
-        // Advance focus to next selected item
-        if (focusIdx >= lastSelIdx) {
-            focusIdx = selIdxs.get(0);
-            buffers.getFocusModel().focus(focusIdx);
-        } else {
-            for (Integer selIdx : selIdxs) {
-                if (selIdx > focusIdx) {
-                    focusIdx = selIdx;
-                    buffers.getFocusModel().focus(focusIdx);
-                    System.out.println(" new focus" + focusIdx);
-                    break;
-                }
-            }
+        // Advance focus to the selected item that will be retrieved next
+        buffers.getFocusModel().focus(retrieveCursor.advance(retrieveMode()));
+    }
+
+    private RetrieveMode retrieveMode() {
+        if (radRetrieveForward.isSelected()) {
+            return RetrieveMode.FORWARD;
+        } else if (radRetrieveBackward.isSelected()) {
+            return RetrieveMode.BACKWARD;
+        } else if (radRetrieveRandom.isSelected()) {
+            return RetrieveMode.RANDOM;
         }
+        return RetrieveMode.ROUND_ROBIN;
+    }
+
+    public void onMenuRetrieve(ActionEvent e) {
+        retrieveClip();
+    }
+
+    public void onMenuLocalServer(ActionEvent e) {
+        if (!chkLocalServer.isSelected()) {
+            clipServer.stop();
+            statusBar.show("Stopped the local server");
+            return;
+        }
+        try {
+            int port = clipServer.start(Config.SERVER_PORT);
+            statusBar.show("Scripts can store and retrieve buffers through port " + port + " on localhost, using the token in " + clipServer.tokenFile());
+        } catch (IOException exc) {
+            chkLocalServer.setSelected(false);
+            statusBar.showErr("Problem starting the local server on port " + Config.SERVER_PORT + ": " + exc.getMessage());
+        }
+    }
+
+    public void onMenuPasteQueue(ActionEvent e) {
+        int[] selected = selectedBufferIndices();
+        if (selected.length == 0) {
+            statusBar.showErr("Select the buffers to paste first");
+            return;
+        }
+        List<String> items = new ArrayList<>(selected.length);
+        for (int i : selected) {
+            items.add(clips.get(i).text());
+        }
+        UnaryOperator<String> render = null;
+        if (chkVariableSubstitution.isSelected()) {
+            StrLookup<String> vars = bufferVariables(); // as they are now, rendering happens in the background
+            render = clip -> new StrSubstitutor(vars).replace(clip);
+        }
+        new PasteQueueWindow(new PasteQueue(items, render), statusBar, primaryStage).start();
     }
 
     public void onBtnRetrieveDragOver(DragEvent e) {
@@ -753,7 +1220,7 @@ public class Controller implements Initializable {
         ObservableList<ClipBuffer> selectedBuffers = buffers.getSelectionModel().getSelectedItems();
         ArrayList<String> clips = new ArrayList<String>();
         for (ClipBuffer buf : selectedBuffers) {
-            clips.add(buf.clip);
+            clips.add(buf.text());
         }
         String clip = String.join(System.lineSeparator(), clips);
         String msg = String.format("Joining the %d selected buffers and storing %d chars to the clipboard",
@@ -771,8 +1238,8 @@ public class Controller implements Initializable {
             statusBar.showErr("Need two buffers selected to do a diff");
         } else {
             try {
-                Path fileA = Functions.writeToTempFile(Config.DIFF_TEMP_FILE_A, Config.TEMP_FILE_EXT, selectedBuffers.get(0).clip.getBytes());
-                Path fileB = Functions.writeToTempFile(Config.DIFF_TEMP_FILE_B, Config.TEMP_FILE_EXT, selectedBuffers.get(1).clip.getBytes());
+                Path fileA = Functions.writeToTempFile(Config.DIFF_TEMP_FILE_A, Config.TEMP_FILE_EXT, selectedBuffers.get(0).text().getBytes());
+                Path fileB = Functions.writeToTempFile(Config.DIFF_TEMP_FILE_B, Config.TEMP_FILE_EXT, selectedBuffers.get(1).text().getBytes());
                 new ProcessBuilder(Config.DIFF_APP, fileA.toString(), fileB.toString()).start();
                 statusBar.show("Diffing the two selected buffers with " + Config.DIFF_APP);
             } catch(Exception exc) {
@@ -781,52 +1248,98 @@ public class Controller implements Initializable {
         }
     }
 
-    public void onBtnUp(ActionEvent e) {
-        ObservableList<Integer> selectedIdxs = buffers.getSelectionModel().getSelectedIndices();
-        ArrayList<Integer> selIdxs = new ArrayList(selectedIdxs); // create copy
-        Integer topBoundIdx = 0;
-        for (int i : selIdxs) {
-            // Don't swap past top of list
-            if (i <= topBoundIdx) {
-                continue;
-            }
-            // Don't swap if item above you is selected (for when selected items bunch at the top of the list)
-            Integer prevIdx = i - 1;
-            if (prevIdx >= topBoundIdx && buffers.getSelectionModel().isSelected(prevIdx)) {
-                continue;
-            }
-            swapBuffers(i, prevIdx);
+    public void onBtnHashJoin(ActionEvent e) {
+        joinBuffers(JoinType.INNER, "Joined");
+    }
+
+    public void onBtnLeftJoin(ActionEvent e) {
+        joinBuffers(JoinType.LEFT, "Left joined");
+    }
+
+    public void onBtnAntiJoin(ActionEvent e) {
+        joinBuffers(JoinType.ANTI, "Anti joined");
+    }
+
+    /** Join the two selected buffers (the top one is the left side) on key columns, and store the result as a new buffer */
+    private void joinBuffers(JoinType type, String name) {
+        int[] selected = selectedBufferIndices();
+        if (selected.length != 2) {
+            statusBar.showErr("Need two buffers selected to join (the top one is the left side)");
+            return;
+        }
+        try {
+            String[] delims = Functions.parseDelimiters(txtArg1.getText());
+            int[] keys = Functions.parseKeyColumns(txtArg2.getText());
+            long start = OpMetrics.phaseStart();
+            BufferJoin join = new BufferJoin(clips.get(selected[0]).text(), delims[0], keys[0], clips.get(selected[1]).text(), delims[1], keys[1]);
+            String result = join.join(type);
+            OpMetrics.phaseEnd(OpPhase.TRANSFORM, start);
+            appendToClipBuffers(result);
+            statusBar.show(String.format("%s the two selected buffers on columns %d and %d into a new buffer with %d line(s)%s",
+                    name, keys[0], keys[1], result.isEmpty() ? 0 : new ClipSnapshot(result).lineCount(),
+                    join.passes() > 1 ? " (in " + join.passes() + " passes to keep the hash table in its memory budget)" : ""));
+        } catch (ArgParseError exc) {
+            statusBar.showErr(exc.getMessage());
         }
     }
 
-    public void onBtnDown(ActionEvent e) {
-        ObservableList<Integer> selectedIdxs = buffers.getSelectionModel().getSelectedIndices();
-        List<Integer> selIdxs = new ArrayList(selectedIdxs);
-        Collections.reverse(selIdxs);  // reverse is not supported by ObservableList
-        Integer bottomBoundIdx = clips.size() - 1;
-        for (int i : selIdxs) {
-            // Don't swap past bottom of list
-            if (i >= bottomBoundIdx) {
-                continue;
-            }
-            // Don't swap if item below you is selected (for when selected items bunch at the bottom of the list)
-            Integer nextIdx = i + 1;
-            if (nextIdx <= bottomBoundIdx && buffers.getSelectionModel().isSelected(nextIdx)) {
-                continue;
-            }
-            swapBuffers(i, nextIdx);
+    public void onBtnSetUnion(ActionEvent e) {
+        setOperation(SetOp.UNION, "union");
+    }
+
+    public void onBtnSetIntersect(ActionEvent e) {
+        setOperation(SetOp.INTERSECTION, "intersection");
+    }
+
+    public void onBtnSetMinus(ActionEvent e) {
+        setOperation(SetOp.DIFFERENCE, "difference (top selected buffer minus the rest)");
+    }
+
+    public void onBtnSetXor(ActionEvent e) {
+        setOperation(SetOp.SYMMETRIC, "symmetric difference");
+    }
+
+    /** Store the lines that op picks out of the selected buffers (top one first) as a new buffer */
+    private void setOperation(SetOp op, String name) {
+        int[] selected = selectedBufferIndices();
+        if (selected.length < 2) {
+            statusBar.showErr("Need two or more buffers selected for a set operation");
+            return;
         }
+        long start = OpMetrics.phaseStart();
+        LineSets sets = new LineSets(chkSetIgnoreCase.isSelected(), chkSetIgnoreWhitespace.isSelected());
+        long lineCount = 0;
+        for (int i : selected) {
+            ClipSnapshot lines = new ClipSnapshot(clips.get(i).text());
+            sets.add(lines);
+            lineCount += lines.lineCount();
+        }
+        Pair<String, Integer> result = sets.result(op, !chkSetSorted.isSelected());
+        OpMetrics.phaseEnd(OpPhase.TRANSFORM, start);
+        appendToClipBuffers(result.getLeft());
+        statusBar.show(String.format("Stored the %s of %d buffers (%d lines) as a new buffer with %d line(s)", name, selected.length, lineCount, result.getRight()));
+    }
+
+    public void onBtnUp(ActionEvent e) {
+        moveSelectedBuffers(true);
+    }
+
+    public void onBtnDown(ActionEvent e) {
+        moveSelectedBuffers(false);
     }
 
-    /** Reads contents of file and stores in clipboard buffer */
-    // BUG: Nearly silently fails when can't read contents of a file (usually when reading a binary file)
+    /**
+     * Read a file into a new buffer. Runs in the background: the buffer goes through the store.
+     * BUG: Nearly silently fails when can't read contents of a file (usually when reading a binary file). It only
+     * shows up as a lower file count in the status bar.
+     */
     private boolean readFileAndStoreInBuffer(File file) {
         if (file.isFile()) {
             Path f = Paths.get(file.getAbsolutePath());
             try {
                 List<String> lines = Files.readAllLines(f);
                 String txt = String.join("\n", lines);
-                appendToClipBuffers(txt);
+                ClipOps.store().add(new ClipBuffer(txt));
                 return true;
             } catch (Exception exc) {
                 System.out.println("Problem reading '" + f.toString() + "'. Exception: " + exc);
@@ -849,6 +1362,29 @@ public class Controller implements Initializable {
         }
         return null;
     }
+    public void onMenuUndo(ActionEvent e) {
+        SysClipboard.invalidate();
+        String name = History.undo(SysClipboard.read());
+        if (name == null) {
+            statusBar.showErr("Nothing to undo");
+        } else {
+            statusBar.show("Undid '" + name + "' (" + History.undoCount() + " more step(s) to undo, history is using " + OpMetrics.formatBytes(History.sizeInBytes()) + ")");
+        }
+    }
+    public void onMenuRedo(ActionEvent e) {
+        SysClipboard.invalidate();
+        String name = History.redo(SysClipboard.read());
+        if (name == null) {
+            statusBar.showErr("Nothing to redo");
+        } else {
+            statusBar.show("Redid '" + name + "' (" + History.redoCount() + " more step(s) to redo)");
+        }
+    }
+    public void onMenuInvertSelection(ActionEvent e) {
+        int[] inverted = ListBlocks.invert(selectedBufferIndices(), clips.size());
+        selectBuffers(inverted);
+        statusBar.show("Selected " + inverted.length + " buffer(s)");
+    }
     public void onMenuExitItem(ActionEvent e) {
         Platform.exit();
     }
@@ -860,61 +1396,104 @@ public class Controller implements Initializable {
     }
     private String retrieveClipFromBuffer() {
         ClipBuffer buffer = buffers.getFocusModel().getFocusedItem();
-        SysClipboard.write(buffer.clip);
-        return buffer.clip;
+        String clip = buffer.text();
+        SysClipboard.write(clip, buffer.flavors);
+        return clip;
     }
 
     private String retrieveVarSubstitutedClipFromBuffer() {
         ClipBuffer buffer = buffers.getFocusModel().getFocusedItem();
-        HashMap<String, String> dat = new HashMap<>();
-        for (int i = 0; i < clips.size(); ++i) {
-            dat.put(Integer.toString(i), clips.get(i).clip);
-        }
-        dat.put("clip", SysClipboard.read());
-        StrSubstitutor sub = new StrSubstitutor(dat);
-        String txt = sub.replace(buffer.clip);
+        StrSubstitutor sub = new StrSubstitutor(bufferVariables());
+        String txt = sub.replace(buffer.text());
         SysClipboard.write(txt);
         return txt;
     }
 
+    /**
+     * Values for the variables that can be used in buffers: ${0}, ${1}... for the buffers and ${clip} for the
+     * clipboard. Buffers are looked up when referred to, so the others stay packed if they are cold.
+     */
+    private StrLookup<String> bufferVariables() {
+        List<ClipBuffer> snapshot = ClipOps.buffers();
+        String clipboard = SysClipboard.read();
+        return new StrLookup<String>() {
+            @Override
+            public String lookup(String key) {
+                if (key.equals("clip")) {
+                    return clipboard;
+                }
+                if (!StringUtils.isNumeric(key) || key.length() > 9 || Integer.parseInt(key) >= snapshot.size()) {
+                    return null;
+                }
+                return snapshot.get(Integer.parseInt(key)).text();
+            }
+        };
+    }
+
     private void appendToClipBuffers(String clip) {
         ClipBuffer buffer = new ClipBuffer(clip);
         clips.add(0, buffer);
         buffers.scrollTo(buffer);
     }
 
-    private void appendToClipBuffersAndShowStatus(String clip) {
-        appendToClipBuffers(clip);
-        statusBar.show(String.format("Storing %d line(s) and %d chars from the clipboard to a buffer\n",
+    /** Store the clipboard (text and any other formats in it) to a new buffer */
+    private void storeClipboardAndShowStatus() {
+        String clip = SysClipboard.read();
+        ClipFlavors flavors = SysClipboard.readFlavors();
+        ClipBuffer buffer = new ClipBuffer(clip, flavors);
+        clips.add(0, buffer);
+        buffers.scrollTo(buffer);
+        if (flavors != null) {
+            flavors.whenThumbnailReady(() -> Platform.runLater(buffers::refresh));
+        }
+        statusBar.show(String.format("Storing %d line(s) and %d chars%s from the clipboard to a buffer\n",
                 StringUtils.countMatches(clip, "\n") + 1,
-                clip.length()));
-    }
-
-    private void swapBuffers(int idx1, int idx2) {
-        // NOTE: this function does not attempt to do anything sane with focus. It seems that focus can cause issues
-        // with extra rows getting selected as I move them around. I think this may have something to do with the focus?
-        // I'm just guessing.
-        ClipBuffer tmpBuff1 = clips.get(idx1);
-        boolean tmpSelectState1 = buffers.getSelectionModel().isSelected(idx1);
-        ClipBuffer tmpBuff2 = clips.get(idx2);
-        boolean tmpSelectState2 = buffers.getSelectionModel().isSelected(idx2);
-
-        // NOTE: if you change the code below to set idx1 value and then change its selection, then do the same for idx2,
-        // moving with multiple items selected will often cause additional rows to get selected as you move. The order
-        // of the code below seems to avoid this problem for some reason.
-        clips.set(idx1, tmpBuff2);
-        clips.set(idx2, tmpBuff1);
-
-        if (tmpSelectState2) {
-            buffers.getSelectionModel().select(idx1);
-        } else {
-            buffers.getSelectionModel().clearSelection(idx1);
+                clip.length(),
+                flavors != null ? " (plus " + flavors.describe() + ")" : ""));
+    }
+
+    /** Keep some of the clipboard's lines, picked by keep using the count in arg1. Doesn't count the lines, so huge clipboards aren't indexed. */
+    private void keepLines(String status, BiFunction<ClipSnapshot, Integer, String> keep) {
+        int n;
+        try {
+            n = Functions.parseLineCount(txtArg1.getText());
+        } catch(ArgParseError exc) {
+            statusBar.showErr(exc.getMessage());
+            return;
         }
+        ClipSnapshot snapshot = SysClipboard.snapshot();
+        long start = OpMetrics.phaseStart();
+        String result = keep.apply(snapshot, n);
+        OpMetrics.phaseEnd(OpPhase.TRANSFORM, start);
+        SysClipboard.write(result);
+        statusBar.show(String.format(status, n) + " in current clipboard");
+    }
 
-        if (tmpSelectState1) {
-            buffers.getSelectionModel().select(idx2);
-        } else {
-            buffers.getSelectionModel().clearSelection(idx2);
+    /** Move each block of selected buffers one place up or down, as one change to the list */
+    private void moveSelectedBuffers(boolean up) {
+        int[] selected = selectedBufferIndices();
+        List<ClipBuffer> moved = new ArrayList<>(clips.size());
+        int[] newSelection = ListBlocks.move(clips, selected, up, moved);
+        if (Arrays.equals(selected, newSelection)) {
+            return; // nothing could move
+        }
+        clips.setAll(moved);
+        selectBuffers(newSelection);
+    }
+
+    /** Indexes of the selected buffers, in order */
+    private int[] selectedBufferIndices() {
+        int[] idxs = buffers.getSelectionModel().getSelectedIndices().stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(idxs);
+        return idxs;
+    }
+
+    /** Replace the selection with the given (sorted) buffer indexes */
+    private void selectBuffers(int[] idxs) {
+        buffers.getSelectionModel().clearSelection();
+        if (idxs.length > 0) {
+            buffers.getSelectionModel().selectIndices(idxs[0], Arrays.copyOfRange(idxs, 1, idxs.length));
+            buffers.getFocusModel().focus(idxs[0]);
         }
     }
 
@@ -929,7 +1508,8 @@ public class Controller implements Initializable {
         boolean failed = false;
         for (ClipBuffer buff : buffers) {
             String fileName = String.format("buffer_%03d", idx);
-            String desc = StringUtil.extractInitialWords(buff.clip, Config.WORDS_FOR_FILE_NAMING);
+            String clip = buff.text();
+            String desc = StringUtil.extractInitialWords(clip, Config.WORDS_FOR_FILE_NAMING);
             if (desc.length() > 0) {
                 fileName += "_" + desc;
             }
@@ -938,7 +1518,7 @@ public class Controller implements Initializable {
             File file = new File(dir, fileName);
             Path p = Paths.get(file.getAbsolutePath());
             try {
-                Files.write(p, buff.clip.getBytes());
+                Files.write(p, clip.getBytes());
             } catch (Exception exc) {
                 statusBar.showErr("Problem writing file: " + p);
                 failed = true;
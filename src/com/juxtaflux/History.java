@@ -0,0 +1,345 @@
+package com.juxtaflux;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replaces the text at [offset, offset + replacedLength) of the current text with a stored text. Only one side of a
+ * change is kept: the part between the common prefix and suffix of the two texts, on the side the delta goes back to.
+ * Big texts are compressed right away, so the history's memory budget counts what is really kept.
+ */
+class TextDelta {
+    final int offset;
+    private final Object text; // String, or byte[] when packed
+    private final int textLength;
+    private final int replacedLength;
+    private final long size;
+
+    private TextDelta(int offset, String text, int replacedLength) {
+        this.offset = offset;
+        this.textLength = text.length();
+        this.replacedLength = replacedLength;
+        if (textLength >= Config.HISTORY_PACK_THRESHOLD) {
+            byte[] packed = PackedText.pack(text);
+            this.text = packed;
+            size = 64 + packed.length;
+        } else {
+            this.text = text;
+            size = 64 + 2L * textLength;
+        }
+    }
+
+    /** Delta that turns the after text back into the before text */
+    static TextDelta between(String before, String after) {
+        int max = Math.min(before.length(), after.length());
+        int prefix = 0;
+        while (prefix < max && before.charAt(prefix) == after.charAt(prefix)) {
+            ++prefix;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix && before.charAt(before.length() - 1 - suffix) == after.charAt(after.length() - 1 - suffix)) {
+            ++suffix;
+        }
+        return new TextDelta(prefix, before.substring(prefix, before.length() - suffix), after.length() - suffix - prefix);
+    }
+
+    String apply(String current) {
+        return current.substring(0, offset) + text() + current.substring(offset + replacedLength);
+    }
+
+    /** Delta that takes the result of apply(current) back to current */
+    TextDelta reverse(String current) {
+        return new TextDelta(offset, current.substring(offset, offset + replacedLength), textLength);
+    }
+
+    long size() {
+        return size;
+    }
+
+    boolean isPacked() {
+        return text instanceof byte[];
+    }
+
+    private String text() {
+        return text instanceof String ? (String) text : PackedText.unpack((byte[]) text);
+    }
+}
+
+/** One reversible change */
+interface HistoryChange {
+    void undo();
+    void redo();
+    long size();
+    /** Called when the change is dropped from the history. Returns the size to stop counting. */
+    long evict();
+}
+
+/**
+ * A change to the system clipboard. Only the delta for the next replay is kept: back to the text before while the
+ * change can be undone, and forward to the text after (rebuilt from the clipboard on undo) while it can be redone.
+ */
+class ClipboardChange implements HistoryChange {
+    private TextDelta delta;
+    ClipboardChange(TextDelta delta) {
+        this.delta = delta;
+    }
+    public void undo() {
+        flip();
+    }
+    public void redo() {
+        flip();
+    }
+    private void flip() {
+        String current = History.clipboardText();
+        TextDelta back = delta.reverse(current);
+        History.replayClipboard(delta.apply(current));
+        delta = back;
+    }
+    public long size() {
+        return delta.size();
+    }
+    public long evict() {
+        return delta.size();
+    }
+}
+
+/** A range of buffers was replaced. Buffers are immutable, so the buffer objects themselves are shared, not copied. */
+class BufferListChange implements HistoryChange {
+    private final ObservableList<ClipBuffer> list;
+    private final int from;
+    private final List<ClipBuffer> removed;
+    private final List<ClipBuffer> added;
+    private final long size;
+
+    BufferListChange(ObservableList<ClipBuffer> list, int from, List<? extends ClipBuffer> removed, List<? extends ClipBuffer> added) {
+        this.list = list;
+        this.from = from;
+        this.removed = new ArrayList<>(removed);
+        this.added = new ArrayList<>(added);
+        long bytes = 64 + 8L * (removed.size() + added.size());
+        Set<ClipBuffer> stillInList = Collections.newSetFromMap(new IdentityHashMap<>());
+        stillInList.addAll(added);
+        for (ClipBuffer b : this.removed) {
+            if (!stillInList.contains(b)) {
+                bytes += 2L * b.length(); // removed buffers are only kept alive by the history (moved ones are still in the list)
+            }
+        }
+        size = bytes;
+    }
+    public void undo() {
+        list.remove(from, from + added.size());
+        list.addAll(from, removed);
+    }
+    public void redo() {
+        list.remove(from, from + removed.size());
+        list.addAll(from, added);
+    }
+    public long size() {
+        return size;
+    }
+    public long evict() {
+        return size;
+    }
+}
+
+/** Everything that changed during one user action */
+class HistoryStep {
+    final String name;
+    final List<HistoryChange> changes = new ArrayList<>();
+    HistoryStep(String name) {
+        this.name = name;
+    }
+}
+
+/**
+ * Undo/redo journal of the clipboard and the buffer list.
+ *
+ * Changes made during one action (button click) are grouped into a step. Clipboard changes are stored as deltas that
+ * chain backwards from the current clipboard text, so only the part of the text that changed is kept. Once the
+ * journal goes over its memory budget (or step limit), the oldest steps are dropped.
+ */
+class History {
+    private static final ArrayDeque<HistoryStep> undoSteps = new ArrayDeque<>(); // oldest first
+    private static final ArrayDeque<HistoryStep> redoSteps = new ArrayDeque<>();
+    private static final AtomicLong totalBytes = new AtomicLong();
+    private static String stepName;
+    private static HistoryStep openStep;
+    private static String clipboardText; // last known contents of the clipboard
+    private static boolean replaying = false;
+
+    /** Start grouping changes under the given action name */
+    static void beginStep(String name) {
+        stepName = name;
+        openStep = null;
+    }
+
+    static void endStep() {
+        stepName = null;
+        openStep = null;
+    }
+
+    /** Should changes be journaled right now? (Not while an undo/redo is being replayed.) */
+    static boolean isRecording() {
+        return !replaying;
+    }
+
+    static String clipboardText() {
+        return clipboardText;
+    }
+
+    static void clipboardChanged(String before, String after) {
+        if (replaying) {
+            return;
+        }
+        if (clipboardText != null && !clipboardText.equals(before)) {
+            // another app changed the clipboard since we last saw it. Journal that too, so the chain of deltas back
+            // from the current text stays unbroken.
+            add(new ClipboardChange(TextDelta.between(clipboardText, before)), "external clipboard change");
+        }
+        add(new ClipboardChange(TextDelta.between(before, after)), "clipboard");
+        clipboardText = after;
+    }
+
+    static void buffersChanged(ListChangeListener.Change<? extends ClipBuffer> c, ObservableList<ClipBuffer> list) {
+        if (replaying) {
+            return;
+        }
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                continue; // nothing in the app permutes the list in place
+            }
+            add(new BufferListChange(list, c.getFrom(), c.getRemoved(), c.getAddedSubList()), "buffers");
+        }
+    }
+
+    /** Undo the latest step. currentClipboard is what is in the clipboard now. Returns the step's name, or null if there is nothing to undo. */
+    static String undo(String currentClipboard) {
+        catchUpWithClipboard(currentClipboard);
+        HistoryStep step = undoSteps.pollLast();
+        if (step == null) {
+            return null;
+        }
+        replay(step, true);
+        redoSteps.addLast(step);
+        return step.name;
+    }
+
+    /** Redo the latest undone step. Returns the step's name, or null if there is nothing to redo. */
+    static String redo(String currentClipboard) {
+        if (clipboardText != null && !clipboardText.equals(currentClipboard)) {
+            // clipboard changed since the undo, so the redo deltas no longer line up with it
+            clearRedo();
+            return null;
+        }
+        HistoryStep step = redoSteps.pollLast();
+        if (step == null) {
+            return null;
+        }
+        replay(step, false);
+        undoSteps.addLast(step);
+        return step.name;
+    }
+
+    static int undoCount() {
+        return undoSteps.size();
+    }
+
+    static int redoCount() {
+        return redoSteps.size();
+    }
+
+    static long sizeInBytes() {
+        return totalBytes.get();
+    }
+
+    static void clear() {
+        for (HistoryStep step : undoSteps) {
+            evict(step);
+        }
+        undoSteps.clear();
+        clearRedo();
+        openStep = null;
+        clipboardText = null;
+    }
+
+    static void replayClipboard(String text) {
+        clipboardText = text;
+        SysClipboard.write(text);
+    }
+
+    private static void catchUpWithClipboard(String currentClipboard) {
+        if (clipboardText != null && currentClipboard != null && !clipboardText.equals(currentClipboard)) {
+            String savedName = stepName;
+            HistoryStep savedStep = openStep;
+            beginStep("external clipboard change");
+            clipboardChanged(clipboardText, currentClipboard);
+            stepName = savedName;
+            openStep = savedStep;
+        }
+    }
+
+    private static void replay(HistoryStep step, boolean undo) {
+        replaying = true;
+        long oldSize = size(step);
+        try {
+            if (undo) {
+                for (int i = step.changes.size() - 1; i >= 0; --i) {
+                    step.changes.get(i).undo();
+                }
+            } else {
+                for (HistoryChange c : step.changes) {
+                    c.redo();
+                }
+            }
+        } finally {
+            replaying = false;
+            totalBytes.addAndGet(size(step) - oldSize); // clipboard changes now hold the other side of their delta
+        }
+    }
+
+    private static long size(HistoryStep step) {
+        long bytes = 0;
+        for (HistoryChange c : step.changes) {
+            bytes += c.size();
+        }
+        return bytes;
+    }
+
+    private static void add(HistoryChange change, String defaultName) {
+        if (openStep == null) {
+            openStep = new HistoryStep(stepName != null ? stepName : defaultName);
+            undoSteps.addLast(openStep);
+            clearRedo();
+        }
+        openStep.changes.add(change);
+        totalBytes.addAndGet(change.size());
+        if (stepName == null) {
+            openStep = null; // changes made outside of an action each get their own step
+        }
+        // drop oldest steps, but never the one in progress
+        while (undoSteps.size() > 1 && (undoSteps.size() > Config.HISTORY_MAX_STEPS || totalBytes.get() > Config.HISTORY_MAX_BYTES)) {
+            evict(undoSteps.pollFirst());
+        }
+    }
+
+    private static void clearRedo() {
+        for (HistoryStep step : redoSteps) {
+            evict(step);
+        }
+        redoSteps.clear();
+    }
+
+    private static void evict(HistoryStep step) {
+        for (HistoryChange c : step.changes) {
+            totalBytes.addAndGet(-c.evict());
+        }
+    }
+}
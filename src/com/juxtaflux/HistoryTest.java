@@ -0,0 +1,139 @@
+package com.juxtaflux;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class HistoryTest {
+    private ObservableList<ClipBuffer> clips;
+    private InMemoryClipboardSource clipboard;
+
+    @Before
+    public void setUp() throws Exception {
+        History.clear();
+        clipboard = new InMemoryClipboardSource();
+        SysClipboard.setSource(clipboard);
+        clips = FXCollections.observableArrayList();
+        clips.addListener((ListChangeListener<ClipBuffer>) c -> History.buffersChanged(c, clips));
+    }
+
+    private void action(String name, Runnable r) {
+        SysClipboard.invalidate();
+        History.beginStep(name);
+        r.run();
+        History.endStep();
+    }
+
+    private String bufferText() {
+        return clips.stream().map(ClipBuffer::text).collect(Collectors.joining(","));
+    }
+
+    @Test
+    public void textDelta() throws Exception {
+        TextDelta d = TextDelta.between("hello big world", "hello small world");
+        assertEquals(6, d.offset);
+        assertEquals("hello big world", d.apply("hello small world"));
+        assertEquals("hello small world", d.reverse("hello small world").apply("hello big world"));
+
+        TextDelta same = TextDelta.between("aaa", "aaaa");
+        assertEquals("aaa", same.apply("aaaa"));
+        assertEquals("aaaa", same.reverse("aaaa").apply("aaa"));
+
+        String big = repeat("big ", Config.HISTORY_PACK_THRESHOLD);
+        TextDelta packed = TextDelta.between(big, "small");
+        assertTrue(packed.isPacked());
+        assertTrue(packed.size() < big.length());
+        assertEquals(big, packed.apply("small"));
+    }
+
+    @Test
+    public void undoRedoClipboard() throws Exception {
+        action("start", () -> SysClipboard.write("one"));
+        action("upper", () -> SysClipboard.write(SysClipboard.read().toUpperCase()));
+        action("append", () -> SysClipboard.write(SysClipboard.read() + "!"));
+
+        assertEquals("append", History.undo(SysClipboard.read()));
+        assertEquals("ONE", SysClipboard.read());
+        assertEquals("upper", History.undo(SysClipboard.read()));
+        assertEquals("one", SysClipboard.read());
+        assertEquals("upper", History.redo(SysClipboard.read()));
+        assertEquals("ONE", SysClipboard.read());
+    }
+
+    @Test
+    public void externalClipboardChangeIsItsOwnStep() throws Exception {
+        action("start", () -> SysClipboard.write("one"));
+        clipboard.write("two"); // another app changes the clipboard
+        SysClipboard.invalidate();
+
+        assertEquals("external clipboard change", History.undo(SysClipboard.read()));
+        assertEquals("one", SysClipboard.read());
+    }
+
+    @Test
+    public void undoRedoBuffers() throws Exception {
+        action("store", () -> clips.add(0, new ClipBuffer("a")));
+        action("store", () -> clips.add(0, new ClipBuffer("b")));
+        action("replace", () -> {
+            clips.set(0, new ClipBuffer("c"));
+            clips.set(1, new ClipBuffer("d"));
+        });
+        assertEquals("c,d", bufferText());
+
+        assertEquals("replace", History.undo(SysClipboard.read()));
+        assertEquals("b,a", bufferText());
+        assertEquals("store", History.undo(SysClipboard.read()));
+        assertEquals("a", bufferText());
+        History.redo(SysClipboard.read());
+        History.redo(SysClipboard.read());
+        assertEquals("c,d", bufferText());
+        assertNull(History.redo(SysClipboard.read()));
+    }
+
+    @Test
+    public void oldestStepsAreDropped() throws Exception {
+        for (int i = 0; i < Config.HISTORY_MAX_STEPS + 10; ++i) {
+            final int n = i;
+            action("step" + i, () -> SysClipboard.write("text " + n));
+        }
+        assertEquals(Config.HISTORY_MAX_STEPS, History.undoCount());
+    }
+
+    @Test
+    public void undoManyWholeTextTransformsOfBigClipboard() throws Exception {
+        // 4MB per side, so keeping both sides of every step unpacked would blow the budget long before 100 steps
+        String original = repeat("line of clipboard text\n", 2 * 1024 * 1024 / 23);
+        clipboard.write(original);
+        for (int i = 0; i < Config.HISTORY_MAX_STEPS; ++i) {
+            final boolean upper = i % 2 == 0;
+            action("case" + i, () -> {
+                String text = SysClipboard.read();
+                SysClipboard.write(upper ? text.toUpperCase() : text.toLowerCase());
+            });
+        }
+        assertEquals(Config.HISTORY_MAX_STEPS, History.undoCount());
+        assertTrue(History.sizeInBytes() < Config.HISTORY_MAX_BYTES);
+
+        for (int i = Config.HISTORY_MAX_STEPS - 1; i >= 0; --i) {
+            assertEquals("case" + i, History.undo(SysClipboard.read()));
+        }
+        assertEquals(original, SysClipboard.read());
+        assertEquals(0, History.undoCount());
+        assertEquals("case0", History.redo(SysClipboard.read()));
+        assertEquals(original.toUpperCase(), SysClipboard.read());
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder(s.length() * count);
+        for (int i = 0; i < count; ++i) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
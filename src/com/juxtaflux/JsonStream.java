@@ -0,0 +1,431 @@
+package com.juxtaflux;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** What JsonReader.next() found */
+enum JsonToken {
+    BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, TRUE, FALSE, NULL, END
+}
+
+/**
+ * Pull parser for JSON text: next() returns one token at a time and checks the grammar as it goes, keeping only a
+ * stack of what each open object or array expects next. Tokens aren't copied out of the text: start() and end() are
+ * their offsets (strings with their quotes and escapes), and stringValue() unescapes one when it's needed.
+ */
+class JsonReader {
+    // what the innermost open container (or the document) expects next
+    private static final byte EMPTY_DOCUMENT = 0;
+    private static final byte NONEMPTY_DOCUMENT = 1;
+    private static final byte EMPTY_ARRAY = 2;
+    private static final byte NONEMPTY_ARRAY = 3;
+    private static final byte EMPTY_OBJECT = 4;
+    private static final byte DANGLING_NAME = 5; // a name, waiting for ':' and the value
+    private static final byte NONEMPTY_OBJECT = 6;
+
+    private final String text;
+    private int pos = 0;
+    private byte[] stack = new byte[32];
+    private int depth = 1; // stack[0] is the document
+    private int start;
+    private int end;
+
+    JsonReader(String text) {
+        this.text = text;
+        stack[0] = EMPTY_DOCUMENT;
+        if (text.startsWith("\uFEFF")) {
+            pos = 1;
+        }
+    }
+
+    /** Offset of the current token in the text */
+    int start() {
+        return start;
+    }
+
+    /** Offset just after the current token */
+    int end() {
+        return end;
+    }
+
+    /** Number of objects and arrays open around the current token (after it, for BEGIN_ and END_ tokens) */
+    int depth() {
+        return depth - 1;
+    }
+
+    JsonToken next() {
+        byte state = stack[depth - 1];
+        int c;
+        switch (state) {
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                c = nextNonBlank();
+                if (c < 0) {
+                    throw error("There's no JSON value");
+                }
+                return value(c);
+            case NONEMPTY_DOCUMENT:
+                c = nextNonBlank();
+                if (c >= 0) {
+                    throw error("Unexpected text after the end of the JSON value");
+                }
+                start = end = text.length();
+                return JsonToken.END;
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                c = nextNonBlank();
+                if (c == ']') {
+                    return close(JsonToken.END_ARRAY);
+                }
+                return value(c);
+            case NONEMPTY_ARRAY:
+                c = nextNonBlank();
+                if (c == ']') {
+                    return close(JsonToken.END_ARRAY);
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or ']'");
+                }
+                return value(nextNonBlank());
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonBlank();
+                if (c == '}') {
+                    return close(JsonToken.END_OBJECT);
+                }
+                if (state == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw error("Expected ',' or '}'");
+                    }
+                    c = nextNonBlank();
+                }
+                if (c != '"') {
+                    throw error("Expected a member name in double quotes");
+                }
+                stack[depth - 1] = DANGLING_NAME;
+                string();
+                return JsonToken.NAME;
+            case DANGLING_NAME:
+                if (nextNonBlank() != ':') {
+                    throw error("Expected ':' after the member name");
+                }
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                return value(nextNonBlank());
+            default:
+                throw new IllegalStateException("Bad JSON reader state: " + state);
+        }
+    }
+
+    /** The current NAME or STRING token, unescaped */
+    String stringValue() {
+        int i = start + 1;
+        int close = end - 1;
+        int backslash = text.indexOf('\\', i);
+        if (backslash < 0 || backslash >= close) {
+            return text.substring(i, close);
+        }
+        StringBuilder sb = new StringBuilder(close - i);
+        while (i < close) {
+            char c = text.charAt(i++);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            c = text.charAt(i++);
+            switch (c) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u': sb.append((char) Integer.parseInt(text.substring(i, i + 4), 16)); i += 4; break;
+                default: sb.append(c); // " \ /
+            }
+        }
+        return sb.toString();
+    }
+
+    /** An IllegalArgumentException that says where the problem is */
+    IllegalArgumentException error(String msg) {
+        return new IllegalArgumentException(msg + " at " + StructuredText.where(text, Math.max(0, Math.min(pos - 1, text.length()))));
+    }
+
+    private JsonToken value(int c) {
+        start = pos - 1;
+        switch (c) {
+            case '{':
+                push(EMPTY_OBJECT);
+                end = pos;
+                return JsonToken.BEGIN_OBJECT;
+            case '[':
+                push(EMPTY_ARRAY);
+                end = pos;
+                return JsonToken.BEGIN_ARRAY;
+            case '"':
+                string();
+                return JsonToken.STRING;
+            case 't':
+                return literal("true", JsonToken.TRUE);
+            case 'f':
+                return literal("false", JsonToken.FALSE);
+            case 'n':
+                return literal("null", JsonToken.NULL);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return number();
+                }
+                throw error(c < 0 ? "Unexpected end of the text" : "Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private JsonToken close(JsonToken token) {
+        start = pos - 1;
+        end = pos;
+        --depth;
+        return token;
+    }
+
+    private void push(byte state) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = state;
+    }
+
+    /** Skip whitespace and return the next char (moving past it), or -1 at the end */
+    private int nextNonBlank() {
+        while (pos < text.length()) {
+            char c = text.charAt(pos++);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+        ++pos; // so error() points just past the end
+        return -1;
+    }
+
+    /** Scan a string whose opening quote is at pos - 1 */
+    private void string() {
+        start = pos - 1;
+        while (pos < text.length()) {
+            char c = text.charAt(pos++);
+            if (c == '"') {
+                end = pos;
+                return;
+            }
+            if (c == '\\') {
+                if (pos >= text.length()) {
+                    break;
+                }
+                char e = text.charAt(pos++);
+                if (e == 'u') {
+                    for (int i = 0; i < 4; ++i) {
+                        if (pos >= text.length() || Character.digit(text.charAt(pos++), 16) < 0) {
+                            throw error("Bad \\u escape in string");
+                        }
+                    }
+                } else if ("\"\\/bfnrt".indexOf(e) < 0) {
+                    throw error("Bad escape '\\" + e + "' in string");
+                }
+            } else if (c < 0x20) {
+                throw error("Control character in string (it needs escaping)");
+            }
+        }
+        pos = text.length() + 1;
+        throw error("Unterminated string");
+    }
+
+    private JsonToken literal(String word, JsonToken token) {
+        if (!text.startsWith(word, start)) {
+            throw error("Unexpected character '" + text.charAt(start) + "'");
+        }
+        pos = end = start + word.length();
+        return token;
+    }
+
+    /** -?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)? */
+    private JsonToken number() {
+        int i = start;
+        if (text.charAt(i) == '-') {
+            ++i;
+        }
+        if (i < text.length() && text.charAt(i) == '0') {
+            ++i;
+        } else {
+            i = digits(i);
+        }
+        if (i < text.length() && text.charAt(i) == '.') {
+            i = digits(i + 1);
+        }
+        if (i < text.length() && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            ++i;
+            if (i < text.length() && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+                ++i;
+            }
+            i = digits(i);
+        }
+        pos = end = i;
+        return JsonToken.NUMBER;
+    }
+
+    /** Skip one or more digits starting at i */
+    private int digits(int i) {
+        int first = i;
+        while (i < text.length() && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            ++i;
+        }
+        if (i == first) {
+            pos = i + 1;
+            throw error("Bad number");
+        }
+        return i;
+    }
+}
+
+/** JSON pretty-printing, minifying, validation and path extraction on top of JsonReader */
+class JsonStream {
+    static String reformat(String text, String indent, String newline) {
+        JsonReader reader = new JsonReader(text);
+        IndentedOutput out = new IndentedOutput(indent == null ? text.length() : text.length() + text.length() / 2, indent, newline);
+        Reformatter reformatter = new Reformatter(text, out);
+        JsonToken token;
+        while ((token = reader.next()) != JsonToken.END) {
+            reformatter.add(token, reader);
+        }
+        return out.toString();
+    }
+
+    static String validate(String text) {
+        JsonReader reader = new JsonReader(text);
+        long values = 0;
+        int maxDepth = 0;
+        JsonToken token;
+        while ((token = reader.next()) != JsonToken.END) {
+            if (token != JsonToken.NAME && token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY) {
+                ++values;
+            }
+            maxDepth = Math.max(maxDepth, reader.depth());
+        }
+        return "Valid JSON: " + values + " value(s), nested " + maxDepth + " deep";
+    }
+
+    static void extract(String text, PathPattern path, List<String> values) {
+        JsonReader reader = new JsonReader(text);
+        // for each open container: whether it's an array, how many elements it has had, and the name or index of the
+        // value currently being read in it
+        boolean[] arrays = new boolean[16];
+        int[] counts = new int[16];
+        String[] names = new String[16];
+        int[] indexes = new int[16];
+        String name = null; // of the member whose value comes next
+        JsonToken token;
+        while ((token = reader.next()) != JsonToken.END) {
+            if (token == JsonToken.NAME) {
+                name = reader.stringValue();
+                continue;
+            }
+            if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                continue;
+            }
+            boolean container = token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY;
+            int level = reader.depth() - (container ? 1 : 0); // containers around this value
+            if (level > 0) {
+                if (arrays[level - 1]) {
+                    names[level - 1] = null;
+                    indexes[level - 1] = counts[level - 1]++;
+                } else {
+                    names[level - 1] = name;
+                    indexes[level - 1] = PathPattern.NO_INDEX;
+                }
+            }
+            if (path.matches(names, indexes, level)) {
+                values.add(value(token, reader, text, level));
+            } else if (container) {
+                if (level == arrays.length) {
+                    arrays = Arrays.copyOf(arrays, level * 2);
+                    counts = Arrays.copyOf(counts, level * 2);
+                    names = Arrays.copyOf(names, level * 2);
+                    indexes = Arrays.copyOf(indexes, level * 2);
+                }
+                arrays[level] = token == JsonToken.BEGIN_ARRAY;
+                counts[level] = 0;
+            }
+        }
+    }
+
+    /** The value starting at the current token as extract() outputs it. Reads to the end of it if it's an object or array. */
+    private static String value(JsonToken token, JsonReader reader, String text, int level) {
+        switch (token) {
+            case STRING:
+                return reader.stringValue();
+            case BEGIN_OBJECT:
+            case BEGIN_ARRAY:
+                IndentedOutput out = new IndentedOutput(64, null, "");
+                Reformatter minifier = new Reformatter(text, out);
+                minifier.add(token, reader);
+                while (reader.depth() > level) {
+                    minifier.add(reader.next(), reader);
+                }
+                return out.toString();
+            default:
+                return text.substring(reader.start(), reader.end());
+        }
+    }
+
+    /** Writes tokens back out, indented or minified, copying each one straight from the text */
+    private static class Reformatter {
+        private final String text;
+        private final IndentedOutput out;
+        private int depth = 0;
+        private boolean afterValue = false; // a ',' is needed before the next value or name
+        private boolean afterName = false; // the next value goes on the same line as its name
+        private JsonToken last = null;
+
+        Reformatter(String text, IndentedOutput out) {
+            this.text = text;
+            this.out = out;
+        }
+
+        void add(JsonToken token, JsonReader reader) {
+            switch (token) {
+                case END_OBJECT:
+                case END_ARRAY:
+                    --depth;
+                    if (last != JsonToken.BEGIN_OBJECT && last != JsonToken.BEGIN_ARRAY) {
+                        out.line(depth);
+                    }
+                    out.out.append(token == JsonToken.END_OBJECT ? '}' : ']');
+                    afterValue = true;
+                    break;
+                case NAME:
+                    separate();
+                    out.out.append(text, reader.start(), reader.end()).append(out.minified() ? ":" : ": ");
+                    afterName = true;
+                    break;
+                default:
+                    if (!afterName) {
+                        separate();
+                    }
+                    afterName = false;
+                    out.out.append(text, reader.start(), reader.end());
+                    if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+                        ++depth;
+                        afterValue = false;
+                    } else {
+                        afterValue = true;
+                    }
+            }
+            last = token;
+        }
+
+        /** Before a name or an array element: a comma after the previous one, and a new line */
+        private void separate() {
+            if (afterValue) {
+                out.out.append(',');
+            }
+            if (depth > 0) {
+                out.line(depth);
+            }
+        }
+    }
+}
@@ -0,0 +1,686 @@
+package com.juxtaflux;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/** The line an expression is looking at: the line, its number, and its fields (only split up if the expression uses them) */
+class LineContext {
+    private final String delimiter; // null splits on runs of whitespace
+    private CharSequence line;
+    private String lineString;
+    private int number = 0;
+    private int fieldCount = -1; // -1 until split
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+
+    LineContext(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /** Move on to the next line */
+    void next(CharSequence line) {
+        this.line = line;
+        lineString = line instanceof String ? (String) line : null;
+        ++number;
+        fieldCount = -1;
+    }
+
+    String line() {
+        if (lineString == null) {
+            lineString = line.toString();
+        }
+        return lineString;
+    }
+
+    /** 1 based line number */
+    double number() {
+        return number;
+    }
+
+    double fieldCount() {
+        split();
+        return fieldCount;
+    }
+
+    /** The 0 based field, counting back from the end if negative, or "" if there isn't one */
+    String field(double index) {
+        split();
+        int i = (int) index;
+        if (i < 0) {
+            i += fieldCount;
+        }
+        if (i < 0 || i >= fieldCount) {
+            return "";
+        }
+        return line.subSequence(starts[i], ends[i]).toString();
+    }
+
+    private void split() {
+        if (fieldCount >= 0) {
+            return;
+        }
+        fieldCount = 0;
+        int len = line.length();
+        if (delimiter == null) {
+            int i = 0;
+            while (true) {
+                while (i < len && Character.isWhitespace(line.charAt(i))) {
+                    ++i;
+                }
+                if (i == len) {
+                    break;
+                }
+                int start = i;
+                while (i < len && !Character.isWhitespace(line.charAt(i))) {
+                    ++i;
+                }
+                addField(start, i);
+            }
+            return;
+        }
+        int start = 0;
+        for (int i = 0; i <= len - delimiter.length(); ++i) {
+            if (regionMatches(i)) {
+                addField(start, i);
+                i += delimiter.length() - 1;
+                start = i + 1;
+            }
+        }
+        addField(start, len);
+    }
+
+    private boolean regionMatches(int i) {
+        for (int j = 0; j < delimiter.length(); ++j) {
+            if (line.charAt(i + j) != delimiter.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount++] = end;
+    }
+}
+
+/**
+ * A small expression language for changing or filtering each line, like upper(f[2]) + ":" + len(line) or
+ * num(f[3]) > 100. An expression that gives true/false keeps the lines it is true for; anything else replaces each
+ * line with its value.
+ *
+ * Values are text, numbers or true/false. line is the whole line, n its 1 based number, f[i] its 0 based field (or
+ * from the end if negative, "" if there's no such field) and nf the number of fields. Fields are split on the
+ * delimiter, or on runs of whitespace. Operators: + (adds numbers, joins text if either side is text), - * / %,
+ * == != < <= > >= (compare numbers if either side is a number, text otherwise), && || ! (or and, or, not) and ( ).
+ * Text literals go in "" or ''. Functions are the static methods of Builtins, plus if(cond, a, b) and the regex
+ * tests matches(s, regex) (the whole of s) and find(s, regex) (anywhere in s).
+ *
+ * The expression is parsed once and compiled into a chain of MethodHandles, with types worked out up front, so
+ * there is no interpreting or boxing per line and the JIT can compile the chain like a hand-written lambda.
+ */
+class LineExpr {
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private static final Map<String, MethodHandle> builtins = new HashMap<>(); // "name/arity"
+    private static final MethodHandle LINE;
+    private static final MethodHandle NUMBER;
+    private static final MethodHandle FIELD_COUNT;
+    private static final MethodHandle FIELD;
+    static {
+        try {
+            for (Method m : Builtins.class.getDeclaredMethods()) {
+                if (Modifier.isStatic(m.getModifiers()) && !m.isSynthetic()) {
+                    builtins.put(m.getName() + "/" + m.getParameterCount(), lookup.unreflect(m));
+                }
+            }
+            LINE = lookup.findVirtual(LineContext.class, "line", MethodType.methodType(String.class));
+            NUMBER = lookup.findVirtual(LineContext.class, "number", MethodType.methodType(double.class));
+            FIELD_COUNT = lookup.findVirtual(LineContext.class, "fieldCount", MethodType.methodType(double.class));
+            FIELD = lookup.findVirtual(LineContext.class, "field", MethodType.methodType(String.class, double.class));
+        } catch (ReflectiveOperationException exc) {
+            throw new ExceptionInInitializerError(exc);
+        }
+    }
+
+    private final String source;
+    private final String delimiter;
+    private final MethodHandle root; // (LineContext)String, or (LineContext)boolean for a filter
+
+    private LineExpr(String source, String delimiter, MethodHandle root) {
+        this.source = source;
+        this.delimiter = delimiter;
+        this.root = root;
+    }
+
+    /** Parse and compile source. delimiter splits fields, or null for runs of whitespace. */
+    static LineExpr compile(String source, String delimiter) throws ArgParseError {
+        Compiled c = new Parser(source).parse();
+        MethodHandle root = c.type == boolean.class ? c.mh : toType(c, String.class, source).mh;
+        return new LineExpr(source, delimiter, root);
+    }
+
+    /** The field delimiter for arg: null (whitespace) if it's empty, otherwise arg with \t etc. replaced */
+    static String delimiter(String arg) {
+        return arg.isEmpty() ? null : StringUtil.replaceSpecialChars(arg);
+    }
+
+    /** Does the expression give true/false (so it filters lines) rather than new lines? */
+    boolean isFilter() {
+        return root.type().returnType() == boolean.class;
+    }
+
+    /** A transformer for one pass over the lines (it counts lines for n), for expressions that aren't filters */
+    LineTransformer transformer() {
+        MethodHandle mh = root;
+        LineContext ctx = new LineContext(delimiter);
+        return line -> {
+            ctx.next(line);
+            try {
+                return (String) mh.invokeExact(ctx);
+            } catch (RuntimeException | Error exc) {
+                throw exc;
+            } catch (Throwable exc) {
+                throw new IllegalStateException(exc);
+            }
+        };
+    }
+
+    /** A predicate for one pass over the lines, for filter expressions */
+    <T extends CharSequence> Predicate<T> predicate() {
+        MethodHandle mh = root;
+        LineContext ctx = new LineContext(delimiter);
+        return line -> {
+            ctx.next(line);
+            try {
+                return (boolean) mh.invokeExact(ctx);
+            } catch (RuntimeException | Error exc) {
+                throw exc;
+            } catch (Throwable exc) {
+                throw new IllegalStateException(exc);
+            }
+        };
+    }
+
+    public String toString() {
+        return source;
+    }
+
+    /** A compiled piece of the expression: a (LineContext)type handle, and its value if it's a literal */
+    private static class Compiled {
+        final Class<?> type; // String, double or boolean
+        final MethodHandle mh;
+        final Object constant;
+
+        Compiled(Class<?> type, MethodHandle mh, Object constant) {
+            this.type = type;
+            this.mh = mh;
+            this.constant = constant;
+        }
+
+        Compiled(MethodHandle mh) {
+            this(mh.type().returnType(), mh, null);
+        }
+
+        static Compiled literal(Class<?> type, Object value) {
+            return new Compiled(type, MethodHandles.dropArguments(MethodHandles.constant(type, value), 0, LineContext.class), value);
+        }
+    }
+
+    /** Apply op to the values of args. If withContext, op also takes the LineContext as its first parameter. */
+    private static MethodHandle combine(MethodHandle op, boolean withContext, MethodHandle... args) {
+        MethodHandle h = MethodHandles.filterArguments(op, withContext ? 1 : 0, args);
+        int n = h.type().parameterCount();
+        if (n == 0) {
+            return MethodHandles.dropArguments(h, 0, LineContext.class);
+        }
+        return MethodHandles.permuteArguments(h, MethodType.methodType(h.type().returnType(), LineContext.class), new int[n]);
+    }
+
+    private static MethodHandle op(String name, Class<?> ret, Class<?>... params) {
+        try {
+            return lookup.findStatic(Ops.class, name, MethodType.methodType(ret, params));
+        } catch (ReflectiveOperationException exc) {
+            throw new IllegalStateException(exc);
+        }
+    }
+
+    /** c converted to type: numbers and true/false become text, text becomes a number. Only conditions are true/false. */
+    private static Compiled toType(Compiled c, Class<?> type, String what) throws ArgParseError {
+        if (c.type == type) {
+            return c;
+        }
+        if (type == String.class) {
+            return new Compiled(MethodHandles.filterReturnValue(c.mh, op("str", String.class, c.type)));
+        }
+        if (type == double.class && c.type == String.class) {
+            return new Compiled(MethodHandles.filterReturnValue(c.mh, op("num", double.class, String.class)));
+        }
+        throw new ArgParseError("Expected " + typeName(type) + " but got " + typeName(c.type) + " in " + what);
+    }
+
+    private static String typeName(Class<?> type) {
+        return type == String.class ? "text" : type == double.class ? "a number" : "a condition (true/false)";
+    }
+
+    private static class Parser {
+        private final String s;
+        private int pos = 0;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        Compiled parse() throws ArgParseError {
+            if (s.trim().isEmpty()) {
+                throw new ArgParseError("Need an expression, like upper(f[0]) or len(line) > 10");
+            }
+            Compiled c = or();
+            skipBlanks();
+            if (pos < s.length()) {
+                throw error("Unexpected '" + s.charAt(pos) + "'");
+            }
+            return c;
+        }
+
+        private Compiled or() throws ArgParseError {
+            Compiled c = and();
+            while (eat("||") || eatWord("or")) {
+                Compiled r = and();
+                c = new Compiled(MethodHandles.guardWithTest(condition(c).mh, Compiled.literal(boolean.class, true).mh, condition(r).mh));
+            }
+            return c;
+        }
+
+        private Compiled and() throws ArgParseError {
+            Compiled c = not();
+            while (eat("&&") || eatWord("and")) {
+                Compiled r = not();
+                c = new Compiled(MethodHandles.guardWithTest(condition(c).mh, condition(r).mh, Compiled.literal(boolean.class, false).mh));
+            }
+            return c;
+        }
+
+        private Compiled not() throws ArgParseError {
+            if ((peek("!") && !peek("!=")) && eat("!") || eatWord("not")) {
+                return new Compiled(MethodHandles.filterReturnValue(condition(not()).mh, op("not", boolean.class, boolean.class)));
+            }
+            return comparison();
+        }
+
+        private Compiled comparison() throws ArgParseError {
+            Compiled l = additive();
+            for (String op : new String[] {"==", "!=", "<=", ">=", "<", ">"}) {
+                if (eat(op)) {
+                    Compiled r = additive();
+                    String name = op.equals("==") ? "eq" : op.equals("!=") ? "ne" : op.equals("<=") ? "le" : op.equals(">=") ? "ge" : op.equals("<") ? "lt" : "gt";
+                    Class<?> type;
+                    if (l.type == double.class || r.type == double.class) {
+                        type = double.class;
+                    } else if (l.type == boolean.class && r.type == boolean.class && (name.equals("eq") || name.equals("ne"))) {
+                        type = boolean.class;
+                    } else {
+                        type = String.class;
+                    }
+                    return new Compiled(combine(op(name, boolean.class, type, type), false, toType(l, type, op).mh, toType(r, type, op).mh));
+                }
+            }
+            return l;
+        }
+
+        private Compiled additive() throws ArgParseError {
+            Compiled c = multiplicative();
+            while (true) {
+                if (eat("+")) {
+                    Compiled r = multiplicative();
+                    if (c.type == String.class || r.type == String.class) {
+                        c = new Compiled(combine(op("concat", String.class, String.class, String.class), false, toType(c, String.class, "+").mh, toType(r, String.class, "+").mh));
+                    } else {
+                        c = arithmetic("add", c, r, "+");
+                    }
+                } else if (eat("-")) {
+                    c = arithmetic("sub", c, multiplicative(), "-");
+                } else {
+                    return c;
+                }
+            }
+        }
+
+        private Compiled multiplicative() throws ArgParseError {
+            Compiled c = unary();
+            while (true) {
+                if (eat("*")) {
+                    c = arithmetic("mul", c, unary(), "*");
+                } else if (eat("/")) {
+                    c = arithmetic("div", c, unary(), "/");
+                } else if (eat("%")) {
+                    c = arithmetic("mod", c, unary(), "%");
+                } else {
+                    return c;
+                }
+            }
+        }
+
+        private Compiled arithmetic(String name, Compiled l, Compiled r, String what) throws ArgParseError {
+            return new Compiled(combine(op(name, double.class, double.class, double.class), false, toType(l, double.class, what).mh, toType(r, double.class, what).mh));
+        }
+
+        private Compiled unary() throws ArgParseError {
+            if (eat("-")) {
+                return new Compiled(MethodHandles.filterReturnValue(toType(unary(), double.class, "-").mh, op("neg", double.class, double.class)));
+            }
+            return primary();
+        }
+
+        private Compiled primary() throws ArgParseError {
+            skipBlanks();
+            if (pos >= s.length()) {
+                throw error("Unexpected end of the expression");
+            }
+            char c = s.charAt(pos);
+            if (eat("(")) {
+                Compiled inner = or();
+                expect(")");
+                return inner;
+            }
+            if (c == '"' || c == '\'') {
+                return Compiled.literal(String.class, string(c));
+            }
+            if (Character.isDigit(c) || c == '.') {
+                int start = pos;
+                while (pos < s.length() && (Character.isDigit(s.charAt(pos)) || s.charAt(pos) == '.')) {
+                    ++pos;
+                }
+                try {
+                    return Compiled.literal(double.class, Double.parseDouble(s.substring(start, pos)));
+                } catch (NumberFormatException exc) {
+                    pos = start;
+                    throw error("Bad number");
+                }
+            }
+            if (!Character.isLetter(c) && c != '_') {
+                throw error("Unexpected '" + c + "'");
+            }
+            int start = pos;
+            while (pos < s.length() && (Character.isLetterOrDigit(s.charAt(pos)) || s.charAt(pos) == '_')) {
+                ++pos;
+            }
+            String name = s.substring(start, pos);
+            if (eat("(")) {
+                return call(name, start);
+            }
+            switch (name) {
+                case "line": return new Compiled(LINE);
+                case "n": return new Compiled(NUMBER);
+                case "nf": return new Compiled(FIELD_COUNT);
+                case "true": return Compiled.literal(boolean.class, true);
+                case "false": return Compiled.literal(boolean.class, false);
+                case "f":
+                    expect("[");
+                    Compiled index = toType(or(), double.class, "f[]");
+                    expect("]");
+                    return new Compiled(combine(FIELD, true, index.mh));
+                default:
+                    pos = start;
+                    throw error("Unknown name '" + name + "' (use line, n, nf, f[i], or a function call)");
+            }
+        }
+
+        private Compiled call(String name, int at) throws ArgParseError {
+            List<Compiled> args = new ArrayList<>();
+            if (!eat(")")) {
+                do {
+                    args.add(or());
+                } while (eat(","));
+                expect(")");
+            }
+            if (name.equals("if") && args.size() == 3) {
+                Compiled a = args.get(1);
+                Compiled b = args.get(2);
+                Class<?> type = a.type == b.type ? a.type : a.type == String.class || b.type == String.class ? String.class : double.class;
+                return new Compiled(MethodHandles.guardWithTest(condition(args.get(0)).mh, toType(a, type, "if()").mh, toType(b, type, "if()").mh));
+            }
+            if ((name.equals("matches") || name.equals("find")) && args.size() == 2) {
+                MethodHandle text = toType(args.get(0), String.class, name + "()").mh;
+                Compiled regex = args.get(1);
+                if (regex.constant instanceof String) {
+                    Pattern p;
+                    try {
+                        p = Pattern.compile((String) regex.constant);
+                    } catch (PatternSyntaxException exc) {
+                        throw new ArgParseError("Invalid regex in " + name + "(): " + exc.getDescription());
+                    }
+                    MethodHandle test = MethodHandles.insertArguments(op(name, boolean.class, String.class, Pattern.class), 1, p);
+                    return new Compiled(MethodHandles.filterReturnValue(text, test));
+                }
+                return new Compiled(combine(op(name, boolean.class, String.class, String.class), false, text, toType(regex, String.class, name + "()").mh));
+            }
+            MethodHandle fn = builtins.get(name + "/" + args.size());
+            if (fn == null) {
+                pos = at;
+                for (String key : builtins.keySet()) {
+                    if (key.startsWith(name + "/")) {
+                        throw error("Wrong number of arguments for " + name + "()");
+                    }
+                }
+                throw error("Unknown function '" + name + "'");
+            }
+            MethodHandle[] handles = new MethodHandle[args.size()];
+            for (int i = 0; i < handles.length; ++i) {
+                handles[i] = toType(args.get(i), fn.type().parameterType(i), name + "()").mh;
+            }
+            return new Compiled(combine(fn, false, handles));
+        }
+
+        private Compiled condition(Compiled c) throws ArgParseError {
+            return toType(c, boolean.class, "a condition");
+        }
+
+        private String string(char quote) throws ArgParseError {
+            int start = pos++;
+            StringBuilder sb = new StringBuilder();
+            while (pos < s.length()) {
+                char c = s.charAt(pos++);
+                if (c == quote) {
+                    return sb.toString();
+                }
+                if (c == '\\' && pos < s.length()) {
+                    char e = s.charAt(pos++);
+                    sb.append(e == 'n' ? '\n' : e == 't' ? '\t' : e == 'r' ? '\r' : e);
+                } else {
+                    sb.append(c);
+                }
+            }
+            pos = start;
+            throw error("Unterminated text");
+        }
+
+        private void skipBlanks() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+                ++pos;
+            }
+        }
+
+        private boolean peek(String token) {
+            skipBlanks();
+            return s.startsWith(token, pos);
+        }
+
+        private boolean eat(String token) {
+            if (peek(token)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        /** Eat a keyword, but not the start of a longer name */
+        private boolean eatWord(String word) {
+            if (peek(word) && (pos + word.length() == s.length() || !Character.isLetterOrDigit(s.charAt(pos + word.length())))) {
+                pos += word.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) throws ArgParseError {
+            if (!eat(token)) {
+                throw error("Expected '" + token + "'");
+            }
+        }
+
+        private ArgParseError error(String msg) {
+            return new ArgParseError(msg + " at position " + (pos + 1) + " of the expression: " + s);
+        }
+    }
+
+    /** The operators */
+    private static class Ops {
+        static String str(double d) {
+            return d == Math.rint(d) && Math.abs(d) < 1e15 ? Long.toString((long) d) : Double.toString(d);
+        }
+        static String str(boolean b) {
+            return Boolean.toString(b);
+        }
+        /** s as a number (ignoring surrounding whitespace), or NaN */
+        static double num(String s) {
+            String t = s.trim();
+            try {
+                return Double.parseDouble(t);
+            } catch (NumberFormatException exc) {
+                return Double.NaN;
+            }
+        }
+        static String concat(String a, String b) {
+            return a.concat(b);
+        }
+        static double add(double a, double b) {
+            return a + b;
+        }
+        static double sub(double a, double b) {
+            return a - b;
+        }
+        static double mul(double a, double b) {
+            return a * b;
+        }
+        static double div(double a, double b) {
+            return a / b;
+        }
+        static double mod(double a, double b) {
+            return a % b;
+        }
+        static double neg(double a) {
+            return -a;
+        }
+        static boolean not(boolean a) {
+            return !a;
+        }
+        static boolean eq(double a, double b) { return a == b; }
+        static boolean ne(double a, double b) { return a != b; }
+        static boolean lt(double a, double b) { return a < b; }
+        static boolean le(double a, double b) { return a <= b; }
+        static boolean gt(double a, double b) { return a > b; }
+        static boolean ge(double a, double b) { return a >= b; }
+        static boolean eq(String a, String b) { return a.equals(b); }
+        static boolean ne(String a, String b) { return !a.equals(b); }
+        static boolean lt(String a, String b) { return a.compareTo(b) < 0; }
+        static boolean le(String a, String b) { return a.compareTo(b) <= 0; }
+        static boolean gt(String a, String b) { return a.compareTo(b) > 0; }
+        static boolean ge(String a, String b) { return a.compareTo(b) >= 0; }
+        static boolean eq(boolean a, boolean b) { return a == b; }
+        static boolean ne(boolean a, boolean b) { return a != b; }
+        static boolean matches(String s, Pattern p) {
+            return p.matcher(s).matches();
+        }
+        static boolean find(String s, Pattern p) {
+            return p.matcher(s).find();
+        }
+        static boolean matches(String s, String regex) {
+            return Pattern.compile(regex).matcher(s).matches();
+        }
+        static boolean find(String s, String regex) {
+            return Pattern.compile(regex).matcher(s).find();
+        }
+    }
+
+    /** The functions expressions can call, by name. Arguments are converted to the parameter types. */
+    private static class Builtins {
+        static String upper(String s) {
+            return s.toUpperCase();
+        }
+        static String lower(String s) {
+            return s.toLowerCase();
+        }
+        static String trim(String s) {
+            return s.trim();
+        }
+        static double len(String s) {
+            return s.length();
+        }
+        static double num(String s) {
+            return Ops.num(s);
+        }
+        static String str(String s) {
+            return s;
+        }
+        static double floor(double d) {
+            return Math.floor(d);
+        }
+        static double round(double d) {
+            return Math.round(d);
+        }
+        static double abs(double d) {
+            return Math.abs(d);
+        }
+        static double min(double a, double b) {
+            return Math.min(a, b);
+        }
+        static double max(double a, double b) {
+            return Math.max(a, b);
+        }
+        /** Python style s[start:], negative counts from the end */
+        static String substr(String s, double start) {
+            return StringUtil.slice(s, (int) start, null);
+        }
+        /** Python style s[start:end], negative counts from the end */
+        static String substr(String s, double start, double end) {
+            return StringUtil.slice(s, (int) start, (int) end);
+        }
+        static String replace(String s, String target, String replacement) {
+            return s.replace(target, replacement);
+        }
+        static boolean contains(String s, String part) {
+            return s.contains(part);
+        }
+        static boolean startsWith(String s, String prefix) {
+            return s.startsWith(prefix);
+        }
+        static boolean endsWith(String s, String suffix) {
+            return s.endsWith(suffix);
+        }
+        /** Pad on the left with spaces to width */
+        static String lpad(String s, double width) {
+            return StringUtils.leftPad(s, (int) width);
+        }
+        /** Pad on the right with spaces to width */
+        static String rpad(String s, double width) {
+            return StringUtils.rightPad(s, (int) width);
+        }
+    }
+}
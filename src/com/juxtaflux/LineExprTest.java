@@ -0,0 +1,84 @@
+package com.juxtaflux;
+
+import org.junit.Test;
+
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+public class LineExprTest {
+    private static String map(String expr, String line) throws ArgParseError {
+        LineExpr e = LineExpr.compile(expr, null);
+        assertFalse(e.isFilter());
+        return e.transformer().transform(line);
+    }
+
+    private static boolean test(String expr, String line) throws ArgParseError {
+        LineExpr e = LineExpr.compile(expr, null);
+        assertTrue(e.isFilter());
+        Predicate<String> p = e.predicate();
+        return p.test(line);
+    }
+
+    @Test
+    public void fieldsAndFunctions() throws ArgParseError {
+        assertEquals("GAMMA:17", map("upper(f[2]) + \":\" + len(line)", "alpha beta  gamma"));
+        assertEquals("gamma", map("f[-1]", "  alpha beta gamma "));
+        assertEquals("", map("f[5]", "alpha beta"));
+        assertEquals("2", map("nf", "alpha beta"));
+        assertEquals("b,a", map("f[1] + ',' + f[0]", "a b"));
+        assertEquals("ph", map("substr(f[0], -3, -1)", "alpha"));
+        assertEquals("  x|y ", map("lpad(f[0], 3) + '|' + rpad(f[1], 2)", "x y"));
+        assertEquals("3.5", map("num(f[0]) + 1.25 * 2", "1"));
+        assertEquals("6", map("(1 + 2) * 2", ""));
+        assertEquals("32", map("1 + 2 + '' + 3 - 1", "")); // "33" - 1
+    }
+
+    @Test
+    public void delimiter() throws ArgParseError {
+        LineTransformer t = LineExpr.compile("f[1] + '/' + nf", LineExpr.delimiter(",")).transformer();
+        assertEquals("/3", t.transform("a,,c"));
+        assertEquals("b/2", t.transform("a,b"));
+    }
+
+    @Test
+    public void filters() throws ArgParseError {
+        assertTrue(test("num(f[3]) > 100", "a b c 150"));
+        assertFalse(test("num(f[3]) > 100", "a b c 50"));
+        assertFalse(test("num(f[3]) > 100", "a b c x"));
+        assertTrue(test("f[3] > 100", "a b c 101.5"));
+        assertTrue(test("contains(line, 'err') && !startsWith(line, '#')", "an error"));
+        assertFalse(test("contains(line, 'err') and not startsWith(line, '#')", "# error"));
+        assertTrue(test("f[0] == 'x' || find(line, '\\\\d{3}')", "y 123"));
+        assertTrue(test("matches(f[0], '[a-z]+')", "abc 1"));
+        assertFalse(test("matches(f[0], '[a-z]+')", "abc1 1"));
+        assertTrue(test("('b' > 'a') == true", ""));
+    }
+
+    @Test
+    public void lineNumbers() throws ArgParseError {
+        LineTransformer t = LineExpr.compile("if(n % 2 == 0, upper(line), line)", null).transformer();
+        assertEquals("a", t.transform("a"));
+        assertEquals("B", t.transform("b"));
+        assertEquals("c", t.transform("c"));
+    }
+
+    @Test
+    public void errors() {
+        String[] bad = {"", "upper(", "f[0] +", "nope", "nope(1)", "upper(1, 2)", "'abc", "!f[0]", "matches(line, '[')", "1 2"};
+        for (String expr : bad) {
+            try {
+                LineExpr.compile(expr, null);
+                fail("Expected an error for: " + expr);
+            } catch (ArgParseError exc) {
+                assertNotNull(exc.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void clipOps() throws Exception {
+        assertEquals("2 b\n4 d", ClipOps.get("btnListExpr").apply("1 a\n2 b\n3 c\n4 d", "num(f[0]) % 2 == 0 && nf == 2", ""));
+        assertEquals("A\nB", ClipOps.get("btnListExpr").apply("x:a\ny:b", "upper(f[1])", ":"));
+    }
+}
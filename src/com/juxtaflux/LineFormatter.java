@@ -0,0 +1,179 @@
+package com.juxtaflux;
+
+import java.util.Arrays;
+
+/** How text is lined up within the width */
+enum Align {
+    LEFT, CENTER, RIGHT, JUSTIFY
+}
+
+/**
+ * Word wraps, aligns and indents lines, writing straight into the output as it goes.
+ *
+ * Each line of the input is a paragraph. When wrapping, words are split on whitespace and joined with single spaces,
+ * and words longer than the width are left whole. A paragraph's own leading whitespace is kept at the start of each
+ * of its wrapped lines, after the indent (firstIndent for its first line, restIndent for the rest, for a hanging indent).
+ *
+ * Widths are in columns, not chars: tabs go to the next tab stop, East Asian wide characters and emoji take two
+ * columns, and combining marks take none. Everything is done in one pass over each line; only the offsets of the
+ * words on the output line being built are remembered.
+ */
+class LineFormatter implements LineRangeTransformer {
+    private final int width;
+    private final Align align;
+    private final boolean wrap;
+    private final int firstIndent;
+    private final int restIndent;
+    private final String separator;
+    private int[] words = new int[32]; // start and end of each word on the current output line
+    private int wordCount;
+    private int wordsWidth; // width of the words on the current output line, with single spaces between
+
+    LineFormatter(int width, Align align, boolean wrap, int firstIndent, int restIndent, String separator) {
+        this.width = width;
+        this.align = align;
+        this.wrap = wrap;
+        this.firstIndent = firstIndent;
+        this.restIndent = restIndent;
+        this.separator = separator;
+    }
+
+    /** Format all lines of text (for when it's not the clipboard) */
+    String format(String text) {
+        ClipSnapshot lines = new ClipSnapshot(text);
+        StringBuilder sb = new StringBuilder(text.length() + text.length() / 8);
+        for (int i = 0; i < lines.lineCount(); ++i) {
+            if (i > 0) {
+                sb.append(separator);
+            }
+            transform(text, lines.lineStart(i), lines.lineEnd(i), sb);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void transform(String text, int start, int end, StringBuilder out) {
+        if (!wrap) {
+            appendSpaces(out, firstIndent);
+            int w = width(text, start, end, firstIndent) - firstIndent;
+            int pad = Math.max(0, width - firstIndent - w);
+            int left = align == Align.CENTER ? pad / 2 : align == Align.RIGHT ? pad : 0;
+            appendSpaces(out, left);
+            out.append(text, start, end);
+            appendSpaces(out, align == Align.CENTER ? pad - left : 0);
+            return;
+        }
+
+        int leadEnd = start;
+        while (leadEnd < end && isSpace(text.charAt(leadEnd))) {
+            ++leadEnd;
+        }
+        int firstPrefix = width(text, start, leadEnd, firstIndent);
+        int restPrefix = width(text, start, leadEnd, restIndent);
+        int i = leadEnd;
+        boolean first = true;
+        wordCount = 0;
+        wordsWidth = 0;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (isSpace(c)) {
+                ++i;
+                continue;
+            }
+            int wordStart = i;
+            int wordWidth = 0;
+            while (i < end && !isSpace(text.charAt(i))) {
+                int cp = text.codePointAt(i);
+                wordWidth += charWidth(cp);
+                i += Character.charCount(cp);
+            }
+            int available = width - (first ? firstPrefix : restPrefix);
+            if (wordCount > 0 && wordsWidth + 1 + wordWidth > available) {
+                emitLine(text, start, leadEnd, first ? firstIndent : restIndent, available, false, out);
+                out.append(separator);
+                first = false;
+            }
+            addWord(wordStart, i, wordWidth);
+        }
+        if (wordCount > 0) {
+            emitLine(text, start, leadEnd, first ? firstIndent : restIndent, width - (first ? firstPrefix : restPrefix), true, out);
+        }
+    }
+
+    private void addWord(int start, int end, int wordWidth) {
+        if (2 * wordCount + 2 > words.length) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        words[2 * wordCount] = start;
+        words[2 * wordCount + 1] = end;
+        wordsWidth += (wordCount > 0 ? 1 : 0) + wordWidth;
+        ++wordCount;
+    }
+
+    /** Write out the words collected for an output line. available is the width left after the indent and leading whitespace. */
+    private void emitLine(String text, int leadStart, int leadEnd, int indent, int available, boolean last, StringBuilder out) {
+        appendSpaces(out, indent);
+        out.append(text, leadStart, leadEnd);
+        int pad = Math.max(0, available - wordsWidth);
+        int gaps = wordCount - 1;
+        boolean justify = align == Align.JUSTIFY && !last && gaps > 0;
+        int left = align == Align.CENTER ? pad / 2 : align == Align.RIGHT ? pad : 0;
+        appendSpaces(out, left);
+        for (int k = 0; k < wordCount; ++k) {
+            if (k > 0) {
+                // justified lines spread the padding over the gaps, with the earlier gaps getting any extra
+                appendSpaces(out, justify ? 1 + pad / gaps + (k - 1 < pad % gaps ? 1 : 0) : 1);
+            }
+            out.append(text, words[2 * k], words[2 * k + 1]);
+        }
+        appendSpaces(out, align == Align.CENTER ? pad - left : 0);
+        wordCount = 0;
+        wordsWidth = 0;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\u3000'; // ideographic space
+    }
+
+    private static void appendSpaces(StringBuilder out, int count) {
+        for (int i = 0; i < count; ++i) {
+            out.append(' ');
+        }
+    }
+
+    /** The column text[from, to) ends at when it starts at the given column */
+    static int width(String text, int from, int to, int column) {
+        for (int i = from; i < to; ) {
+            int cp = text.codePointAt(i);
+            column = cp == '\t' ? (column / Config.TAB_WIDTH + 1) * Config.TAB_WIDTH : column + charWidth(cp);
+            i += Character.charCount(cp);
+        }
+        return column;
+    }
+
+    /** Number of columns a character takes up on screen (in a monospaced font) */
+    static int charWidth(int cp) {
+        if (cp < 0x300) {
+            return cp < 0x20 || (cp >= 0x7F && cp < 0xA0) ? 0 : 1; // control characters
+        }
+        int type = Character.getType(cp);
+        if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK || type == Character.FORMAT) {
+            return 0;
+        }
+        return isWide(cp) ? 2 : 1;
+    }
+
+    /** East Asian Wide and Fullwidth characters, and emoji (main blocks only) */
+    private static boolean isWide(int cp) {
+        return (cp >= 0x1100 && cp <= 0x115F)       // Hangul Jamo
+                || (cp >= 0x2E80 && cp <= 0xA4CF && cp != 0x303F) // CJK ... Yi
+                || (cp >= 0xAC00 && cp <= 0xD7A3)   // Hangul syllables
+                || (cp >= 0xF900 && cp <= 0xFAFF)   // CJK compatibility ideographs
+                || (cp >= 0xFE30 && cp <= 0xFE4F)   // CJK compatibility forms
+                || (cp >= 0xFF00 && cp <= 0xFF60)   // fullwidth forms
+                || (cp >= 0xFFE0 && cp <= 0xFFE6)
+                || (cp >= 0x1F300 && cp <= 0x1F64F) // emoji
+                || (cp >= 0x1F900 && cp <= 0x1F9FF)
+                || (cp >= 0x20000 && cp <= 0x3FFFD); // CJK extensions
+    }
+}
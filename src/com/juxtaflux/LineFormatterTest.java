@@ -0,0 +1,54 @@
+package com.juxtaflux;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LineFormatterTest {
+    private static String format(String text, int width, Align align, boolean wrap, int first, int rest) {
+        return new LineFormatter(width, align, wrap, first, rest, "\n").format(text);
+    }
+
+    @Test
+    public void wrap() throws Exception {
+        assertEquals("the quick\nbrown fox\njumps", format("the quick brown fox jumps", 10, Align.LEFT, true, 0, 0));
+        assertEquals("the quick\nbrown fox", format("the   quick\tbrown fox ", 11, Align.LEFT, true, 0, 0)); // gaps become single spaces
+        assertEquals("a\nsupercalifragilistic\nb", format("a supercalifragilistic b", 5, Align.LEFT, true, 0, 0)); // long words stay whole
+        assertEquals("one\n\ntwo", format("one\n   \ntwo", 10, Align.LEFT, true, 0, 0)); // each line is a paragraph
+    }
+
+    @Test
+    public void indents() throws Exception {
+        assertEquals("- aaa bbb\n  ccc ddd", format("- aaa bbb ccc ddd", 11, Align.LEFT, true, 0, 2)); // hanging indent
+        assertEquals("  aa bb\n  cc", format("  aa bb cc", 7, Align.LEFT, true, 0, 0)); // paragraph's own indent is kept
+        assertEquals("    aa bb\n  cc", format("aa bb cc", 9, Align.LEFT, true, 4, 2));
+        assertEquals("  x\n  y", format("x\ny", 0, Align.LEFT, false, 2, 2));
+    }
+
+    @Test
+    public void justify() throws Exception {
+        assertEquals("aa   bb  cc\nddd ee", format("aa bb cc ddd ee", 11, Align.JUSTIFY, true, 0, 0));
+        assertEquals("aaaaaaa\nbb", format("aaaaaaa bb", 8, Align.JUSTIFY, true, 0, 0));
+    }
+
+    @Test
+    public void centerMatchesStringUtils() throws Exception {
+        for (String line : new String[] {"", "a", "ab", "abc", "abcdefghij", "  ab "}) {
+            for (int width = 0; width < 12; ++width) {
+                assertEquals(line + "/" + width, StringUtils.center(line, width), format(line, width, Align.CENTER, false, 0, 0));
+            }
+        }
+        assertEquals("   ab", format("ab", 5, Align.RIGHT, false, 0, 0));
+    }
+
+    @Test
+    public void columnWidths() throws Exception {
+        assertEquals(4, LineFormatter.width("\t", 0, 1, 0));
+        assertEquals(8, LineFormatter.width("ab\tc\t", 0, 5, 0));
+        assertEquals(4, LineFormatter.width("\u65E5\u672C", 0, 2, 0)); // CJK is two columns each
+        assertEquals(2, LineFormatter.width("\uD83D\uDE00", 0, 2, 0)); // emoji
+        assertEquals(1, LineFormatter.width("e\u0301", 0, 2, 0)); // combining accent
+        assertEquals("\u65E5\u672C \u65E5\n\u672C", format("\u65E5\u672C \u65E5 \u672C", 7, Align.LEFT, true, 0, 0));
+    }
+}
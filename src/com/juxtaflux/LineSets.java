@@ -0,0 +1,229 @@
+package com.juxtaflux;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** Set operations on the lines of buffers. With more than two buffers, A is the first and B is all the rest. */
+enum SetOp {
+    UNION,        // lines in any buffer
+    INTERSECTION, // lines in every buffer
+    DIFFERENCE,   // lines in A and in no other buffer (A - B)
+    SYMMETRIC     // lines in exactly one buffer
+}
+
+/**
+ * Line-set operations between buffers. Each line gets a 64-bit fingerprint (a hash of the line as it is compared:
+ * optionally lower-cased and with whitespace trimmed and collapsed), worked out straight from the buffer text without
+ * creating a String per line. Fingerprints go in an open-addressing table, so everything is linear in the number of
+ * lines. Lines with the same fingerprint are compared in full, so a hash collision can't merge two different lines.
+ * Each distinct line is output once, as it first appeared.
+ */
+class LineSets {
+    private final boolean ignoreCase;
+    private final boolean ignoreWhitespace;
+    private final List<ClipSnapshot> snapshots = new ArrayList<>();
+    private final NormalizedLine a = new NormalizedLine();
+    private final NormalizedLine b = new NormalizedLine();
+
+    // the table: slot -> key number + 1 (0 is empty)
+    private int[] slots;
+    private long[] slotHashes;
+    // per key (distinct line), in order of first appearance
+    private int keyCount = 0;
+    private int[] firstBuffer;
+    private int[] firstLine;
+    private int[] lastBuffer;
+    private int[] bufferCount; // number of buffers the line is in
+
+    LineSets(boolean ignoreCase, boolean ignoreWhitespace) {
+        this.ignoreCase = ignoreCase;
+        this.ignoreWhitespace = ignoreWhitespace;
+    }
+
+    /** The result lines of op on texts, joined with the first text's line ending, and how many there are */
+    static Pair<String, Integer> apply(SetOp op, List<String> texts, boolean ignoreCase, boolean ignoreWhitespace, boolean keepOrder) {
+        LineSets sets = new LineSets(ignoreCase, ignoreWhitespace);
+        for (String text : texts) {
+            sets.add(new ClipSnapshot(text));
+        }
+        return sets.result(op, keepOrder);
+    }
+
+    /** Add the next buffer's lines */
+    void add(ClipSnapshot lines) {
+        int buffer = snapshots.size();
+        snapshots.add(lines);
+        long total = (long) keyCount + lines.lineCount();
+        if (slots == null || total * 2 > slots.length) {
+            grow(total);
+        }
+        int mask = slots.length - 1;
+        for (int i = 0; i < lines.lineCount(); ++i) {
+            long hash = a.reset(lines.text, lines.lineStart(i), lines.lineEnd(i)).fingerprint();
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            int key;
+            while (true) {
+                int k = slots[slot] - 1;
+                if (k < 0) {
+                    key = newKey(buffer, i);
+                    slots[slot] = key + 1;
+                    slotHashes[slot] = hash;
+                    break;
+                }
+                if (slotHashes[slot] == hash && sameLine(k, lines, i)) {
+                    key = k;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (lastBuffer[key] != buffer) {
+                lastBuffer[key] = buffer;
+                ++bufferCount[key];
+            }
+        }
+    }
+
+    /** The lines that op picks out, in order of first appearance (or sorted), and how many there are */
+    Pair<String, Integer> result(SetOp op, boolean keepOrder) {
+        int buffers = snapshots.size();
+        List<String> lines = new ArrayList<>();
+        for (int k = 0; k < keyCount; ++k) {
+            boolean keep;
+            switch (op) {
+                case UNION: keep = true; break;
+                case INTERSECTION: keep = bufferCount[k] == buffers; break;
+                case DIFFERENCE: keep = firstBuffer[k] == 0 && bufferCount[k] == 1; break;
+                case SYMMETRIC: keep = bufferCount[k] == 1; break;
+                default: throw new IllegalArgumentException("Unknown set operation: " + op);
+            }
+            if (keep) {
+                ClipSnapshot s = snapshots.get(firstBuffer[k]);
+                lines.add(s.text.substring(s.lineStart(firstLine[k]), s.lineEnd(firstLine[k])));
+            }
+        }
+        if (!keepOrder) {
+            Collections.sort(lines);
+        }
+        String sep = snapshots.isEmpty() ? SysClipboard.lineSeparator() : snapshots.get(0).lineEnding().separator;
+        return Pair.of(String.join(sep, lines), lines.size());
+    }
+
+    private boolean sameLine(int key, ClipSnapshot lines, int i) {
+        ClipSnapshot s = snapshots.get(firstBuffer[key]);
+        int line = firstLine[key];
+        a.reset(s.text, s.lineStart(line), s.lineEnd(line));
+        b.reset(lines.text, lines.lineStart(i), lines.lineEnd(i));
+        int c;
+        do {
+            c = a.next();
+            if (c != b.next()) {
+                return false;
+            }
+        } while (c >= 0);
+        return true;
+    }
+
+    private int newKey(int buffer, int line) {
+        if (keyCount == firstBuffer.length) {
+            int size = Math.max(16, keyCount * 2);
+            firstBuffer = Arrays.copyOf(firstBuffer, size);
+            firstLine = Arrays.copyOf(firstLine, size);
+            lastBuffer = Arrays.copyOf(lastBuffer, size);
+            bufferCount = Arrays.copyOf(bufferCount, size);
+        }
+        firstBuffer[keyCount] = buffer;
+        firstLine[keyCount] = line;
+        lastBuffer[keyCount] = -1;
+        bufferCount[keyCount] = 0;
+        return keyCount++;
+    }
+
+    /** Make the table big enough for keys entries at no more than half full, and put the existing keys back in */
+    private void grow(long keys) {
+        int capacity = 16;
+        while (capacity < keys * 2) {
+            capacity <<= 1;
+        }
+        int[] oldSlots = slots;
+        long[] oldHashes = slotHashes;
+        slots = new int[capacity];
+        slotHashes = new long[capacity];
+        if (firstBuffer == null) {
+            firstBuffer = new int[0];
+            firstLine = new int[0];
+            lastBuffer = new int[0];
+            bufferCount = new int[0];
+        }
+        if (oldSlots == null) {
+            return;
+        }
+        int mask = capacity - 1;
+        for (int old = 0; old < oldSlots.length; ++old) {
+            if (oldSlots[old] != 0) {
+                long hash = oldHashes[old];
+                int slot = (int) (hash ^ (hash >>> 32)) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = oldSlots[old];
+                slotHashes[slot] = hash;
+            }
+        }
+    }
+
+    /** Steps through a line's chars as they are compared: optionally lower-cased, whitespace trimmed and collapsed to one space */
+    private class NormalizedLine {
+        private String text;
+        private int pos;
+        private int end;
+
+        NormalizedLine reset(String text, int start, int end) {
+            this.text = text;
+            this.pos = start;
+            this.end = end;
+            if (ignoreWhitespace) {
+                while (pos < end && Character.isWhitespace(text.charAt(pos))) {
+                    ++pos;
+                }
+                while (this.end > pos && Character.isWhitespace(text.charAt(this.end - 1))) {
+                    --this.end;
+                }
+            }
+            return this;
+        }
+
+        /** The next char, or -1 at the end */
+        int next() {
+            if (pos >= end) {
+                return -1;
+            }
+            char c = text.charAt(pos++);
+            if (ignoreWhitespace && Character.isWhitespace(c)) {
+                while (pos < end && Character.isWhitespace(text.charAt(pos))) {
+                    ++pos;
+                }
+                return ' ';
+            }
+            return ignoreCase ? Character.toLowerCase(c) : c;
+        }
+
+        /** 64-bit FNV-1a of the chars, then mixed so the low bits (used for the table slot) depend on all of them */
+        long fingerprint() {
+            long h = 0xcbf29ce484222325L;
+            int c;
+            while ((c = next()) >= 0) {
+                h = (h ^ c) * 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.juxtaflux;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LineSetsTest {
+    private static String apply(SetOp op, boolean ignoreCase, boolean ignoreWhitespace, boolean keepOrder, String... texts) {
+        return LineSets.apply(op, Arrays.asList(texts), ignoreCase, ignoreWhitespace, keepOrder).getLeft();
+    }
+
+    private static String apply(SetOp op, String... texts) {
+        return apply(op, false, false, true, texts);
+    }
+
+    @Test
+    public void twoBuffers() {
+        String a = "c\na\nb\na";
+        String b = "b\nd\nc";
+        assertEquals("c\na\nb\nd", apply(SetOp.UNION, a, b));
+        assertEquals("c\nb", apply(SetOp.INTERSECTION, a, b));
+        assertEquals("a", apply(SetOp.DIFFERENCE, a, b));
+        assertEquals("a\nd", apply(SetOp.SYMMETRIC, a, b));
+        assertEquals("a\nb\nc\nd", apply(SetOp.UNION, false, false, false, a, b));
+    }
+
+    @Test
+    public void moreThanTwo() {
+        assertEquals("x", apply(SetOp.INTERSECTION, "x\ny", "y\nx\nz", "x"));
+        assertEquals("", apply(SetOp.DIFFERENCE, "x\ny", "y", "x"));
+        assertEquals("z\nw", apply(SetOp.SYMMETRIC, "x\ny", "y\nz", "x\nw"));
+    }
+
+    @Test
+    public void normalized() {
+        assertEquals("Foo  Bar", apply(SetOp.UNION, true, true, true, "Foo  Bar", " foo bar\t", "FOO BAR"));
+        assertEquals("Foo  Bar\nfoo bar \nFOOBAR", apply(SetOp.UNION, true, false, true, "Foo  Bar\nfoo bar ", "FOOBAR", "foobar"));
+        assertEquals("a ", apply(SetOp.INTERSECTION, false, true, true, "a ", "\ta")); // lines come out as they first appeared
+        assertEquals("", apply(SetOp.INTERSECTION, "a ", "\ta"));
+    }
+
+    @Test
+    public void keepsLineEndingOfFirstBuffer() {
+        assertEquals("a\r\nb", apply(SetOp.UNION, "a\r\nb", "b\na"));
+    }
+
+    @Test
+    public void manyLines() {
+        List<String> a = new ArrayList<>();
+        List<String> b = new ArrayList<>();
+        for (int i = 0; i < 100_000; ++i) {
+            a.add("line " + i);
+            if (i % 3 == 0) {
+                b.add("line " + i);
+            }
+        }
+        String minus = apply(SetOp.DIFFERENCE, String.join("\n", a), String.join("\n", b));
+        assertEquals(100_000 - 33_334, minus.split("\n").length);
+        assertTrue(minus.startsWith("line 1\nline 2\nline 4\n"));
+    }
+}
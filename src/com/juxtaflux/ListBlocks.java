@@ -0,0 +1,89 @@
+package com.juxtaflux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bulk operations on the selected items of a list, where the selection is given as sorted indexes.
+ *
+ * Each builds the whole new list in one pass so the caller can apply it with a single setAll() (one change event),
+ * instead of moving or removing items one at a time. Runs of adjacent selected items are handled as blocks.
+ */
+class ListBlocks {
+    /**
+     * Move each block of selected items up one place (or down, if up is false). A block that is already at the top
+     * (bottom) stays put. The moved list is added to out. Returns where the selected items ended up.
+     */
+    static <T> int[] move(List<T> items, int[] selected, boolean up, List<T> out) {
+        int n = items.size();
+        int[] moved = new int[selected.length];
+        int[] target = new int[n]; // new index of each item
+        for (int i = 0; i < n; ++i) {
+            target[i] = i;
+        }
+        int k = 0;
+        while (k < selected.length) {
+            // find the run selected[k..r] of adjacent indexes
+            int r = k;
+            while (r + 1 < selected.length && selected[r + 1] == selected[r] + 1) {
+                ++r;
+            }
+            int first = selected[k];
+            int last = selected[r];
+            if (up && first > 0) {
+                // the item above the block drops to below it
+                target[first - 1] = last;
+                for (int i = first; i <= last; ++i) {
+                    target[i] = i - 1;
+                }
+            } else if (!up && last < n - 1) {
+                target[last + 1] = first;
+                for (int i = first; i <= last; ++i) {
+                    target[i] = i + 1;
+                }
+            }
+            for (int i = k; i <= r; ++i) {
+                moved[i] = target[selected[i]];
+            }
+            k = r + 1;
+        }
+        Object[] result = new Object[n];
+        for (int i = 0; i < n; ++i) {
+            result[target[i]] = items.get(i);
+        }
+        for (Object o : result) {
+            @SuppressWarnings("unchecked") T t = (T) o;
+            out.add(t);
+        }
+        return moved;
+    }
+
+    /** The items that are not selected */
+    static <T> List<T> without(List<T> items, int[] selected) {
+        List<T> kept = new ArrayList<>(items.size() - selected.length);
+        int k = 0;
+        for (int i = 0; i < items.size(); ++i) {
+            if (k < selected.length && selected[k] == i) {
+                ++k;
+            } else {
+                kept.add(items.get(i));
+            }
+        }
+        return kept;
+    }
+
+    /** The indexes in [0, size) that are not selected */
+    static int[] invert(int[] selected, int size) {
+        int[] inverted = new int[size - selected.length];
+        int k = 0;
+        int count = 0;
+        for (int i = 0; i < size; ++i) {
+            if (k < selected.length && selected[k] == i) {
+                ++k;
+            } else {
+                inverted[count++] = i;
+            }
+        }
+        return inverted;
+    }
+}
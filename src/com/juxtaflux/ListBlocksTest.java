@@ -0,0 +1,50 @@
+package com.juxtaflux;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ListBlocksTest {
+    private static final List<String> ITEMS = Arrays.asList("a", "b", "c", "d", "e", "f");
+
+    @Test
+    public void moveUp() throws Exception {
+        List<String> out = new ArrayList<>();
+        int[] sel = ListBlocks.move(ITEMS, new int[] {2, 3, 5}, true, out);
+        assertEquals(Arrays.asList("a", "c", "d", "b", "f", "e"), out);
+        assertArrayEquals(new int[] {1, 2, 4}, sel);
+    }
+
+    @Test
+    public void moveDown() throws Exception {
+        List<String> out = new ArrayList<>();
+        int[] sel = ListBlocks.move(ITEMS, new int[] {0, 2, 3}, false, out);
+        assertEquals(Arrays.asList("b", "a", "e", "c", "d", "f"), out);
+        assertArrayEquals(new int[] {1, 3, 4}, sel);
+    }
+
+    @Test
+    public void blocksAtTheEdgeStayPut() throws Exception {
+        List<String> out = new ArrayList<>();
+        int[] sel = ListBlocks.move(ITEMS, new int[] {0, 1, 4}, true, out);
+        assertEquals(Arrays.asList("a", "b", "c", "e", "d", "f"), out);
+        assertArrayEquals(new int[] {0, 1, 3}, sel);
+
+        out.clear();
+        sel = ListBlocks.move(ITEMS, new int[] {4, 5}, false, out);
+        assertEquals(ITEMS, out);
+        assertArrayEquals(new int[] {4, 5}, sel);
+    }
+
+    @Test
+    public void withoutAndInvert() throws Exception {
+        assertEquals(Arrays.asList("b", "c", "e"), ListBlocks.without(ITEMS, new int[] {0, 3, 5}));
+        assertEquals(ITEMS, ListBlocks.without(ITEMS, new int[] {}));
+        assertArrayEquals(new int[] {1, 2, 4}, ListBlocks.invert(new int[] {0, 3, 5}, 6));
+        assertArrayEquals(new int[] {}, ListBlocks.invert(new int[] {0, 1}, 2));
+    }
+}
@@ -1,6 +1,7 @@
 package com.juxtaflux;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
@@ -23,6 +24,7 @@ public class Main extends Application {
             System.out.println("ERROR: Problem loading UI layout: " + UI_LAYOUT_FILENAME);
             throw e;
         }
+        StartupTimer.mark("toolkit + FXML load");
 
         System.out.println("Loading app icon: " + ICON_FILENAME);
         InputStream iconInputStream = getClass().getResourceAsStream(ICON_FILENAME);
@@ -33,12 +35,23 @@ public class Main extends Application {
         primaryStage.setTitle(Config.APP_TITLE);
         primaryStage.setScene(new Scene(root, Config.APP_WIDTH, Config.APP_HEIGHT));
         primaryStage.show();
+        StartupTimer.mark("show window");
         Controller controller = loader.getController();
         controller.onReady(primaryStage);
-        AppFramework.dump(root);
+        StartupTimer.mark("onReady");
+        if (Config.DEBUG) {
+            AppFramework.dump(root);
+        }
+        Platform.runLater(() -> {
+            StartupTimer.done();
+            if (Config.EXIT_AFTER_STARTUP) {
+                Platform.exit();
+            }
+        });
     }
 
     public static void main(String[] args) {
+        StartupTimer.begin();
         launch(args);
     }
 }
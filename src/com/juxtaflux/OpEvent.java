@@ -0,0 +1,58 @@
+package com.juxtaflux;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** JFR event emitted for each operation, so operations show up next to GC and allocation events in a flight recording */
+@Name("com.juxtaflux.Operation")
+@Label("ClipDashboard Operation")
+@Category("ClipDashboard")
+class OpEvent extends Event {
+    @Label("Operation")
+    String operation;
+    @Label("Read") @Timespan
+    long read;
+    @Label("Split") @Timespan
+    long split;
+    @Label("Transform") @Timespan
+    long transform;
+    @Label("Join") @Timespan
+    long join;
+    @Label("Write") @Timespan
+    long write;
+    @Label("Bytes In") @DataAmount
+    long bytesIn;
+    @Label("Bytes Out") @DataAmount
+    long bytesOut;
+    @Label("Allocated") @DataAmount
+    long allocated;
+
+    /** Start the event for an operation. Only call when JFR is available (the class can't load otherwise). */
+    static Object start() {
+        OpEvent event = new OpEvent();
+        event.begin();
+        return event;
+    }
+
+    /** Finish an event from start() and commit it with rec's numbers, if a recording wants it */
+    static void finish(Object started, OpRecord rec) {
+        OpEvent event = (OpEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = rec.name;
+            event.read = rec.phaseNanos[OpPhase.READ.ordinal()];
+            event.split = rec.phaseNanos[OpPhase.SPLIT.ordinal()];
+            event.transform = rec.phaseNanos[OpPhase.TRANSFORM.ordinal()];
+            event.join = rec.phaseNanos[OpPhase.JOIN.ordinal()];
+            event.write = rec.phaseNanos[OpPhase.WRITE.ordinal()];
+            event.bytesIn = rec.bytesIn;
+            event.bytesOut = rec.bytesOut;
+            event.allocated = rec.allocatedBytes;
+            event.commit();
+        }
+    }
+}
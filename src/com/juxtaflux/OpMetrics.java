@@ -0,0 +1,348 @@
+package com.juxtaflux;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Phases that the time of an operation is split into */
+enum OpPhase {
+    READ, SPLIT, TRANSFORM, JOIN, WRITE,
+    OTHER // whatever is left over (argument parsing, status updates, string operations done inline in Controller)
+}
+
+/** Timing and memory numbers for one run of an operation */
+class OpRecord {
+    final String name;
+    final long[] phaseNanos = new long[OpPhase.values().length];
+    long totalNanos;
+    long bytesIn;
+    long bytesOut;
+    long allocatedBytes = -1; // -1 when the JVM can't measure it
+
+    OpRecord(String name) {
+        this.name = name;
+    }
+
+    String phasesSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (OpPhase p : OpPhase.values()) {
+            if (phaseNanos[p.ordinal()] > 0) {
+                sb.append(String.format("%s=%.2fms ", p.name().toLowerCase(), phaseNanos[p.ordinal()] / 1e6));
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    public String toString() {
+        return String.format("%s: %.2fms (%s) in=%s out=%s alloc=%s",
+                name, totalNanos / 1e6, phasesSummary(),
+                OpMetrics.formatBytes(bytesIn), OpMetrics.formatBytes(bytesOut), OpMetrics.formatBytes(allocatedBytes));
+    }
+}
+
+/** Fixed size window of the most recent samples. Old samples roll off as new ones come in. */
+class RollingHistogram {
+    private final long[] samples;
+    private int next = 0;
+    private int size = 0;
+
+    RollingHistogram(int capacity) {
+        samples = new long[capacity];
+    }
+    void add(long sample) {
+        samples[next] = sample;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+    }
+    int size() {
+        return size;
+    }
+    /** A copy that doesn't change when more samples are added to this one */
+    RollingHistogram copy() {
+        RollingHistogram h = new RollingHistogram(samples.length);
+        System.arraycopy(samples, 0, h.samples, 0, samples.length);
+        h.next = next;
+        h.size = size;
+        return h;
+    }
+    /** p is 0.0 to 1.0 */
+    long percentile(double p) {
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.min(size - 1, Math.round(p * (size - 1)))];
+    }
+    /** Count of samples (nanoseconds) in power-of-two millisecond buckets: <1ms, 1-2ms, 2-4ms, 4-8ms, ... */
+    int[] millisBuckets(int bucketCount) {
+        int[] buckets = new int[bucketCount];
+        for (int i = 0; i < size; ++i) {
+            long ms = samples[i] / 1000000;
+            int bucket = ms == 0 ? 0 : 64 - Long.numberOfLeadingZeros(ms);
+            buckets[Math.min(bucket, bucketCount - 1)]++;
+        }
+        return buckets;
+    }
+}
+
+/** Stats for all the runs of one operation */
+class OpStats implements OpStatsMXBean {
+    private final String name;
+    private final RollingHistogram durations = new RollingHistogram(Config.METRICS_WINDOW);
+    private long count = 0;
+    private OpRecord last;
+
+    OpStats(String name) {
+        this.name = name;
+    }
+    synchronized void add(OpRecord rec) {
+        durations.add(rec.totalNanos);
+        last = rec;
+        ++count;
+    }
+    /** A copy of the recent durations, safe to read without holding the lock */
+    synchronized RollingHistogram getDurations() {
+        return durations.copy();
+    }
+
+    public String getName() { return name; }
+    public synchronized long getCount() { return count; }
+    public synchronized double getLastMillis() { return last == null ? 0 : last.totalNanos / 1e6; }
+    public synchronized double getMedianMillis() { return durations.percentile(0.5) / 1e6; }
+    public synchronized double getP90Millis() { return durations.percentile(0.9) / 1e6; }
+    public synchronized double getP99Millis() { return durations.percentile(0.99) / 1e6; }
+    public synchronized double getMaxMillis() { return durations.percentile(1.0) / 1e6; }
+    public synchronized long getLastAllocatedBytes() { return last == null ? 0 : last.allocatedBytes; }
+    public synchronized long getLastBytesIn() { return last == null ? 0 : last.bytesIn; }
+    public synchronized long getLastBytesOut() { return last == null ? 0 : last.bytesOut; }
+    public synchronized String getLastPhases() { return last == null ? "" : last.phasesSummary(); }
+}
+
+/**
+ * Times each operation (button click) by phase and records how much it read, wrote and allocated.
+ *
+ * Operations run on the JavaFX thread, so there is only ever one in flight. Code that does a phase of work wraps it
+ * with phaseStart()/phaseEnd(). Phases that happen outside of an operation, or on another thread (ex: a background
+ * preview), are ignored.
+ */
+class OpMetrics {
+    // stats and recent are written on the JavaFX thread and read from others (JMX, status), so both are guarded by lock
+    private static final Object lock = new Object();
+    private static final Map<String, OpStats> stats = new LinkedHashMap<>();
+    private static final ArrayDeque<OpRecord> recent = new ArrayDeque<>();
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private static final boolean jfrAvailable = jfrAvailable();
+    private static OpRecord current;
+    private static Thread currentThread;
+    private static Object currentEvent; // an OpEvent, typed Object so this class still loads on a JVM without JFR
+    private static long startNanos;
+    private static long startAllocated;
+
+    static void begin(String name) {
+        current = new OpRecord(name);
+        currentThread = Thread.currentThread();
+        currentEvent = jfrAvailable ? OpEvent.start() : null;
+        startAllocated = allocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    /** Java 8 before 8u262 has no JFR API (jdk.jfr). Without it, operations are still measured, just not sent to JFR. */
+    private static boolean jfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError exc) {
+            return false;
+        }
+    }
+
+    static long phaseStart() {
+        return System.nanoTime();
+    }
+
+    static void phaseEnd(OpPhase phase, long phaseStartNanos) {
+        if (current != null && Thread.currentThread() == currentThread) {
+            current.phaseNanos[phase.ordinal()] += System.nanoTime() - phaseStartNanos;
+        }
+    }
+
+    static void bytesIn(String s) {
+        if (current != null && s != null && Thread.currentThread() == currentThread) {
+            current.bytesIn += 2L * s.length(); // Strings are UTF-16 in memory
+        }
+    }
+
+    static void bytesOut(String s) {
+        if (current != null && s != null && Thread.currentThread() == currentThread) {
+            current.bytesOut += 2L * s.length();
+        }
+    }
+
+    /** Finish the current operation. Returns null if there wasn't one. */
+    static OpRecord end() {
+        if (current == null) {
+            return null;
+        }
+        OpRecord rec = current;
+        current = null;
+        rec.totalNanos = System.nanoTime() - startNanos;
+        long allocated = allocatedBytes();
+        if (allocated >= 0 && startAllocated >= 0) {
+            rec.allocatedBytes = allocated - startAllocated;
+        }
+        long attributed = 0;
+        for (long n : rec.phaseNanos) {
+            attributed += n;
+        }
+        rec.phaseNanos[OpPhase.OTHER.ordinal()] = Math.max(0, rec.totalNanos - attributed);
+
+        if (currentEvent != null) {
+            OpEvent.finish(currentEvent, rec);
+        }
+        currentEvent = null;
+
+        statsFor(rec.name).add(rec);
+        synchronized (lock) {
+            recent.addFirst(rec);
+            while (recent.size() > Config.METRICS_RECENT_COUNT) {
+                recent.removeLast();
+            }
+        }
+        return rec;
+    }
+
+    /** Text for the metrics panel: recent operations, per-operation percentiles and a histogram of the latest operation */
+    static String report() {
+        List<OpRecord> recentRecs;
+        List<OpStats> allStats;
+        synchronized (lock) {
+            recentRecs = new ArrayList<>(recent);
+            allStats = new ArrayList<>(stats.values());
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("Recent operations\n");
+        for (OpRecord rec : recentRecs) {
+            sb.append("  ").append(rec).append('\n');
+        }
+        sb.append("\nPer operation (last ").append(Config.METRICS_WINDOW).append(" runs)\n");
+        for (OpStats s : allStats) {
+            sb.append(String.format("  %-20s count=%d median=%.2fms p90=%.2fms p99=%.2fms max=%.2fms\n",
+                    s.getName(), s.getCount(), s.getMedianMillis(), s.getP90Millis(), s.getP99Millis(), s.getMaxMillis()));
+        }
+        if (!recentRecs.isEmpty()) {
+            String name = recentRecs.get(0).name;
+            RollingHistogram hist = statsFor(name).getDurations();
+            int[] buckets = hist.millisBuckets(12);
+            sb.append("\nHistogram for ").append(name).append('\n');
+            for (int i = 0; i < buckets.length; ++i) {
+                String label = i == 0 ? "<1ms" : (i == buckets.length - 1 ? ">=" + (1L << (i - 1)) + "ms" : (1L << (i - 1)) + "-" + (1L << i) + "ms");
+                sb.append(String.format("  %10s %5d ", label, buckets[i]));
+                for (int j = 0; j < buckets[i] * 50 / hist.size(); ++j) {
+                    sb.append('#');
+                }
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 0) {
+            return "n/a";
+        } else if (bytes < 1024) {
+            return bytes + "B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1fKB", bytes / 1024.0);
+        }
+        return String.format("%.1fMB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static OpStats statsFor(String name) {
+        OpStats s;
+        synchronized (lock) {
+            s = stats.get(name);
+            if (s != null) {
+                return s;
+            }
+            s = new OpStats(name);
+            stats.put(name, s);
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(s, new ObjectName("com.juxtaflux:type=Operation,name=" + ObjectName.quote(name)));
+        } catch (Exception exc) {
+            System.out.println("Problem registering MBean for " + name + ": " + exc);
+        }
+        return s;
+    }
+
+    private static long allocatedBytes() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
+
+/**
+ * How long each phase of starting the app took, up to the first frame (when the user can start clicking). Phases are
+ * marked from the JavaFX thread as they finish.
+ */
+class StartupTimer {
+    private static long last = System.nanoTime();
+    private static final Map<String, Long> phases = new LinkedHashMap<>();
+    private static long launchMillis = -1; // JVM start until main(), worked out at the end to keep JMX off the startup path
+
+    /** Call first thing in main() */
+    static void begin() {
+        last = System.nanoTime();
+    }
+
+    /** The phase that has been running since the last mark is done */
+    static void mark(String phase) {
+        long now = System.nanoTime();
+        phases.put(phase, now - last);
+        last = now;
+    }
+
+    /** Everything up to the first frame is done. Prints the phases, with a warning if they took longer than Config.STARTUP_TARGET_MS. */
+    static void done() {
+        mark("first frame");
+        long total = totalNanos() / 1_000_000;
+        launchMillis = Math.max(0, ManagementFactory.getRuntimeMXBean().getUptime() - total);
+        System.out.print(report());
+        if (launchMillis + total > Config.STARTUP_TARGET_MS) {
+            System.out.println("WARNING: startup took longer than the " + Config.STARTUP_TARGET_MS + "ms target");
+        }
+    }
+
+    private static long totalNanos() {
+        long total = 0;
+        for (long nanos : phases.values()) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    /** Text for the metrics panel */
+    static String report() {
+        StringBuilder sb = new StringBuilder("Startup\n");
+        if (launchMillis >= 0) {
+            sb.append(String.format("  %-20s %6dms\n", "JVM launch", launchMillis));
+        }
+        for (Map.Entry<String, Long> p : phases.entrySet()) {
+            sb.append(String.format("  %-20s %6.1fms\n", p.getKey(), p.getValue() / 1e6));
+        }
+        sb.append(String.format("  %-20s %6.1fms\n", "time to interactive", Math.max(0, launchMillis) + totalNanos() / 1e6));
+        return sb.toString();
+    }
+}
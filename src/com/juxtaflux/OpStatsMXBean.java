@@ -0,0 +1,16 @@
+package com.juxtaflux;
+
+/** JMX view of the timing stats of one operation (one per button). Times are from a rolling window of recent runs. */
+public interface OpStatsMXBean {
+    String getName();
+    long getCount();
+    double getLastMillis();
+    double getMedianMillis();
+    double getP90Millis();
+    double getP99Millis();
+    double getMaxMillis();
+    long getLastAllocatedBytes();
+    long getLastBytesIn();
+    long getLastBytesOut();
+    String getLastPhases();
+}
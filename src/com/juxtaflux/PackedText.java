@@ -0,0 +1,58 @@
+package com.juxtaflux;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression of text (or raw bytes), for keeping rarely used data around in less memory.
+ * Works on the raw UTF-16 chars rather than an encoding like UTF-8, so any String (even one with broken surrogate
+ * pairs) comes back exactly as it went in.
+ */
+class PackedText {
+    static byte[] pack(String s) {
+        byte[] raw = new byte[2 * s.length()];
+        ByteBuffer.wrap(raw).asCharBuffer().put(s);
+        return packBytes(raw);
+    }
+
+    static String unpack(byte[] packed) {
+        return ByteBuffer.wrap(unpackBytes(packed)).asCharBuffer().toString();
+    }
+
+    static byte[] packBytes(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        byte[] buf = new byte[64 * 1024];
+        while (!deflater.finished()) {
+            out.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    static byte[] unpackBytes(byte[] packed) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(packed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(packed.length * 4);
+        byte[] buf = new byte[64 * 1024];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new IllegalStateException("Packed text is truncated");
+                }
+                out.write(buf, 0, n);
+            }
+        } catch (DataFormatException exc) {
+            throw new IllegalStateException("Packed text is corrupt", exc);
+        } finally {
+            inflater.end();
+        }
+        return out.toByteArray();
+    }
+}
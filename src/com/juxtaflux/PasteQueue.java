@@ -0,0 +1,181 @@
+package com.juxtaflux;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import javafx.stage.Window;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+
+/**
+ * Buffers to paste one after another, in order.
+ *
+ * Rendering a buffer (variable substitution) runs in the background a few items ahead of the one being pasted, so
+ * when the next item is asked for it is normally already done.
+ */
+class PasteQueue {
+    private static final ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Paste queue prefetch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final List<String> items;
+    private final UnaryOperator<String> render;
+    private final List<CompletableFuture<String>> rendered; // null until prefetched, and again once handed out
+    private int next = 0;
+
+    /** render is applied to each item before it is handed out (null to hand them out as is) */
+    PasteQueue(List<String> items, UnaryOperator<String> render) {
+        this.items = items;
+        this.render = render;
+        rendered = new ArrayList<>(Collections.nCopies(items.size(), (CompletableFuture<String>) null));
+        prefetch();
+    }
+
+    int size() {
+        return items.size();
+    }
+
+    /** Number of items handed out so far */
+    int position() {
+        return next;
+    }
+
+    boolean hasNext() {
+        return next < items.size();
+    }
+
+    /** The next item, rendered. Only waits if the prefetch hasn't got to it yet. */
+    String next() throws ExecutionException, InterruptedException {
+        String s = future(next).get();
+        rendered.set(next, null); // done with it, don't hang on to the rendered text
+        ++next;
+        prefetch();
+        return s;
+    }
+
+    /** Step back so that next() hands out the previous item again */
+    void back() {
+        if (next > 0) {
+            --next;
+            prefetch();
+        }
+    }
+
+    private void prefetch() {
+        for (int i = next; i < Math.min(items.size(), next + Config.PASTE_QUEUE_PREFETCH); ++i) {
+            future(i);
+        }
+    }
+
+    private CompletableFuture<String> future(int i) {
+        if (rendered.get(i) == null) {
+            String item = items.get(i);
+            rendered.set(i, render == null ? CompletableFuture.completedFuture(item) : CompletableFuture.supplyAsync(() -> render.apply(item), prefetcher));
+        }
+        return rendered.get(i);
+    }
+}
+
+/**
+ * Small always-on-top window for working through a paste queue: each "next" puts the following buffer in the
+ * clipboard, ready to paste in another app. It can also advance on a timer, for pasting at a steady pace.
+ */
+class PasteQueueWindow {
+    private final PasteQueue queue;
+    private final StatusBar statusBar;
+    private final Stage stage = new Stage(StageStyle.UTILITY);
+    private final Label lblPosition = new Label();
+    private final Label lblCurrent = new Label();
+    private final CheckBox chkAuto = new CheckBox("advance every");
+    private final TextField txtIntervalMs = new TextField(Integer.toString(Config.PASTE_QUEUE_AUTO_MS));
+    private final Timeline autoAdvance = new Timeline();
+
+    PasteQueueWindow(PasteQueue queue, StatusBar statusBar, Window owner) {
+        this.queue = queue;
+        this.statusBar = statusBar;
+        Button btnNext = new Button("next");
+        btnNext.setDefaultButton(true); // Enter pushes the next item
+        btnNext.setOnAction(e -> pushNext());
+        Button btnBack = new Button("back");
+        btnBack.setOnAction(e -> {
+            queue.back();
+            queue.back();
+            pushNext();
+        });
+        Button btnStop = new Button("stop");
+        btnStop.setOnAction(e -> stage.close());
+        txtIntervalMs.setPrefColumnCount(5);
+        chkAuto.setOnAction(e -> updateAutoAdvance());
+        lblCurrent.setMaxWidth(Config.PASTE_QUEUE_WIDTH);
+
+        VBox root = new VBox(5.0, lblPosition, lblCurrent,
+                new HBox(5.0, btnNext, btnBack, btnStop),
+                new HBox(5.0, chkAuto, txtIntervalMs, new Label("ms")));
+        root.setPadding(new Insets(5.0));
+        stage.initOwner(owner);
+        stage.setAlwaysOnTop(true);
+        stage.setTitle("Paste queue");
+        stage.setScene(new Scene(root, Config.PASTE_QUEUE_WIDTH, Config.PASTE_QUEUE_HEIGHT));
+        stage.setOnHidden(e -> autoAdvance.stop());
+    }
+
+    /** Show the window and put the first item in the clipboard */
+    void start() {
+        stage.show();
+        pushNext();
+    }
+
+    private void pushNext() {
+        if (!queue.hasNext()) {
+            autoAdvance.stop();
+            lblPosition.setText("Done: pasted all " + queue.size() + " buffer(s)");
+            statusBar.show("Paste queue is done (" + queue.size() + " buffer(s))");
+            return;
+        }
+        try {
+            String item = queue.next();
+            SysClipboard.write(item);
+            lblPosition.setText("#" + queue.position() + " of " + queue.size() + " is in the clipboard");
+            lblCurrent.setText(new ClipBuffer(item).toString());
+        } catch (Exception exc) {
+            autoAdvance.stop();
+            statusBar.showErr("Problem preparing buffer #" + (queue.position() + 1) + " for the paste queue: " + exc.getMessage());
+        }
+    }
+
+    private void updateAutoAdvance() {
+        autoAdvance.stop();
+        if (!chkAuto.isSelected()) {
+            return;
+        }
+        try {
+            int ms = Math.max(Config.PASTE_QUEUE_MIN_AUTO_MS, Integer.parseInt(txtIntervalMs.getText().trim()));
+            autoAdvance.getKeyFrames().setAll(new KeyFrame(Duration.millis(ms), e -> pushNext()));
+            autoAdvance.setCycleCount(Animation.INDEFINITE);
+            autoAdvance.play();
+        } catch (NumberFormatException exc) {
+            chkAuto.setSelected(false);
+            statusBar.showErr("Paste queue interval must be a number of milliseconds");
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.juxtaflux;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PasteQueueTest {
+    @Test
+    public void inOrderWithRendering() throws Exception {
+        PasteQueue queue = new PasteQueue(Arrays.asList("a", "b", "c"), s -> s.toUpperCase());
+        assertEquals(3, queue.size());
+        assertEquals("A", queue.next());
+        assertEquals("B", queue.next());
+        queue.back();
+        assertEquals("B", queue.next());
+        assertEquals("C", queue.next());
+        assertFalse(queue.hasNext());
+        assertEquals(3, queue.position());
+    }
+
+    @Test
+    public void withoutRendering() throws Exception {
+        PasteQueue queue = new PasteQueue(Arrays.asList("x", "${0}"), null);
+        assertEquals("x", queue.next());
+        assertEquals("${0}", queue.next());
+    }
+}
@@ -0,0 +1,96 @@
+package com.juxtaflux;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/** Order that repeated retrieves step through the selected buffers in */
+enum RetrieveMode {
+    ROUND_ROBIN, // top to bottom, then start over at the top
+    FORWARD,     // top to bottom, then keep retrieving the bottom one
+    BACKWARD,    // bottom to top, then start over at the bottom
+    RANDOM       // shuffled, but each buffer once before any repeats
+}
+
+/**
+ * Which selected buffer to retrieve next.
+ *
+ * Holds the selected buffer indexes as a sorted array that is only rebuilt when the selection changes, so each
+ * retrieve is constant time no matter how many buffers are selected. Random mode shuffles one step at a time
+ * (Fisher-Yates), so it is constant time too.
+ */
+class RetrieveCursor {
+    private int[] selected = new int[0];
+    private int position = 0; // position in selected of the buffer to retrieve next
+    private int[] shuffled = new int[0]; // positions, shuffled[0, shuffledCount) have been handed out this cycle
+    private int shuffledCount = 0;
+    private final Random random;
+
+    RetrieveCursor(Random random) {
+        this.random = random;
+    }
+
+    /** The selection changed. sortedIdxs are the selected buffer indexes, lowest first. */
+    void setSelection(int[] sortedIdxs) {
+        selected = sortedIdxs;
+        position = 0;
+        shuffled = new int[selected.length];
+        for (int i = 0; i < shuffled.length; ++i) {
+            shuffled[i] = i;
+        }
+        shuffledCount = 0;
+    }
+
+    int count() {
+        return selected.length;
+    }
+
+    /** 1 based position of the buffer that current() returns, among the selected buffers */
+    int ordinal() {
+        return position + 1;
+    }
+
+    /**
+     * The buffer to retrieve. If the user focused a different buffer since the last retrieve, start from it (or from
+     * the next selected buffer after it). Returns -1 if nothing is selected.
+     */
+    int current(int focusedIdx) {
+        if (selected.length == 0) {
+            return -1;
+        }
+        if (selected[position] != focusedIdx && focusedIdx >= 0) {
+            int p = Arrays.binarySearch(selected, focusedIdx);
+            position = p >= 0 ? p : (-p - 1) % selected.length;
+        }
+        return selected[position];
+    }
+
+    /** Step to the buffer to retrieve after the current one. Returns its index, or -1 if nothing is selected. */
+    int advance(RetrieveMode mode) {
+        int n = selected.length;
+        if (n == 0) {
+            return -1;
+        }
+        switch (mode) {
+            case ROUND_ROBIN:
+                position = position + 1 == n ? 0 : position + 1;
+                break;
+            case FORWARD:
+                position = Math.min(n - 1, position + 1);
+                break;
+            case BACKWARD:
+                position = position == 0 ? n - 1 : position - 1;
+                break;
+            case RANDOM:
+                if (shuffledCount == n) {
+                    shuffledCount = 0; // every buffer has had its turn, start a new cycle
+                }
+                int pick = shuffledCount + random.nextInt(n - shuffledCount);
+                int tmp = shuffled[shuffledCount];
+                shuffled[shuffledCount] = shuffled[pick];
+                shuffled[pick] = tmp;
+                position = shuffled[shuffledCount++];
+                break;
+        }
+        return selected[position];
+    }
+}
@@ -0,0 +1,58 @@
+package com.juxtaflux;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class RetrieveCursorTest {
+    @Test
+    public void emptySelection() throws Exception {
+        RetrieveCursor cursor = new RetrieveCursor(new Random(1));
+        assertEquals(-1, cursor.current(0));
+        assertEquals(-1, cursor.advance(RetrieveMode.ROUND_ROBIN));
+    }
+
+    @Test
+    public void startsAtFocusedOrNextSelected() throws Exception {
+        RetrieveCursor cursor = new RetrieveCursor(new Random(1));
+        cursor.setSelection(new int[] {2, 5, 9});
+        assertEquals(5, cursor.current(5));
+        assertEquals(2, cursor.ordinal());
+        assertEquals(9, cursor.current(6));
+        assertEquals(2, cursor.current(10)); // past the last one wraps to the first
+    }
+
+    @Test
+    public void modes() throws Exception {
+        RetrieveCursor cursor = new RetrieveCursor(new Random(1));
+        cursor.setSelection(new int[] {2, 5, 9});
+        cursor.current(2);
+        assertEquals(5, cursor.advance(RetrieveMode.ROUND_ROBIN));
+        assertEquals(9, cursor.advance(RetrieveMode.ROUND_ROBIN));
+        assertEquals(2, cursor.advance(RetrieveMode.ROUND_ROBIN));
+        assertEquals(9, cursor.advance(RetrieveMode.BACKWARD));
+        assertEquals(5, cursor.advance(RetrieveMode.BACKWARD));
+        assertEquals(9, cursor.advance(RetrieveMode.FORWARD));
+        assertEquals(9, cursor.advance(RetrieveMode.FORWARD));
+    }
+
+    @Test
+    public void randomVisitsEachOncePerCycle() throws Exception {
+        RetrieveCursor cursor = new RetrieveCursor(new Random(7));
+        int[] selected = new int[50];
+        for (int i = 0; i < selected.length; ++i) {
+            selected[i] = 3 * i;
+        }
+        cursor.setSelection(selected);
+        for (int cycle = 0; cycle < 3; ++cycle) {
+            Set<Integer> seen = new HashSet<>();
+            for (int i = 0; i < selected.length; ++i) {
+                assertTrue(seen.add(cursor.advance(RetrieveMode.RANDOM)));
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.juxtaflux;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/** Read-only view of every step'th element of a list, starting at first. Nothing is copied. */
+class SlicedList<T> extends AbstractList<T> implements RandomAccess {
+    private final List<T> list;
+    private final int first;
+    private final int step;
+    private final int size;
+
+    SlicedList(List<T> list, int first, int step, int size) {
+        this.list = list;
+        this.first = first;
+        this.step = step;
+        this.size = size;
+    }
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return list.get(first + index * step);
+    }
+    @Override
+    public int size() {
+        return size;
+    }
+}
+
+/**
+ * Python slice (start:stop:step) that can be applied to the characters of a line or to a list.
+ *
+ * A single index ('4', '-1') picks out one element, or nothing if it is out of range. Otherwise the rules are
+ * Python's: missing start/stop mean "from the beginning"/"to the end" (reversed for a negative step), negative
+ * values count from the end, and out of range values are clamped.
+ *
+ * Character slicing counts code points, so a surrogate pair is never cut in half. Checking each line for surrogates
+ * would cost as much as the slicing itself, so the caller says up front whether the text has any
+ * (see ClipSnapshot.hasSurrogates()); when it doesn't, indexes are plain char offsets.
+ */
+class Slice {
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private final int start;
+    private final int stop;
+    private final int step;
+    private final boolean single;
+    private int[] offsets = new int[64]; // code point offsets of the current line. Reused, so a Slice isn't thread safe.
+
+    // these are set by resolve()
+    private int first;
+    private int count;
+
+    private Slice(int start, int stop, int step, boolean single) {
+        this.start = start;
+        this.stop = stop;
+        this.step = step;
+        this.single = single;
+    }
+
+    static Slice parse(String expr) throws ArgParseError {
+        String[] tokens = StringUtils.splitByWholeSeparatorPreserveAllTokens(expr, ":");
+        if (tokens.length == 1) {
+            Integer idx = Functions.parseToken(tokens[0]);
+            if (idx == null) {
+                throw new ArgParseError("The single value slice argument must be an integer");
+            }
+            return new Slice(idx, NONE, 1, true);
+        }
+        if (tokens.length > 3) {
+            throw new ArgParseError("Too many colons (" + (tokens.length - 1) + ") in slice argument: \"" + expr + "\"");
+        }
+        Integer start = Functions.parseToken(tokens[0]);
+        Integer stop = Functions.parseToken(tokens[1]);
+        Integer step = tokens.length == 3 ? Functions.parseToken(tokens[2]) : null;
+        if (step != null && step == 0) {
+            throw new ArgParseError("Slice step can't be zero");
+        }
+        return new Slice(start == null ? NONE : start, stop == null ? NONE : stop, step == null ? 1 : step, false);
+    }
+
+    /** Work out the first index and the number of elements this slice picks out of something of the given length */
+    private void resolve(int length) {
+        if (single) {
+            int i = start < 0 ? start + length : start;
+            first = i;
+            count = i >= 0 && i < length ? 1 : 0;
+            return;
+        }
+        int lo = step < 0 ? -1 : 0;
+        int hi = step < 0 ? length - 1 : length;
+        int s = start == NONE ? (step < 0 ? hi : lo) : clamp(start, length, lo, hi);
+        int e = stop == NONE ? (step < 0 ? lo : hi) : clamp(stop, length, lo, hi);
+        first = s;
+        if (step > 0) {
+            count = s < e ? (e - s - 1) / step + 1 : 0;
+        } else {
+            count = e < s ? (s - e - 1) / -step + 1 : 0;
+        }
+    }
+
+    private static int clamp(int i, int length, int lo, int hi) {
+        if (i < 0) {
+            i += length;
+            return i < 0 ? lo : i;
+        }
+        return i >= length ? hi : i;
+    }
+
+    /** Number of elements picked out of something of the given length */
+    int count(int length) {
+        resolve(length);
+        return count;
+    }
+
+    /** Index of the first element picked out of something of the given length. The rest follow every step(). */
+    int first(int length) {
+        resolve(length);
+        return first;
+    }
+
+    int step() {
+        return step;
+    }
+
+    /** The slice of a list, as a view onto it */
+    <T> List<T> of(List<T> list) {
+        resolve(list.size());
+        return new SlicedList<>(list, first, step, count);
+    }
+
+    String of(String s) {
+        StringBuilder sb = new StringBuilder();
+        appendTo(s, 0, s.length(), true, sb);
+        return sb.toString();
+    }
+
+    /** Slice the characters of text[from, to) onto out. codePoints says whether the text may have surrogate pairs in it. */
+    void appendTo(String text, int from, int to, boolean codePoints, StringBuilder out) {
+        if (!codePoints) {
+            resolve(to - from);
+            if (step == 1) {
+                if (count > 0) {
+                    out.append(text, from + first, from + first + count);
+                }
+            } else {
+                for (int k = 0, i = from + first; k < count; ++k, i += step) {
+                    out.append(text.charAt(i));
+                }
+            }
+            return;
+        }
+        int n = 0;
+        for (int i = from; i < to; ++i) {
+            if (n + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[n++] = i;
+            if (Character.isHighSurrogate(text.charAt(i)) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                ++i;
+            }
+        }
+        offsets[n] = to;
+        resolve(n);
+        if (step == 1) {
+            if (count > 0) {
+                out.append(text, offsets[first], offsets[first + count]);
+            }
+        } else {
+            for (int k = 0, i = first; k < count; ++k, i += step) {
+                out.append(text, offsets[i], offsets[i + 1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.juxtaflux;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SliceTest {
+    private static String slice(String s, String expr) throws ArgParseError {
+        return Slice.parse(expr).of(s);
+    }
+
+    @Test
+    public void matchesStringUtilSlice() throws Exception {
+        String line = "0123456789";
+        String text = "xx" + line + "yy";
+        Integer[] idxs = {null, -999, -10, -4, -1, 0, 3, 5, 9, 10, 999};
+        for (Integer start : idxs) {
+            for (Integer end : idxs) {
+                String expr = (start == null ? "" : start) + ":" + (end == null ? "" : end);
+                StringBuilder out = new StringBuilder();
+                Slice.parse(expr).appendTo(text, 2, 12, false, out);
+                assertEquals(expr, StringUtil.slice(line, start, end), out.toString());
+                assertEquals(expr, StringUtil.slice(line, start, end), slice(line, expr));
+            }
+            if (start != null) {
+                StringBuilder out = new StringBuilder();
+                Slice.parse(start.toString()).appendTo(text, 2, 12, false, out);
+                assertEquals(start.toString(), StringUtil.slice(line, start), out.toString());
+            }
+        }
+    }
+
+    @Test
+    public void steps() throws Exception {
+        // expected values are from Python
+        String s = "0123456789";
+        assertEquals("9876543210", slice(s, "::-1"));
+        assertEquals("02468", slice(s, "::2"));
+        assertEquals("13579", slice(s, "1::2"));
+        assertEquals("147", slice(s, "1:8:3"));
+        assertEquals("8642", slice(s, "-2:0:-2"));
+        assertEquals("", slice(s, "2:8:-1"));
+        assertEquals("94", slice(s, "999::-5"));
+        assertEquals("", slice("", "::-1"));
+    }
+
+    @Test
+    public void surrogatePairsAreNotSplit() throws Exception {
+        String s = "a\uD83D\uDE00b\uD83D\uDE01c"; // a, emoji, b, emoji, c
+        assertEquals("\uD83D\uDE00", slice(s, "1"));
+        assertEquals("c\uD83D\uDE01b\uD83D\uDE00a", slice(s, "::-1"));
+        assertEquals("\uD83D\uDE00\uD83D\uDE01", slice(s, "1::2"));
+        assertEquals("\uD83D\uDE01c", slice(s, "-2:"));
+    }
+
+    @Test
+    public void listView() throws Exception {
+        List<String> list = Arrays.asList("a", "b", "c", "d", "e");
+        assertEquals(Arrays.asList("e", "c", "a"), Slice.parse("::-2").of(list));
+        assertEquals(Arrays.asList("b", "c"), Slice.parse("1:3").of(list));
+        assertEquals(Arrays.asList("e"), Slice.parse("-1").of(list));
+        assertEquals(Arrays.asList(), Slice.parse("7").of(list));
+        list.set(1, "B");
+        assertEquals(Arrays.asList("B", "c"), Slice.parse("1:3").of(list).subList(0, 2)); // a view, not a copy
+    }
+
+    @Test(expected = ArgParseError.class)
+    public void zeroStep() throws Exception {
+        Slice.parse("::0");
+    }
+
+    @Test(expected = ArgParseError.class)
+    public void tooManyColons() throws Exception {
+        Slice.parse("1:2:3:4");
+    }
+}
@@ -0,0 +1,252 @@
+package com.juxtaflux;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pretty-print, minify, validate and extract values from JSON or XML text. Which one it is is decided by the first
+ * non-blank char ('<' is XML). Both go through pull parsers (JsonStream, and StAX for XmlStream) that look at one
+ * token at a time, so the only memory used besides the output is a stack as deep as the document's nesting.
+ * Problems with the text are IllegalArgumentExceptions that say where in the text they are.
+ */
+class StructuredText {
+    /** Reformat with each nesting level indented by indent, and lines separated by newline */
+    static String pretty(String text, String indent, String newline) {
+        return isXml(text) ? XmlStream.reformat(text, indent, newline) : JsonStream.reformat(text, indent, newline);
+    }
+
+    /** Reformat without any whitespace between tokens */
+    static String minify(String text) {
+        return isXml(text) ? XmlStream.reformat(text, null, "") : JsonStream.reformat(text, null, "");
+    }
+
+    /** Check the whole text parses. Returns a description of it, or throws IllegalArgumentException. */
+    static String validate(String text) {
+        return isXml(text) ? XmlStream.validate(text) : JsonStream.validate(text);
+    }
+
+    /**
+     * The values at path (see PathPattern), one per line, and how many there are. JSON strings are unescaped, other
+     * JSON values are minified. XML elements give their text content, trimmed, and attributes give their value.
+     */
+    static Pair<String, Integer> extract(String text, String path, String newline) throws ArgParseError {
+        List<String> values = new ArrayList<>();
+        if (isXml(text)) {
+            XmlStream.extract(text, PathPattern.parseXml(path), values);
+        } else {
+            JsonStream.extract(text, PathPattern.parseJson(path), values);
+        }
+        return Pair.of(String.join(newline, values), values.size());
+    }
+
+    static boolean isXml(String text) {
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c) && c != '\uFEFF') {
+                return c == '<';
+            }
+        }
+        return false;
+    }
+
+    /** "line L, column C" of offset pos in text (only worked out when there's a problem to report) */
+    static String where(String text, int pos) {
+        int line = 1;
+        int lineStart = 0;
+        for (int i = 0; i < pos && i < text.length(); ++i) {
+            if (text.charAt(i) == '\n') {
+                ++line;
+                lineStart = i + 1;
+            }
+        }
+        return "line " + line + ", column " + (pos - lineStart + 1);
+    }
+}
+
+/** Output with indentation. A null indent means minified: no line breaks or indentation at all. */
+class IndentedOutput {
+    final StringBuilder out;
+    private final String indent;
+    private final String newline;
+
+    IndentedOutput(int capacity, String indent, String newline) {
+        out = new StringBuilder(capacity);
+        this.indent = indent;
+        this.newline = newline;
+    }
+
+    boolean minified() {
+        return indent == null;
+    }
+
+    /** Start a new line indented depth levels (nothing when minified, or at the very start) */
+    void line(int depth) {
+        if (indent == null) {
+            return;
+        }
+        if (out.length() > 0) {
+            out.append(newline);
+        }
+        for (int i = 0; i < depth; ++i) {
+            out.append(indent);
+        }
+    }
+
+    public String toString() {
+        return out.toString();
+    }
+}
+
+/**
+ * A JSONPath or XPath-like path, matched against the stack of names (and array indexes) from the root down to each
+ * value as a document is streamed.
+ *
+ * JSON: $.store.book[0].title, $['key with spaces'], [*] for every array element, .* for every member or element,
+ * and .. before a step to look for it at any depth ($..title). The leading $ is optional, and "$" alone is the root.
+ *
+ * XML: /root/item/name, * for any element, // before a step to look for it at any depth (//name), and a last
+ * step of @attr or @* for attributes. A path that doesn't start with / is looked for at any depth (item/@id).
+ */
+class PathPattern {
+    static final int NO_INDEX = -1;
+    static final int ANY_INDEX = -2;
+
+    private static class Step {
+        final boolean anyDepth; // there may be any number of levels before this one
+        final String name; // member or element name, "*" for anything, or null for an array index
+        final int index; // array index, or ANY_INDEX
+
+        Step(boolean anyDepth, String name, int index) {
+            this.anyDepth = anyDepth;
+            this.name = name;
+            this.index = index;
+        }
+
+        boolean matches(String n, int i) {
+            if (name == null) {
+                return n == null && (index == ANY_INDEX || index == i);
+            }
+            return name.equals("*") || name.equals(n);
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+    private String attribute; // XML only: attribute name or "*" after the last step, or null for the element itself
+
+    /** Attribute to take from the matching elements, or null to take their text */
+    String attribute() {
+        return attribute;
+    }
+
+    /**
+     * Does the path match the value at names[0..depth), where names[i] is a member or element name, or null for the
+     * indexes[i]th element of an array?
+     */
+    boolean matches(String[] names, int[] indexes, int depth) {
+        return matches(0, names, indexes, 0, depth);
+    }
+
+    private boolean matches(int s, String[] names, int[] indexes, int level, int depth) {
+        if (s == steps.size()) {
+            return level == depth;
+        }
+        Step step = steps.get(s);
+        for (int l = level; l < depth; ++l) {
+            if (step.matches(names[l], indexes[l]) && matches(s + 1, names, indexes, l + 1, depth)) {
+                return true;
+            }
+            if (!step.anyDepth) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    static PathPattern parseJson(String path) throws ArgParseError {
+        PathPattern p = new PathPattern();
+        String s = path.trim();
+        int i = s.startsWith("$") ? 1 : 0;
+        while (i < s.length()) {
+            boolean anyDepth = false;
+            if (s.startsWith("..", i)) {
+                anyDepth = true;
+                i += 2;
+            } else if (s.charAt(i) == '.') {
+                ++i;
+            } else if (s.charAt(i) != '[' && i > 0) {
+                throw new ArgParseError("Expected '.' or '[' at position " + (i + 1) + " of the path '" + path + "'");
+            }
+            if (i < s.length() && s.charAt(i) == '[') {
+                int close = s.indexOf(']', i);
+                if (close < 0) {
+                    throw new ArgParseError("Missing ']' in the path '" + path + "'");
+                }
+                String inside = s.substring(i + 1, close).trim();
+                i = close + 1;
+                if (inside.equals("*")) {
+                    p.steps.add(new Step(anyDepth, null, ANY_INDEX));
+                } else if (inside.length() >= 2 && (inside.charAt(0) == '\'' || inside.charAt(0) == '"') && inside.charAt(inside.length() - 1) == inside.charAt(0)) {
+                    p.steps.add(new Step(anyDepth, inside.substring(1, inside.length() - 1), NO_INDEX));
+                } else {
+                    Integer index = Functions.parseToken(inside);
+                    if (index == null || index < 0) {
+                        throw new ArgParseError("Expected an index, * or a quoted name inside [] in the path '" + path + "'");
+                    }
+                    p.steps.add(new Step(anyDepth, null, index));
+                }
+            } else {
+                int end = i;
+                while (end < s.length() && s.charAt(end) != '.' && s.charAt(end) != '[') {
+                    ++end;
+                }
+                if (end == i) {
+                    throw new ArgParseError("Empty name at position " + (i + 1) + " of the path '" + path + "'");
+                }
+                p.steps.add(new Step(anyDepth, s.substring(i, end), NO_INDEX));
+                i = end;
+            }
+        }
+        return p;
+    }
+
+    static PathPattern parseXml(String path) throws ArgParseError {
+        PathPattern p = new PathPattern();
+        String s = path.trim();
+        if (s.isEmpty()) {
+            throw new ArgParseError("Need a path, like /root/item or //item/@id");
+        }
+        int i = 0;
+        boolean anyDepth = !s.startsWith("/");
+        while (i < s.length()) {
+            if (s.startsWith("//", i)) {
+                anyDepth = true;
+                i += 2;
+            } else if (s.charAt(i) == '/') {
+                ++i;
+            }
+            int end = s.indexOf('/', i);
+            String step = s.substring(i, end < 0 ? s.length() : end);
+            i = end < 0 ? s.length() : end;
+            if (step.isEmpty()) {
+                throw new ArgParseError("Empty step in the path '" + path + "'");
+            }
+            if (step.startsWith("@")) {
+                if (i < s.length() || step.length() == 1) {
+                    throw new ArgParseError("An @attribute can only be the last step of the path '" + path + "'");
+                }
+                if (anyDepth) {
+                    p.steps.add(new Step(true, "*", NO_INDEX)); // //@id means the attribute of any element
+                }
+                p.attribute = step.substring(1);
+            } else if (step.contains("[") || step.contains("(")) {
+                throw new ArgParseError("Only element names, * and @attribute are supported in paths: '" + step + "'");
+            } else {
+                p.steps.add(new Step(anyDepth, step, NO_INDEX));
+            }
+            anyDepth = false;
+        }
+        return p;
+    }
+}
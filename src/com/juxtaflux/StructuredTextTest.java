@@ -0,0 +1,86 @@
+package com.juxtaflux;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StructuredTextTest {
+    private static final String JSON = "{\"store\": {\"book\": [{\"title\": \"A \\\"b\\\"\", \"price\": 8.95, \"tags\": []},"
+            + " {\"title\": \"C\", \"price\": 12, \"tags\": [\"x\", \"y\"]}], \"open\": true, \"owner\": null}}";
+
+    private static String extract(String text, String path) throws ArgParseError {
+        return StructuredText.extract(text, path, "\n").getLeft();
+    }
+
+    private static String error(Runnable r) {
+        try {
+            r.run();
+        } catch (IllegalArgumentException exc) {
+            return exc.getMessage();
+        }
+        fail("Expected a problem with the text");
+        return null;
+    }
+
+    @Test
+    public void jsonMinifyAndPretty() {
+        String min = "{\"store\":{\"book\":[{\"title\":\"A \\\"b\\\"\",\"price\":8.95,\"tags\":[]},{\"title\":\"C\",\"price\":12,\"tags\":[\"x\",\"y\"]}],\"open\":true,\"owner\":null}}";
+        assertEquals(min, StructuredText.minify(JSON));
+        assertEquals("{\n  \"a\": [\n    1,\n    {}\n  ],\n  \"b\": \"x\"\n}", StructuredText.pretty(" {\"a\":[1, {} ] ,\"b\":\"x\"}\n", "  ", "\n"));
+        assertEquals(min, StructuredText.minify(StructuredText.pretty(JSON, "\t", "\r\n")));
+        assertEquals("[]", StructuredText.pretty("[ ]", "  ", "\n"));
+        assertEquals("-1.5e+3", StructuredText.minify(" -1.5e+3 "));
+    }
+
+    @Test
+    public void jsonErrors() {
+        assertEquals("Expected ',' or '}' at line 2, column 1", error(() -> StructuredText.validate("{\"a\": 1\n\"b\": 2}")));
+        assertTrue(error(() -> StructuredText.validate("[1, 2,]")).startsWith("Unexpected character ']'"));
+        assertTrue(error(() -> StructuredText.validate("[1] x")).startsWith("Unexpected text after"));
+        assertTrue(error(() -> StructuredText.validate("[01]")).startsWith("Expected ','"));
+        assertTrue(error(() -> StructuredText.validate("[\"abc")).startsWith("Unterminated string"));
+        assertTrue(error(() -> StructuredText.validate("[\"\\x\"]")).startsWith("Bad escape"));
+        assertTrue(error(() -> StructuredText.validate("[tru]")).startsWith("Unexpected character 't'"));
+        assertTrue(error(() -> StructuredText.validate("[1.]")).startsWith("Bad number"));
+        assertEquals("Valid JSON: 15 value(s), nested 5 deep", StructuredText.validate(JSON));
+    }
+
+    @Test
+    public void jsonExtract() throws ArgParseError {
+        assertEquals("A \"b\"\nC", extract(JSON, "$.store.book[*].title"));
+        assertEquals("A \"b\"\nC", extract(JSON, "$..title"));
+        assertEquals("12", extract(JSON, "store.book[1].price"));
+        assertEquals("[\"x\",\"y\"]", extract(JSON, "$['store']['book'][1].tags"));
+        assertEquals("y", extract(JSON, "$..tags[1]"));
+        assertEquals("true\nnull", extract(JSON, "$.store.open") + "\n" + extract(JSON, "$.store.owner"));
+        assertEquals(StructuredText.minify(JSON), extract(JSON, "$"));
+        assertEquals("1\n2\n3", extract("[{\"id\":1},{\"id\":2,\"kids\":[{\"id\":3}]}]", "$..id"));
+        assertEquals("", extract(JSON, "$.nothing"));
+    }
+
+    @Test(expected = ArgParseError.class)
+    public void badJsonPath() throws ArgParseError {
+        extract(JSON, "$.a[");
+    }
+
+    @Test
+    public void xml() throws ArgParseError {
+        String xml = "<?xml version=\"1.0\"?>\n<root a=\"1 &amp; 2\">\n  <item id=\"x\"><name>One</name><empty/></item>\n"
+                + "  <!-- note -->\n  <item id=\"y\"><name> Two &lt;2&gt; </name></item>\n</root>";
+        String min = "<?xml version=\"1.0\"?><root a=\"1 &amp; 2\"><item id=\"x\"><name>One</name><empty/></item><!-- note --><item id=\"y\"><name> Two &lt;2&gt; </name></item></root>";
+        assertEquals(min, StructuredText.minify(xml));
+        assertEquals("<?xml version=\"1.0\"?>\n<root a=\"1 &amp; 2\">\n  <item id=\"x\">\n    <name>One</name>\n    <empty/>\n  </item>\n"
+                + "  <!-- note -->\n  <item id=\"y\">\n    <name> Two &lt;2&gt; </name>\n  </item>\n</root>", StructuredText.pretty(min, "  ", "\n"));
+        assertEquals("One\nTwo <2>", extract(xml, "/root/item/name"));
+        assertEquals("x\ny", extract(xml, "//item/@id"));
+        assertEquals("1 & 2\nx\ny", extract(xml, "@*"));
+        assertEquals("OneTwo <2>", extract(xml, "/*/item").replace("\n", ""));
+        assertEquals("Well-formed XML: 6 element(s), nested 3 deep", StructuredText.validate(xml));
+        assertTrue(error(() -> StructuredText.validate("<a><b></a>")).contains("line 1"));
+    }
+
+    @Test
+    public void xmlDoesntLoadExternalEntities() {
+        error(() -> StructuredText.validate("<!DOCTYPE a [<!ENTITY e SYSTEM \"file:///etc/passwd\">]><a>&e;</a>"));
+    }
+}
@@ -2,26 +2,124 @@ package com.juxtaflux;
 
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
-import org.apache.commons.lang3.StringUtils;
-
-import java.util.Arrays;
 import java.util.List;
 
-/** Interact with contents of system clipboard */
+/** Something that can hold the text of a clipboard */
+interface ClipboardSource {
+    String read();
+    void write(String s);
+    /** Formats other than plain text, or null if there are none (or the source only holds text) */
+    default ClipFlavors readFlavors() {
+        return null;
+    }
+    /** Write the text along with other formats */
+    default void write(String s, ClipFlavors flavors) {
+        write(s);
+    }
+}
+
+/** The real OS clipboard (requires the JavaFX toolkit to be running) */
+class FxClipboardSource implements ClipboardSource {
+    public String read() {
+        return Clipboard.getSystemClipboard().getString();
+    }
+    public void write(String s) {
+        write(s, null);
+    }
+    public ClipFlavors readFlavors() {
+        return ClipFlavors.capture(Clipboard.getSystemClipboard());
+    }
+    public void write(String s, ClipFlavors flavors) {
+        final Clipboard clipboard = Clipboard.getSystemClipboard();
+        final ClipboardContent content = new ClipboardContent();
+        content.putString(s);
+        if (flavors != null) {
+            flavors.putInto(content);
+        }
+        clipboard.setContent(content);
+    }
+}
+
+/** Clipboard that only lives in memory. Lets benchmarks and tests run the clipboard operations without a UI. */
+class InMemoryClipboardSource implements ClipboardSource {
+    private String text = "";
+    public String read() {
+        return text;
+    }
+    public void write(String s) {
+        text = s;
+    }
+}
+
+/**
+ * Interact with contents of system clipboard.
+ *
+ * The clipboard is read at most once per user action: the first read takes a snapshot, and later reads (and the line
+ * index built from it) are served from the snapshot. The snapshot is dropped by invalidate(), which the UI calls
+ * whenever the clipboard might have been changed by another app (a new action starts, the window gets focus).
+ * Writes replace the snapshot with what was written, since the app knows exactly what is now in the clipboard.
+ */
 public class SysClipboard {
+    private static ClipboardSource source = new FxClipboardSource();
+    private static ClipSnapshot snapshot;
+
+    /** Swap out where the clipboard is read from and written to */
+    static void setSource(ClipboardSource newSource) {
+        source = newSource;
+        snapshot = null;
+    }
+
+    /** Forget the cached snapshot so the next read goes to the clipboard again */
+    static void invalidate() {
+        snapshot = null;
+    }
+
+    static ClipSnapshot snapshot() {
+        if (snapshot == null) {
+            long start = OpMetrics.phaseStart();
+            snapshot = new ClipSnapshot(source.read());
+            OpMetrics.phaseEnd(OpPhase.READ, start);
+            OpMetrics.bytesIn(snapshot.text); // counted once per read of the clipboard, not per access to the snapshot
+        }
+        return snapshot;
+    }
+
     public static String read() {
-        return Clipboard.getSystemClipboard().getString();
+        return snapshot().text;
     }
 
     public static List<String> readAsLines() {
-        String[] array = StringUtils.splitByWholeSeparatorPreserveAllTokens(SysClipboard.read(), System.lineSeparator());
-        return Arrays.asList(array);
+        return snapshot().lines();
+    }
+
+    /** Line separator to use when writing lines back to the clipboard (matches what was read) */
+    static String lineSeparator() {
+        return snapshot().lineEnding().separator;
+    }
+
+    /** Capture the formats other than plain text that are in the clipboard (for storing in a buffer). Not cached. */
+    static ClipFlavors readFlavors() {
+        return source.readFlavors();
     }
 
     public static void write(String s) {
-        final Clipboard clipboard = Clipboard.getSystemClipboard();
-        final ClipboardContent content = new ClipboardContent();
-        content.putString(s);
-        clipboard.setContent(content);
+        write(s, null);
+    }
+
+    /** Write text along with other formats. Undo/redo only tracks the text. */
+    static void write(String s, ClipFlavors flavors) {
+        if (History.isRecording()) {
+            String before = snapshot != null ? snapshot.text : new ClipSnapshot(source.read()).text;
+            History.clipboardChanged(before, s);
+        }
+        long start = OpMetrics.phaseStart();
+        if (flavors != null) {
+            source.write(s, flavors);
+        } else {
+            source.write(s);
+        }
+        snapshot = new ClipSnapshot(s);
+        OpMetrics.phaseEnd(OpPhase.WRITE, start);
+        OpMetrics.bytesOut(s);
     }
 }
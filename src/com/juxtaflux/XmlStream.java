@@ -0,0 +1,271 @@
+package com.juxtaflux;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * XML pretty-printing, minifying, validation (well-formedness) and path extraction on top of a StAX pull parser.
+ * DTDs and external entities are switched off, so pasted XML never makes the parser fetch anything.
+ */
+class XmlStream {
+    private static final XMLInputFactory factory = XMLInputFactory.newFactory();
+    static {
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    static String reformat(String text, String indent, String newline) {
+        IndentedOutput out = new IndentedOutput(indent == null ? text.length() : text.length() + text.length() / 2, indent, newline);
+        XMLStreamReader r = open(text);
+        try {
+            String declaration = declaration(r); // the reader starts on START_DOCUMENT
+            int depth = 0;
+            boolean tagOpen = false; // written "<name attrs" but not the ">" yet, in case the element turns out empty
+            boolean[] hasChildren = new boolean[16]; // per open element: did it get child elements, comments, etc.
+            StringBuilder pendingText = new StringBuilder(); // text since the last other event
+            while (r.hasNext()) {
+                int event = r.next();
+                if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.SPACE) {
+                    pendingText.append(r.getTextCharacters(), r.getTextStart(), r.getTextLength());
+                    continue;
+                }
+                if (pendingText.length() > 0) {
+                    if (!isBlank(pendingText)) {
+                        tagOpen = closeTag(out, tagOpen);
+                        if (event == XMLStreamConstants.END_ELEMENT && !hasChildren[depth]) {
+                            escape(pendingText, 0, pendingText.length(), false, out.out); // text only: keep it inline, as it is
+                        } else {
+                            // mixed with elements: trimmed, on its own line when pretty-printing
+                            String mixed = out.minified() ? pendingText.toString() : pendingText.toString().trim();
+                            out.line(depth);
+                            escape(mixed, 0, mixed.length(), false, out.out);
+                            hasChildren[depth] = true;
+                        }
+                    }
+                    pendingText.setLength(0);
+                }
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        tagOpen = closeTag(out, tagOpen);
+                        hasChildren[depth] = true;
+                        out.line(depth);
+                        out.out.append('<').append(qname(r.getPrefix(), r.getLocalName()));
+                        for (int i = 0; i < r.getNamespaceCount(); ++i) {
+                            String prefix = r.getNamespacePrefix(i);
+                            out.out.append(prefix == null || prefix.isEmpty() ? " xmlns" : " xmlns:" + prefix).append("=\"");
+                            escape(r.getNamespaceURI(i), 0, r.getNamespaceURI(i).length(), true, out.out);
+                            out.out.append('"');
+                        }
+                        for (int i = 0; i < r.getAttributeCount(); ++i) {
+                            out.out.append(' ').append(qname(r.getAttributePrefix(i), r.getAttributeLocalName(i))).append("=\"");
+                            String value = r.getAttributeValue(i);
+                            escape(value, 0, value.length(), true, out.out);
+                            out.out.append('"');
+                        }
+                        tagOpen = true;
+                        if (++depth == hasChildren.length) {
+                            hasChildren = Arrays.copyOf(hasChildren, depth * 2);
+                        }
+                        hasChildren[depth] = false;
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (tagOpen) {
+                            out.out.append("/>");
+                            tagOpen = false;
+                        } else {
+                            if (hasChildren[depth]) {
+                                out.line(depth - 1);
+                            }
+                            out.out.append("</").append(qname(r.getPrefix(), r.getLocalName())).append('>');
+                        }
+                        --depth;
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        tagOpen = closeTag(out, tagOpen);
+                        out.out.append("<![CDATA[").append(r.getText()).append("]]>");
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        tagOpen = closeTag(out, tagOpen);
+                        hasChildren[depth] = true;
+                        out.line(depth);
+                        out.out.append("<!--").append(r.getText()).append("-->");
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        tagOpen = closeTag(out, tagOpen);
+                        hasChildren[depth] = true;
+                        out.line(depth);
+                        out.out.append("<?").append(r.getPITarget());
+                        if (r.getPIData() != null && !r.getPIData().isEmpty()) {
+                            out.out.append(' ').append(r.getPIData());
+                        }
+                        out.out.append("?>");
+                        break;
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        tagOpen = closeTag(out, tagOpen);
+                        out.out.append('&').append(r.getLocalName()).append(';');
+                        break;
+                    case XMLStreamConstants.DTD:
+                        out.line(0);
+                        out.out.append(r.getText());
+                        break;
+                }
+            }
+            return declaration.isEmpty() ? out.toString() : declaration + (out.minified() ? "" : newline) + out;
+        } catch (XMLStreamException exc) {
+            throw error(exc);
+        }
+    }
+
+    static String validate(String text) {
+        XMLStreamReader r = open(text);
+        long elements = 0;
+        int depth = 0;
+        int maxDepth = 0;
+        try {
+            while (r.hasNext()) {
+                int event = r.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    ++elements;
+                    maxDepth = Math.max(maxDepth, ++depth);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    --depth;
+                }
+            }
+        } catch (XMLStreamException exc) {
+            throw error(exc);
+        }
+        return "Well-formed XML: " + elements + " element(s), nested " + maxDepth + " deep";
+    }
+
+    static void extract(String text, PathPattern path, List<String> values) {
+        XMLStreamReader r = open(text);
+        String[] names = new String[16];
+        int[] indexes = new int[16];
+        Arrays.fill(indexes, PathPattern.NO_INDEX);
+        int depth = 0;
+        String attribute = path.attribute();
+        try {
+            while (r.hasNext()) {
+                int event = r.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    --depth;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (depth == names.length) {
+                    names = Arrays.copyOf(names, depth * 2);
+                    indexes = Arrays.copyOf(indexes, depth * 2);
+                    Arrays.fill(indexes, depth, indexes.length, PathPattern.NO_INDEX);
+                }
+                names[depth++] = qname(r.getPrefix(), r.getLocalName());
+                if (!path.matches(names, indexes, depth)) {
+                    continue;
+                }
+                if (attribute != null) {
+                    for (int i = 0; i < r.getAttributeCount(); ++i) {
+                        if (attribute.equals("*") || attribute.equals(qname(r.getAttributePrefix(i), r.getAttributeLocalName(i)))) {
+                            values.add(r.getAttributeValue(i));
+                        }
+                    }
+                } else {
+                    values.add(textContent(r));
+                    --depth; // textContent() read up to the element's end
+                }
+            }
+        } catch (XMLStreamException exc) {
+            throw error(exc);
+        }
+    }
+
+    /** All the text inside the current element, trimmed. Reads up to its END_ELEMENT. */
+    private static String textContent(XMLStreamReader r) throws XMLStreamException {
+        StringBuilder sb = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            switch (r.next()) {
+                case XMLStreamConstants.START_ELEMENT: ++depth; break;
+                case XMLStreamConstants.END_ELEMENT: --depth; break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.CDATA:
+                    sb.append(r.getTextCharacters(), r.getTextStart(), r.getTextLength());
+                    break;
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    private static XMLStreamReader open(String text) {
+        try {
+            return factory.createXMLStreamReader(new StringReader(text.startsWith("\uFEFF") ? text.substring(1) : text));
+        } catch (XMLStreamException exc) {
+            throw error(exc);
+        }
+    }
+
+    /** The <?xml ...?> declaration the text started with, or "" if it didn't have one */
+    private static String declaration(XMLStreamReader r) {
+        if (r.getVersion() == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder("<?xml version=\"").append(r.getVersion()).append('"');
+        if (r.getCharacterEncodingScheme() != null) {
+            sb.append(" encoding=\"").append(r.getCharacterEncodingScheme()).append('"');
+        }
+        if (r.standaloneSet()) {
+            sb.append(" standalone=\"").append(r.isStandalone() ? "yes" : "no").append('"');
+        }
+        return sb.append("?>").toString();
+    }
+
+    private static boolean closeTag(IndentedOutput out, boolean tagOpen) {
+        if (tagOpen) {
+            out.out.append('>');
+        }
+        return false;
+    }
+
+    private static String qname(String prefix, String local) {
+        return prefix == null || prefix.isEmpty() ? local : prefix + ":" + local;
+    }
+
+    private static boolean isBlank(CharSequence s) {
+        for (int i = 0; i < s.length(); ++i) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void escape(CharSequence s, int start, int end, boolean attribute, StringBuilder out) {
+        for (int i = start; i < end; ++i) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&': out.append("&amp;"); break;
+                case '<': out.append("&lt;"); break;
+                case '>': out.append("&gt;"); break;
+                case '"': out.append(attribute ? "&quot;" : "\""); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    private static IllegalArgumentException error(XMLStreamException exc) {
+        Location where = exc.getLocation();
+        String msg = exc.getMessage();
+        // StAX messages usually start with their own "ParseError at [row,col]:[x,y]\nMessage: " prefix
+        int message = msg == null ? -1 : msg.indexOf("Message: ");
+        if (message >= 0) {
+            msg = msg.substring(message + "Message: ".length());
+        }
+        return new IllegalArgumentException(where == null ? msg : msg + " at line " + where.getLineNumber() + ", column " + where.getColumnNumber());
+    }
+}